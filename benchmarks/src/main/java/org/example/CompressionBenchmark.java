@@ -0,0 +1,79 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+    @Param({"1", "4", "6", "9"})
+    public int level;
+
+    @Param({"gzip", "deflate"})
+    public String encoding;
+
+    @Param({"2048", "32768"})
+    public int size;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        List<Object> users = new ArrayList<>();
+        JsonWriter writer = new JsonWriter();
+        for (int i = 0; writer.size() < size; i++) {
+            Map<String, Object> user = new LinkedHashMap<>();
+            user.put("id", i);
+            user.put("name", "user-" + Integer.toHexString(i * 31));
+            user.put("email", "user" + i + "@example.org");
+            user.put("active", i % 3 != 0);
+            user.put("score", i * 1.5);
+            users.add(user);
+            writer.reset();
+            writer.writeValue(users);
+        }
+        body = writer.toByteArray();
+    }
+
+    @Benchmark
+    public int compress(Ratio ratio) {
+        int compressed = Compressor.get().compress(encoding, level, body, 0, body.length);
+        ratio.inputBytes += body.length;
+        ratio.outputBytes += compressed;
+        return compressed;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Ratio {
+        public long inputBytes;
+        public long outputBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            inputBytes = 0;
+            outputBytes = 0;
+        }
+    }
+}
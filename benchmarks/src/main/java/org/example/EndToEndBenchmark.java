@@ -0,0 +1,107 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class EndToEndBenchmark {
+    static final int PORT = 18080;
+
+    @State(Scope.Benchmark)
+    public static class ServerState {
+        @Param({"1", "2"})
+        public int eventLoops;
+
+        private Server server;
+        private Thread thread;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException, InterruptedException {
+            server = newServer("localhost", PORT);
+            server.setEventLoopCount(eventLoops);
+            thread = new Thread(() -> {
+                try {
+                    server.startServer();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "benchmark-server");
+            thread.setDaemon(true);
+            thread.start();
+            LoopbackClient.awaitServer("localhost", PORT);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws InterruptedException {
+            server.stop();
+            thread.join(5000);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ClientState {
+        private LoopbackClient plaintext;
+        private LoopbackClient json;
+        private LoopbackClient plaintextClose;
+
+        @Setup(Level.Trial)
+        public void open() {
+            plaintext = new LoopbackClient("localhost", PORT, "/plaintext", true);
+            json = new LoopbackClient("localhost", PORT, "/json", true);
+            plaintextClose = new LoopbackClient("localhost", PORT, "/plaintext", false);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            plaintext.close();
+            json.close();
+            plaintextClose.close();
+        }
+    }
+
+    static Server newServer(String host, int port) {
+        Server server = new Server(host, port);
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("message", "Hello, World!");
+        server.registerHandler("/plaintext", "GET", (req, res) -> res.sendText(200, "Hello, World!"));
+        server.registerHandler("/json", "GET", (req, res) -> res.sendJson(200, message));
+        return server;
+    }
+
+    @Benchmark
+    public int plaintextKeepAlive(ServerState server, ClientState client) throws IOException {
+        return client.plaintext.get();
+    }
+
+    @Benchmark
+    public int jsonKeepAlive(ServerState server, ClientState client) throws IOException {
+        return client.json.get();
+    }
+
+    @Benchmark
+    public int plaintextConnectionClose(ServerState server, ClientState client) throws IOException {
+        return client.plaintextClose.get();
+    }
+}
@@ -0,0 +1,97 @@
+package org.example;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class LegacyParsers {
+    private LegacyParsers() {
+    }
+
+    static Map<String, String> parseHead(String requestData) {
+        String[] lines = requestData.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        Map<String, String> headers = new HashMap<>();
+        headers.put(":method", requestLine[0]);
+        headers.put(":path", requestLine[1]);
+        int i = 1;
+        while (i < lines.length && !lines[i].isEmpty()) {
+            String[] header = lines[i].split(": ");
+            if (header.length == 2) {
+                headers.put(header[0], header[1]);
+            }
+            i++;
+        }
+        return headers;
+    }
+
+    static Map<String, Object> parseJson(String body) {
+        Map<String, Object> jsonData = new HashMap<>();
+        String jsonString = body.trim();
+        if (jsonString.startsWith("{") && jsonString.endsWith("}")) {
+            jsonString = jsonString.substring(1, jsonString.length() - 1);
+            for (String pair : jsonString.split(",")) {
+                String[] keyValue = pair.split(":");
+                if (keyValue.length == 2) {
+                    String key = keyValue[0].trim().replace("\"", "");
+                    jsonData.put(key, parseJsonValue(keyValue[1].trim()));
+                }
+            }
+        }
+        return jsonData;
+    }
+
+    static Map<String, String> parseMultipart(String body, String boundary) {
+        Map<String, String> formData = new HashMap<>();
+        for (String part : body.split("--" + boundary)) {
+            if (part.contains("Content-Disposition")) {
+                String[] lines = part.split("\r\n");
+                String disposition = lines[1];
+                String name = disposition.split("name=\"")[1].split("\"")[0];
+                StringBuilder value = new StringBuilder();
+                for (int i = 3; i < lines.length; i++) {
+                    value.append(lines[i]).append("\r\n");
+                }
+                formData.put(name, value.toString().trim());
+            }
+        }
+        return formData;
+    }
+
+    static String buildJsonBody(Map<String, Object> jsonData) {
+        StringBuilder jsonBuilder = new StringBuilder("{");
+        for (Map.Entry<String, Object> entry : jsonData.entrySet()) {
+            jsonBuilder.append("\"").append(entry.getKey()).append("\":");
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                jsonBuilder.append("\"").append(value).append("\"");
+            } else {
+                jsonBuilder.append(value);
+            }
+            jsonBuilder.append(",");
+        }
+        if (jsonBuilder.length() > 1) {
+            jsonBuilder.setLength(jsonBuilder.length() - 1);
+        }
+        jsonBuilder.append("}");
+        return jsonBuilder.toString();
+    }
+
+    static byte[] buildResponse(int statusCode, String contentType, String responseBody) {
+        return ("HTTP/1.1 " + statusCode + " OK\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                "Content-Length: " + responseBody.getBytes().length + "\r\n" +
+                "\r\n" +
+                responseBody).getBytes();
+    }
+
+    private static Object parseJsonValue(String value) {
+        if (value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        } else if (value.equals("true") || value.equals("false")) {
+            return Boolean.parseBoolean(value);
+        } else if (value.matches("-?\\d+(\\.\\d+)?")) {
+            return value.contains(".") ? (Object) Double.parseDouble(value) : (Object) Integer.parseInt(value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,143 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadGenerator {
+    private final String host;
+    private final int port;
+    private final String path;
+    private final long warmupMillis;
+    private final long durationMillis;
+
+    LoadGenerator(String host, int port, String path, long warmupMillis, long durationMillis) {
+        this.host = host;
+        this.port = port;
+        this.path = path;
+        this.warmupMillis = warmupMillis;
+        this.durationMillis = durationMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArguments(args);
+        String host = options.getOrDefault("host", "localhost");
+        String path = options.getOrDefault("path", "/plaintext");
+        long warmupMillis = Long.parseLong(options.getOrDefault("warmup", "3")) * 1000;
+        long durationMillis = Long.parseLong(options.getOrDefault("duration", "10")) * 1000;
+        String mode = options.getOrDefault("mode", "both");
+
+        Server server = null;
+        Thread serverThread = null;
+        int port;
+        if (options.containsKey("port")) {
+            port = Integer.parseInt(options.get("port"));
+        } else {
+            port = 18081;
+            server = EndToEndBenchmark.newServer(host, port);
+            server.setEventLoopCount(Integer.parseInt(options.getOrDefault("event-loops", "1")));
+            Server embedded = server;
+            serverThread = new Thread(() -> {
+                try {
+                    embedded.startServer();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "load-generator-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            LoopbackClient.awaitServer(host, port);
+        }
+
+        LoadGenerator generator = new LoadGenerator(host, port, path, warmupMillis, durationMillis);
+        System.out.printf("%-11s %11s %12s %10s %10s %10s %10s %8s%n",
+                "mode", "concurrency", "req/s", "p50 us", "p99 us", "p999 us", "max us", "errors");
+        try {
+            for (String concurrency : options.getOrDefault("concurrency", "1,16,64,256").split(",")) {
+                int clients = Integer.parseInt(concurrency.trim());
+                if (!mode.equals("close")) {
+                    generator.run(clients, true).print("keep-alive", clients);
+                }
+                if (!mode.equals("keep-alive")) {
+                    generator.run(clients, false).print("close", clients);
+                }
+            }
+        } finally {
+            if (server != null) {
+                server.stop();
+                serverThread.join(5000);
+            }
+        }
+    }
+
+    Result run(int clients, boolean keepAlive) throws InterruptedException {
+        Histogram latency = new Histogram();
+        LongAdder errors = new LongAdder();
+        CountDownLatch done = new CountDownLatch(clients);
+        long start = System.nanoTime();
+        long measureFrom = start + warmupMillis * 1_000_000;
+        long end = measureFrom + durationMillis * 1_000_000;
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                try (LoopbackClient client = new LoopbackClient(host, port, path, keepAlive)) {
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        boolean failed;
+                        try {
+                            failed = client.get() >= 500;
+                        } catch (IOException e) {
+                            failed = true;
+                        }
+                        if (now >= measureFrom) {
+                            latency.record((System.nanoTime() - now) / 1000);
+                            if (failed) {
+                                errors.increment();
+                            }
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        return new Result(latency, errors.sum(), durationMillis);
+    }
+
+    private static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg + "\n"
+                        + "Options: --host --port --path --concurrency=1,16,64 --mode=keep-alive|close|both "
+                        + "--warmup=seconds --duration=seconds --event-loops=n");
+            }
+            int equals = arg.indexOf('=');
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    static final class Result {
+        private final Histogram latency;
+        private final long errors;
+        private final long durationMillis;
+
+        Result(Histogram latency, long errors, long durationMillis) {
+            this.latency = latency;
+            this.errors = errors;
+            this.durationMillis = durationMillis;
+        }
+
+        void print(String mode, int clients) {
+            System.out.printf("%-11s %11d %12.0f %10d %10d %10d %10d %8d%n", mode, clients,
+                    latency.getCount() * 1000.0 / durationMillis,
+                    latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+                    latency.getValueAtPercentile(99.9), latency.getValueAtPercentile(100), errors);
+        }
+    }
+}
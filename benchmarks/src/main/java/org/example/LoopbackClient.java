@@ -0,0 +1,133 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+final class LoopbackClient implements AutoCloseable {
+    private final String host;
+    private final int port;
+    private final byte[] request;
+    private final boolean keepAlive;
+    private final byte[] line = new byte[8192];
+    private final byte[] discard = new byte[8192];
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+    private boolean closeRequested;
+
+    LoopbackClient(String host, int port, String path, boolean keepAlive) {
+        this.host = host;
+        this.port = port;
+        this.keepAlive = keepAlive;
+        this.request = ("GET " + path + " HTTP/1.1\r\nHost: " + host + "\r\n"
+                + (keepAlive ? "" : "Connection: close\r\n") + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static void awaitServer(String host, int port) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            try (Socket probe = new Socket(host, port)) {
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    int get() throws IOException {
+        if (socket == null) {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+            out = socket.getOutputStream();
+        }
+        try {
+            out.write(request);
+            out.flush();
+            int status = readResponse();
+            if (!keepAlive || closeRequested) {
+                close();
+            }
+            return status;
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private int readResponse() throws IOException {
+        int length = readLine();
+        int status = parseInt(line, 9, 12);
+        long contentLength = 0;
+        closeRequested = false;
+        while ((length = readLine()) > 0) {
+            if (length > 15 && regionMatches(line, "content-length:")) {
+                int start = 15;
+                while (line[start] == ' ') {
+                    start++;
+                }
+                contentLength = parseInt(line, start, length);
+            } else if (length >= 17 && regionMatches(line, "connection: close")) {
+                closeRequested = true;
+            }
+        }
+        while (contentLength > 0) {
+            int read = in.read(discard, 0, (int) Math.min(discard.length, contentLength));
+            if (read < 0) {
+                throw new EOFException("Connection closed inside the response body");
+            }
+            contentLength -= read;
+        }
+        return status;
+    }
+
+    private int readLine() throws IOException {
+        int length = 0;
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("Connection closed inside the response head");
+            }
+            if (b != '\r' && length < line.length) {
+                line[length++] = (byte) b;
+            }
+        }
+        return length;
+    }
+
+    private static boolean regionMatches(byte[] bytes, String lowerCasePrefix) {
+        for (int i = 0; i < lowerCasePrefix.length(); i++) {
+            if (Character.toLowerCase(bytes[i]) != lowerCasePrefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseInt(byte[] bytes, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+            value = value * 10 + bytes[i] - '0';
+        }
+        return value;
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            socket = null;
+        }
+    }
+}
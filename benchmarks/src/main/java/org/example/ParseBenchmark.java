@@ -0,0 +1,100 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+    static final String HEAD = "GET /api/users/42?fields=name,email HTTP/1.1\r\n"
+            + "Host: localhost:8081\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+            + "Accept-Language: en-US,en;q=0.5\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Cookie: session=6f1c2a9e0b7d4c3f8a5e; theme=dark\r\n"
+            + "Upgrade-Insecure-Requests: 1\r\n"
+            + "\r\n";
+    static final String JSON = "{\"id\":42,\"name\":\"Ada Lovelace\",\"email\":\"ada@example.org\",\"active\":true,"
+            + "\"score\":98.5,\"team\":\"analytical-engines\",\"level\":7,\"city\":\"London\"}";
+    static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+    static final String MULTIPART = "--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+            + "Quarterly report\r\n"
+            + "--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"notes\"\r\n\r\n"
+            + "Numbers are preliminary and will be revised next week.\r\n"
+            + "--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"report.txt\"\r\n"
+            + "Content-Type: text/plain\r\n\r\n"
+            + "revenue,cost,margin\n120,80,40\n130,85,45\n\r\n"
+            + "--" + BOUNDARY + "--\r\n";
+
+    private ByteBuffer headBuffer;
+    private RequestParser parser;
+    private byte[] jsonBytes;
+    private byte[] multipartBytes;
+
+    @Setup
+    public void setUp() {
+        byte[] head = HEAD.getBytes(StandardCharsets.ISO_8859_1);
+        headBuffer = ByteBuffer.allocateDirect(head.length);
+        headBuffer.put(head);
+        parser = new RequestParser(Connection.MAX_HEADER_SIZE, Connection.MAX_HEADER_COUNT);
+        jsonBytes = JSON.getBytes(StandardCharsets.UTF_8);
+        multipartBytes = MULTIPART.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String parseHead() throws HttpException {
+        parser.reset();
+        parser.parse(headBuffer, headBuffer.position());
+        return parser.newRequest(headBuffer, null).getHeader("Cookie");
+    }
+
+    @Benchmark
+    public String parseHeadLegacy() {
+        return LegacyParsers.parseHead(HEAD).get("Cookie");
+    }
+
+    @Benchmark
+    public Object parseJson() throws HttpException {
+        return JsonReader.parse(jsonBytes);
+    }
+
+    @Benchmark
+    public Map<String, Object> parseJsonLegacy() {
+        return LegacyParsers.parseJson(new String(jsonBytes, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public List<Part> parseMultipart() throws HttpException {
+        MultipartParser multipart = new MultipartParser(BOUNDARY, 64 * 1024, 10 * 1024 * 1024);
+        multipart.write(multipartBytes);
+        return multipart.finish();
+    }
+
+    @Benchmark
+    public Map<String, String> parseMultipartLegacy() {
+        return LegacyParsers.parseMultipart(new String(multipartBytes, StandardCharsets.UTF_8), BOUNDARY);
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouterBenchmark {
+    private static final String[] RESOURCES = {
+            "users", "orders", "products", "invoices", "payments", "shipments", "reviews", "carts", "coupons", "stores"};
+
+    private Router router;
+    private Request request;
+
+    @Setup
+    public void setUp() {
+        router = new Router();
+        Handler handler = (req, res) -> {
+        };
+        Route route = new Route(handler, new RouteOptions(), new Metrics().route("GET", "/"));
+        for (String resource : RESOURCES) {
+            router.add(HttpMethod.GET, "/api/" + resource, route);
+            router.add(HttpMethod.POST, "/api/" + resource, route);
+            router.add(HttpMethod.GET, "/api/" + resource + "/{id}", route);
+            router.add(HttpMethod.PUT, "/api/" + resource + "/{id}", route);
+            router.add(HttpMethod.DELETE, "/api/" + resource + "/{id}", route);
+            router.add(HttpMethod.GET, "/api/" + resource + "/{id}/history", route);
+        }
+        router.add(HttpMethod.GET, "/static/*", route);
+        router.add(HttpMethod.GET, "/health", route);
+        request = Request.parse("GET / HTTP/1.1\r\n\r\n");
+    }
+
+    @Benchmark
+    public Route staticPath() {
+        return router.find(HttpMethod.GET, "/api/shipments", request);
+    }
+
+    @Benchmark
+    public Route pathParameter() {
+        return router.find(HttpMethod.GET, "/api/shipments/12345/history", request);
+    }
+
+    @Benchmark
+    public Route wildcard() {
+        return router.find(HttpMethod.GET, "/static/css/site.css", request);
+    }
+
+    @Benchmark
+    public Route miss() {
+        return router.find(HttpMethod.GET, "/api/unknown/12345", request);
+    }
+}
@@ -0,0 +1,63 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializeBenchmark {
+    private Map<String, Object> user;
+    private JsonWriter writer;
+
+    @Setup
+    public void setUp() {
+        user = new LinkedHashMap<>();
+        user.put("id", 42);
+        user.put("name", "Ada Lovelace");
+        user.put("email", "ada@example.org");
+        user.put("active", true);
+        user.put("score", 98.5);
+        user.put("team", "analytical-engines");
+        user.put("level", 7);
+        user.put("city", "London");
+        writer = new JsonWriter();
+    }
+
+    @Benchmark
+    public int writeJson() {
+        writer.reset();
+        writer.writeValue(user);
+        return writer.size();
+    }
+
+    @Benchmark
+    public byte[] writeJsonToNewArray() {
+        return JsonWriter.toBytes(user);
+    }
+
+    @Benchmark
+    public byte[] writeJsonLegacy() {
+        return LegacyParsers.buildJsonBody(user).getBytes();
+    }
+
+    @Benchmark
+    public byte[] encodeResponseLegacy() {
+        return LegacyParsers.buildResponse(200, "application/json", LegacyParsers.buildJsonBody(user));
+    }
+}
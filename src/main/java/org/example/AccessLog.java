@@ -0,0 +1,237 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class AccessLog implements Closeable, Runnable {
+    private static final Logger LOGGER = Logger.getLogger(AccessLog.class.getName());
+    private static final int RING_SIZE = 8192;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final DateTimeFormatter CLF_DATE =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US).withZone(ZoneOffset.UTC);
+
+    private final Path file;
+    private final long flushIntervalNanos;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final Entry[] ring = new Entry[RING_SIZE];
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private final LongAdder dropped = new LongAdder();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final StringBuilder line = new StringBuilder(256);
+    private final Thread writer;
+    private volatile boolean running = true;
+    private FileChannel channel;
+    private long fileSize;
+    private long dateSecond = -1;
+    private String date;
+
+    public AccessLog(Path file) throws IOException {
+        this(file, 1000, 100L * 1024 * 1024, 5);
+    }
+
+    public AccessLog(Path file, long flushIntervalMillis, long maxFileSize, int maxFiles) throws IOException {
+        this.file = file;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Entry();
+        }
+        open();
+        writer = new Thread(this, "http-access-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    void log(Request request, InetAddress client, int statusCode, long bytes) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= RING_SIZE) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        Entry entry = ring[(int) (sequence & (RING_SIZE - 1))];
+        entry.timeMillis = System.currentTimeMillis();
+        entry.client = client;
+        entry.method = request != null ? request.getMethod() : null;
+        entry.path = request != null ? request.getPath() : null;
+        entry.query = request != null ? request.getQueryString() : null;
+        entry.version = request != null ? request.getVersion() : null;
+        entry.statusCode = statusCode;
+        entry.bytes = bytes;
+        entry.durationNanos = request != null ? System.nanoTime() - request.getReceivedNanos() : 0;
+        entry.sequence = sequence;
+    }
+
+    @Override
+    public void run() {
+        long nextFlush = System.nanoTime() + flushIntervalNanos;
+        while (running) {
+            int drained = drain();
+            long now = System.nanoTime();
+            if (now - nextFlush >= 0) {
+                flush();
+                nextFlush = now + flushIntervalNanos;
+            }
+            if (drained == 0) {
+                LockSupport.parkNanos(Math.min(IDLE_PARK_NANOS, Math.max(1, nextFlush - now)));
+            }
+        }
+        drain();
+        flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private int drain() {
+        int drained = 0;
+        long next = consumed;
+        while (true) {
+            Entry entry = ring[(int) (next & (RING_SIZE - 1))];
+            if (entry.sequence != next) {
+                break;
+            }
+            append(entry);
+            entry.client = null;
+            entry.method = null;
+            entry.path = null;
+            entry.query = null;
+            consumed = ++next;
+            drained++;
+        }
+        return drained;
+    }
+
+    private void append(Entry entry) {
+        line.setLength(0);
+        line.append(entry.client != null ? entry.client.getHostAddress() : "-").append(" - - [")
+                .append(date(entry.timeMillis)).append("] \"");
+        if (entry.method != null) {
+            line.append(entry.method).append(' ').append(entry.path);
+            if (entry.query != null) {
+                line.append('?').append(entry.query);
+            }
+            line.append(' ').append(entry.version);
+        } else {
+            line.append('-');
+        }
+        line.append("\" ").append(entry.statusCode).append(' ').append(entry.bytes).append(' ')
+                .append(TimeUnit.NANOSECONDS.toMicros(entry.durationNanos)).append('\n');
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > writeBuffer.remaining()) {
+            flush();
+        }
+        if (bytes.length <= writeBuffer.remaining()) {
+            writeBuffer.put(bytes);
+        } else {
+            dropped.increment();
+        }
+    }
+
+    private String date(long timeMillis) {
+        long second = timeMillis / 1000;
+        if (second != dateSecond) {
+            dateSecond = second;
+            date = CLF_DATE.format(Instant.ofEpochSecond(second));
+        }
+        return date;
+    }
+
+    private void flush() {
+        writeBuffer.flip();
+        try {
+            if (!channel.isOpen()) {
+                open();
+            }
+            while (writeBuffer.hasRemaining()) {
+                fileSize += channel.write(writeBuffer);
+            }
+            if (maxFileSize > 0 && fileSize >= maxFileSize) {
+                rotate();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write access log " + file, e);
+        } finally {
+            writeBuffer.clear();
+        }
+    }
+
+    private void rotate() throws IOException {
+        channel.close();
+        // Reopen even if a move fails, so one bad rotation does not turn every later flush into a lost batch.
+        try {
+            Files.deleteIfExists(rotated(maxFiles));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                if (Files.exists(rotated(i))) {
+                    Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (maxFiles > 0) {
+                Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(file);
+            }
+        } finally {
+            open();
+        }
+    }
+
+    private Path rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    private static final class Entry {
+        private volatile long sequence = -1;
+        private long timeMillis;
+        private InetAddress client;
+        private String method;
+        private String path;
+        private String query;
+        private String version;
+        private int statusCode;
+        private long bytes;
+        private long durationNanos;
+    }
+}
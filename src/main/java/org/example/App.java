@@ -1,14 +1,19 @@
 package org.example;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class App {
+    private static final Logger LOGGER = Logger.getLogger(App.class.getName());
+
     public static void main(String[] args) {
-        Server server = new Server("localhost", 8081);
         try {
-            server.startServer();
+            ServerConfig config = args.length > 0 ? ServerConfig.load(Paths.get(args[0])) : ServerConfig.fromEnvironment();
+            config.createServer().startServer();
         } catch (IOException e) {
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Server failed to start", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,111 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+
+class AsyncExchange {
+    private final Response response;
+    private final Transport transport;
+    private final EventLoop eventLoop;
+    private final TimingWheel.Timeout deadline = new TimingWheel.Timeout(this::expired);
+    private CompletionStage<ResponseData> stage;
+    private boolean done;
+
+    private AsyncExchange(Response response) {
+        this.response = response;
+        this.transport = response.getTransport();
+        this.eventLoop = transport.getEventLoop();
+    }
+
+    static Handler adapt(AsyncHandler handler, long deadlineMillis) {
+        return (request, response) -> new AsyncExchange(response).start(handler.handle(request), deadlineMillis);
+    }
+
+    private void start(CompletionStage<ResponseData> stage, long deadlineMillis) {
+        if (stage == null) {
+            throw new IllegalStateException("AsyncHandler returned no CompletionStage");
+        }
+        this.stage = stage;
+        response.suspend();
+        onEventLoop(() -> {
+            transport.setCloseListener(this::cancelled);
+            if (deadlineMillis > 0) {
+                eventLoop.getTimingWheel().schedule(deadline, deadlineMillis);
+            }
+        });
+        stage.whenComplete((data, error) -> onEventLoop(() -> complete(data, error)));
+    }
+
+    private void complete(ResponseData data, Throwable error) {
+        if (!finish()) {
+            return;
+        }
+        try {
+            if (error == null && data != null) {
+                data.sendTo(response);
+            } else {
+                response.markFailed();
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                if (cause instanceof HttpException) {
+                    response.sendError((HttpException) cause);
+                } else {
+                    response.sendText(500, "Internal Server Error");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            transport.closeQuietly();
+        }
+        response.release();
+    }
+
+    private void expired() {
+        if (!finish()) {
+            return;
+        }
+        eventLoop.getServer().getMetrics().recordTimeout();
+        response.markFailed();
+        cancelStage();
+        try {
+            response.sendText(503, "Service Unavailable");
+        } catch (IOException | RuntimeException e) {
+            transport.closeQuietly();
+        }
+        response.release();
+    }
+
+    private void cancelled() {
+        if (!finish()) {
+            return;
+        }
+        cancelStage();
+        response.completeCapture();
+        response.release();
+    }
+
+    private boolean finish() {
+        if (done) {
+            return false;
+        }
+        done = true;
+        deadline.cancel();
+        transport.setCloseListener(null);
+        return true;
+    }
+
+    private void cancelStage() {
+        if (stage instanceof Future) {
+            ((Future<?>) stage).cancel(true);
+        }
+    }
+
+    private void onEventLoop(Runnable task) {
+        if (eventLoop.inEventLoop()) {
+            task.run();
+        } else {
+            eventLoop.execute(task);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionStage;
+
+@FunctionalInterface
+public interface AsyncHandler {
+    CompletionStage<ResponseData> handle(Request request) throws IOException;
+}
@@ -0,0 +1,7 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+
+interface BodySink {
+    void write(ByteBuffer buffer, int from, int to) throws HttpException;
+}
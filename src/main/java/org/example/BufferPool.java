@@ -0,0 +1,191 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BufferPool {
+    static final int[] SIZE_CLASSES = {1024, 2 * 1024, 4 * 1024, 8 * 1024, 16 * 1024, 32 * 1024, 64 * 1024};
+    static final int MAX_POOLED_SIZE = SIZE_CLASSES[SIZE_CLASSES.length - 1];
+
+    private static final int SLAB_SIZE = 512 * 1024;
+    private static final int THREAD_CACHE_SIZE = 32;
+    private static final int MAX_SHARED_PER_CLASS = 1024;
+
+    private final List<Queue<ByteBuffer>> shared = new ArrayList<>();
+    private final AtomicInteger[] sharedCounts = new AtomicInteger[SIZE_CLASSES.length];
+    private final ThreadLocal<List<ArrayDeque<ByteBuffer>>> threadCaches = new ThreadLocal<>();
+    private final boolean leakDetection;
+    private final Map<ByteBuffer, Throwable> outstanding = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder threadCacheHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder slabAllocations = new LongAdder();
+    private final LongAdder unpooledAllocations = new LongAdder();
+
+    public BufferPool() {
+        this(Boolean.getBoolean("httpserver.buffers.leakDetection"));
+    }
+
+    public BufferPool(boolean leakDetection) {
+        this.leakDetection = leakDetection;
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            shared.add(new ConcurrentLinkedQueue<>());
+            sharedCounts[i] = new AtomicInteger();
+        }
+    }
+
+    public ByteBuffer acquire(int minCapacity) {
+        int sizeClass = sizeClassFor(minCapacity);
+        if (sizeClass < 0) {
+            unpooledAllocations.increment();
+            return ByteBuffer.allocate(minCapacity);
+        }
+        acquired.increment();
+        List<ArrayDeque<ByteBuffer>> cache = threadCaches.get();
+        ByteBuffer buffer = cache != null ? cache.get(sizeClass).pollLast() : null;
+        if (buffer != null) {
+            threadCacheHits.increment();
+        } else {
+            buffer = shared.get(sizeClass).poll();
+            if (buffer != null) {
+                sharedCounts[sizeClass].decrementAndGet();
+                sharedHits.increment();
+            } else {
+                buffer = allocateFromSlab(sizeClass);
+            }
+        }
+        buffer.clear();
+        if (leakDetection) {
+            outstanding.put(buffer, new Throwable("Buffer acquired here"));
+        }
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.isReadOnly()) {
+            return;
+        }
+        int sizeClass = exactSizeClass(buffer.capacity());
+        if (sizeClass < 0) {
+            return;
+        }
+        if (leakDetection && outstanding.remove(buffer) == null) {
+            throw new IllegalStateException("Buffer released twice or not acquired from this pool");
+        }
+        released.increment();
+        recycle(buffer, sizeClass);
+    }
+
+    // Only event loop threads get a private cache; worker and handler threads go straight to the shared queues.
+    void enableThreadCache() {
+        List<ArrayDeque<ByteBuffer>> cache = new ArrayList<>(SIZE_CLASSES.length);
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            cache.add(new ArrayDeque<>(THREAD_CACHE_SIZE));
+        }
+        threadCaches.set(cache);
+    }
+
+    void disableThreadCache() {
+        List<ArrayDeque<ByteBuffer>> cache = threadCaches.get();
+        threadCaches.remove();
+        if (cache != null) {
+            for (int i = 0; i < cache.size(); i++) {
+                ByteBuffer buffer;
+                while ((buffer = cache.get(i).pollLast()) != null) {
+                    recycle(buffer, i);
+                }
+            }
+        }
+    }
+
+    public boolean isLeakDetectionEnabled() {
+        return leakDetection;
+    }
+
+    public List<Throwable> getLeaks() {
+        synchronized (outstanding) {
+            return new ArrayList<>(outstanding.values());
+        }
+    }
+
+    public long getOutstandingCount() {
+        return acquired.sum() - released.sum();
+    }
+
+    public long getAcquireCount() {
+        return acquired.sum();
+    }
+
+    public long getThreadCacheHits() {
+        return threadCacheHits.sum();
+    }
+
+    public long getSharedHits() {
+        return sharedHits.sum();
+    }
+
+    public long getSlabAllocations() {
+        return slabAllocations.sum();
+    }
+
+    public long getUnpooledAllocations() {
+        return unpooledAllocations.sum();
+    }
+
+    static int sizeClassFor(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int exactSizeClass(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity == SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private ByteBuffer allocateFromSlab(int sizeClass) {
+        slabAllocations.increment();
+        int size = SIZE_CLASSES[sizeClass];
+        ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+        ByteBuffer first = null;
+        for (int offset = 0; offset + size <= SLAB_SIZE; offset += size) {
+            slab.limit(offset + size).position(offset);
+            ByteBuffer slice = slab.slice();
+            if (first == null) {
+                first = slice;
+            } else {
+                recycle(slice, sizeClass);
+            }
+        }
+        return first;
+    }
+
+    private void recycle(ByteBuffer buffer, int sizeClass) {
+        List<ArrayDeque<ByteBuffer>> cache = threadCaches.get();
+        if (cache != null && cache.get(sizeClass).size() < THREAD_CACHE_SIZE) {
+            cache.get(sizeClass).addLast(buffer);
+        } else if (sharedCounts[sizeClass].incrementAndGet() <= MAX_SHARED_PER_CLASS) {
+            shared.get(sizeClass).add(buffer);
+        } else {
+            sharedCounts[sizeClass].decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+class BufferedBody implements BodySink {
+    private byte[] data;
+    private int size;
+
+    BufferedBody(int initialCapacity) {
+        this.data = new byte[initialCapacity];
+    }
+
+    @Override
+    public void write(ByteBuffer buffer, int from, int to) {
+        int length = to - from;
+        if (size + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(size + length, data.length * 2));
+        }
+        for (int i = from; i < to; i++) {
+            data[size++] = buffer.get(i);
+        }
+    }
+
+    byte[] toByteArray() {
+        return size == data.length ? data : Arrays.copyOf(data, size);
+    }
+}
@@ -0,0 +1,148 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+class ChunkedDecoder {
+    private static final int SIZE = 0;
+    private static final int SIZE_EXTENSION = 1;
+    private static final int SIZE_LF = 2;
+    private static final int DATA = 3;
+    private static final int DATA_CR = 4;
+    private static final int DATA_LF = 5;
+    private static final int TRAILER = 6;
+    private static final int DONE = 7;
+
+    private final BodySink sink;
+    private final long maxBodySize;
+    private long bodySize;
+    private int state = SIZE;
+    private long chunkSize;
+    private boolean sizeDigits;
+    private int trailerLineLength;
+    private byte[] trailers;
+    private int trailersLength;
+
+    ChunkedDecoder(BodySink sink, long maxBodySize) {
+        this.sink = sink;
+        this.maxBodySize = maxBodySize;
+    }
+
+    int decode(ByteBuffer buffer, int from, int to) throws HttpException {
+        int i = from;
+        while (i < to && state != DONE) {
+            byte b = buffer.get(i);
+            switch (state) {
+                case SIZE:
+                    int digit = Character.digit(b, 16);
+                    if (digit >= 0) {
+                        chunkSize = (chunkSize << 4) | digit;
+                        sizeDigits = true;
+                        if (chunkSize > maxBodySize) {
+                            throw new HttpException(413, "Payload Too Large");
+                        }
+                    } else if (b == ';' && sizeDigits) {
+                        state = SIZE_EXTENSION;
+                    } else if (b == '\r' && sizeDigits) {
+                        state = SIZE_LF;
+                    } else {
+                        throw new HttpException(400, "Malformed chunk size");
+                    }
+                    i++;
+                    break;
+                case SIZE_EXTENSION:
+                    if (b == '\r') {
+                        state = SIZE_LF;
+                    }
+                    i++;
+                    break;
+                case SIZE_LF:
+                    if (b != '\n') {
+                        throw new HttpException(400, "Malformed chunk size");
+                    }
+                    i++;
+                    state = chunkSize == 0 ? TRAILER : DATA;
+                    trailerLineLength = 0;
+                    break;
+                case DATA:
+                    int length = (int) Math.min(chunkSize, to - i);
+                    bodySize += length;
+                    if (bodySize > maxBodySize) {
+                        throw new HttpException(413, "Payload Too Large");
+                    }
+                    sink.write(buffer, i, i + length);
+                    i += length;
+                    chunkSize -= length;
+                    if (chunkSize == 0) {
+                        state = DATA_CR;
+                    }
+                    break;
+                case DATA_CR:
+                    if (b != '\r') {
+                        throw new HttpException(400, "Malformed chunk");
+                    }
+                    i++;
+                    state = DATA_LF;
+                    break;
+                case DATA_LF:
+                    if (b != '\n') {
+                        throw new HttpException(400, "Malformed chunk");
+                    }
+                    i++;
+                    sizeDigits = false;
+                    state = SIZE;
+                    break;
+                case TRAILER:
+                    if (b == '\n') {
+                        state = trailerLineLength == 0 ? DONE : TRAILER;
+                        trailerLineLength = 0;
+                        if (state == TRAILER) {
+                            appendTrailer(b);
+                        }
+                    } else if (b != '\r') {
+                        trailerLineLength++;
+                        appendTrailer(b);
+                    }
+                    i++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return i - from;
+    }
+
+    boolean isDone() {
+        return state == DONE;
+    }
+
+    Map<String, String> getTrailers() {
+        if (trailers == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (String line : new String(trailers, 0, trailersLength, StandardCharsets.ISO_8859_1).split("\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                map.putIfAbsent(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private void appendTrailer(byte b) throws HttpException {
+        if (trailers == null) {
+            trailers = new byte[256];
+        } else if (trailersLength == trailers.length) {
+            if (trailersLength >= Connection.MAX_HEADER_SIZE) {
+                throw new HttpException(431, "Request Header Fields Too Large");
+            }
+            trailers = Arrays.copyOf(trailers, trailersLength * 2);
+        }
+        trailers[trailersLength++] = b;
+    }
+}
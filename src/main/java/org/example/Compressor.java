@@ -0,0 +1,171 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+class Compressor {
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+    static final String BROTLI = "br";
+    static final String[] ON_THE_FLY = {GZIP, DEFLATE};
+    static final String[] PRECOMPRESSED = {BROTLI, GZIP};
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int MAX_RETAINED_OUTPUT = 256 * 1024;
+    private static final BlockingQueue<Compressor> POOL =
+            new ArrayBlockingQueue<>(2 * Runtime.getRuntime().availableProcessors());
+
+    private Deflater gzipDeflater;
+    private Deflater zlibDeflater;
+    private final CRC32 crc = new CRC32();
+    private byte[] output = new byte[8 * 1024];
+
+    static Compressor acquire() {
+        Compressor compressor = POOL.poll();
+        return compressor != null ? compressor : new Compressor();
+    }
+
+    // Native deflater memory is freed eagerly when the pool is full rather than left to the finalizer.
+    void release() {
+        trim();
+        if (!POOL.offer(this)) {
+            end();
+        }
+    }
+
+    static String negotiate(String acceptEncoding, String[] supported) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        for (String coding : supported) {
+            if (accepts(acceptEncoding, coding)) {
+                return coding;
+            }
+        }
+        return null;
+    }
+
+    static boolean accepts(String acceptEncoding, String coding) {
+        float wildcard = -1;
+        int start = 0;
+        while (start < acceptEncoding.length()) {
+            int end = acceptEncoding.indexOf(',', start);
+            if (end < 0) {
+                end = acceptEncoding.length();
+            }
+            int semicolon = acceptEncoding.indexOf(';', start);
+            int nameEnd = semicolon >= 0 && semicolon < end ? semicolon : end;
+            String name = acceptEncoding.substring(start, nameEnd).trim();
+            float quality = nameEnd < end ? quality(acceptEncoding.substring(nameEnd + 1, end)) : 1;
+            if (name.equalsIgnoreCase(coding)) {
+                return quality > 0;
+            }
+            if (name.equals("*")) {
+                wildcard = quality;
+            }
+            start = end + 1;
+        }
+        return wildcard > 0;
+    }
+
+    static boolean isCompressible(String contentType, List<String> compressibleTypes) {
+        if (contentType == null) {
+            return false;
+        }
+        for (String type : compressibleTypes) {
+            if (contentType.regionMatches(true, 0, type, 0, type.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int compress(String encoding, int level, byte[] input, int offset, int length) {
+        boolean gzip = GZIP.equals(encoding);
+        Deflater deflater = deflater(gzip);
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(input, offset, length);
+        deflater.finish();
+        int size = 0;
+        if (gzip) {
+            ensureCapacity(GZIP_HEADER.length);
+            System.arraycopy(GZIP_HEADER, 0, output, 0, GZIP_HEADER.length);
+            size = GZIP_HEADER.length;
+        }
+        while (!deflater.finished()) {
+            ensureCapacity(size + 1024);
+            size += deflater.deflate(output, size, output.length - size);
+        }
+        if (gzip) {
+            crc.reset();
+            crc.update(input, offset, length);
+            ensureCapacity(size + 8);
+            size = putIntLe(size, (int) crc.getValue());
+            size = putIntLe(size, length);
+        }
+        return size;
+    }
+
+    byte[] output() {
+        return output;
+    }
+
+    private void trim() {
+        if (output.length > MAX_RETAINED_OUTPUT) {
+            output = new byte[8 * 1024];
+        }
+    }
+
+    private void end() {
+        if (gzipDeflater != null) {
+            gzipDeflater.end();
+        }
+        if (zlibDeflater != null) {
+            zlibDeflater.end();
+        }
+    }
+
+    private Deflater deflater(boolean gzip) {
+        if (gzip) {
+            if (gzipDeflater == null) {
+                gzipDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            }
+            return gzipDeflater;
+        }
+        if (zlibDeflater == null) {
+            zlibDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, false);
+        }
+        return zlibDeflater;
+    }
+
+    private int putIntLe(int position, int value) {
+        output[position] = (byte) value;
+        output[position + 1] = (byte) (value >> 8);
+        output[position + 2] = (byte) (value >> 16);
+        output[position + 3] = (byte) (value >> 24);
+        return position + 4;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > output.length) {
+            output = Arrays.copyOf(output, Math.max(capacity, output.length * 2));
+        }
+    }
+
+    private static float quality(String parameters) {
+        String trimmed = parameters.trim();
+        if (!trimmed.startsWith("q=")) {
+            return 1;
+        }
+        try {
+            return Float.parseFloat(trimmed.substring(2).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ConcurrencyLimiter {
+    private static final int MIN_LIMIT = 1;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int maxLimit;
+    private final long targetLatencyNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger limit;
+    private final AtomicInteger sinceBackoff;
+
+    ConcurrencyLimiter(int initialLimit, int maxLimit, long targetLatencyNanos) {
+        this.maxLimit = maxLimit;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.limit = new AtomicInteger(Math.min(initialLimit, maxLimit));
+        this.sinceBackoff = new AtomicInteger(limit.get());
+    }
+
+    int getLimit() {
+        return limit.get();
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            int active = inFlight.get();
+            if (active >= limit.get()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(active, active + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    // AIMD: slow requests shrink the limit by a tenth at most once per limit's worth of completions,
+    // a fast one grows it by one while the limit is in use.
+    void release(long startNanos) {
+        long latency = System.nanoTime() - startNanos;
+        int active = inFlight.getAndDecrement();
+        int completed = sinceBackoff.incrementAndGet();
+        int current = limit.get();
+        if (latency > targetLatencyNanos) {
+            if (completed >= current
+                    && limit.compareAndSet(current, Math.max(MIN_LIMIT, (int) (current * BACKOFF_RATIO)))) {
+                sinceBackoff.set(0);
+            }
+        } else if (active * 2 >= current && current < maxLimit) {
+            limit.compareAndSet(current, current + 1);
+        }
+    }
+}
@@ -0,0 +1,605 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+class Connection implements Transport {
+    static final int INITIAL_BUFFER_SIZE = 1024;
+    static final int MAX_HEADER_SIZE = 8192;
+    static final int MAX_HEADER_COUNT = 100;
+    static final int MAX_READ_BUFFER_SIZE = 4 * MAX_HEADER_SIZE;
+    static final int WRITE_HIGH_WATER_MARK = 64 * 1024;
+    static final int WRITE_LOW_WATER_MARK = 16 * 1024;
+    private static final long IDLE_WAIT_MILLIS = 1000;
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final SelectionKey key;
+    private final SocketChannel channel;
+    private final EventLoop eventLoop;
+    private final BufferPool bufferPool;
+    private final Metrics metrics;
+    private final ArrayDeque<Object> outbound = new ArrayDeque<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final Object writeMonitor = new Object();
+    private volatile int writeWaiters;
+    private boolean writePaused;
+    private boolean closeAfterFlush;
+    private boolean requestInFlight;
+    private boolean readPaused;
+    private ByteBuffer buffer;
+    private final RequestParser parser = new RequestParser(MAX_HEADER_SIZE, MAX_HEADER_COUNT);
+    private Request pending;
+    private long remainingBody;
+    private ChunkedDecoder chunkedDecoder;
+    private BufferedBody bufferedBody;
+    private MultipartParser multipartParser;
+    private int requestCount;
+    private final TimingWheel.Timeout timeout = new TimingWheel.Timeout(this::timedOut);
+    private Phase phase;
+    private boolean progressed;
+    private Http2Session http2;
+    private Runnable closeListener;
+    private List<Runnable> writableListeners;
+    private InetAddress clientAddress;
+
+    Connection(SelectionKey key, EventLoop eventLoop) {
+        this.key = key;
+        this.channel = (SocketChannel) key.channel();
+        this.eventLoop = eventLoop;
+        this.bufferPool = eventLoop.getServer().getBufferPool();
+        this.metrics = eventLoop.getServer().getMetrics();
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public EventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    @Override
+    public boolean isMultiplexed() {
+        return false;
+    }
+
+    @Override
+    public InetAddress getClientAddress() {
+        if (clientAddress == null) {
+            clientAddress = channel.socket().getInetAddress();
+        }
+        return clientAddress;
+    }
+
+    Http2Session getHttp2Session() {
+        return http2;
+    }
+
+    int read() throws IOException {
+        if (buffer == null) {
+            buffer = bufferPool.acquire(INITIAL_BUFFER_SIZE);
+        }
+        if (!buffer.hasRemaining()) {
+            if (buffer.capacity() >= MAX_READ_BUFFER_SIZE) {
+                readPaused = true;
+                updateInterest();
+                return 0;
+            }
+            grow();
+        }
+        int read = channel.read(buffer);
+        if (read > 0) {
+            progressed = true;
+            metrics.recordBytesRead(read);
+        }
+        return read;
+    }
+
+    @Override
+    public void send(ByteBuffer head, Object body, boolean close) throws IOException {
+        pendingBytes.addAndGet(remaining(head) + (body != null ? remaining(body) : 0));
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(() -> {
+                try {
+                    write(head, body, close);
+                } catch (IOException e) {
+                    closeQuietly();
+                }
+            });
+            return;
+        }
+        write(head, body, close);
+    }
+
+    private void write(ByteBuffer head, Object body, boolean close) throws IOException {
+        write(head);
+        if (body != null) {
+            write(body);
+        }
+        if (close) {
+            closeAfterFlush();
+        }
+        updateTimeout();
+    }
+
+    @Override
+    public void sendPartial(ByteBuffer data) throws IOException {
+        send(data, null, false);
+    }
+
+    @Override
+    public void sendTrailers(List<String> trailers, boolean close) throws IOException {
+        int length = 5;
+        for (String trailer : trailers) {
+            length += trailer.length() + 2;
+        }
+        ByteBuffer end = bufferPool.acquire(length);
+        end.put((byte) '0').put(CRLF);
+        for (int i = 0; i < trailers.size(); i += 2) {
+            putLatin1(end, trailers.get(i));
+            end.put((byte) ':').put((byte) ' ');
+            putLatin1(end, trailers.get(i + 1));
+            end.put(CRLF);
+        }
+        end.put(CRLF).flip();
+        send(end, close);
+    }
+
+    private static void putLatin1(ByteBuffer buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            buffer.put(c == '\r' || c == '\n' ? (byte) ' ' : (byte) c);
+        }
+    }
+
+    @Override
+    public void awaitWritable() throws IOException {
+        if (eventLoop.inEventLoop()) {
+            return;
+        }
+        synchronized (writeMonitor) {
+            writeWaiters++;
+            try {
+                while (pendingBytes.get() > WRITE_HIGH_WATER_MARK && channel.isOpen()) {
+                    writeMonitor.wait(IDLE_WAIT_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the client to read");
+            } finally {
+                writeWaiters--;
+            }
+        }
+        if (!channel.isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void write(Object data) throws IOException {
+        if (closeAfterFlush || !channel.isOpen()) {
+            pendingBytes.addAndGet(-remaining(data));
+            release(data);
+            return;
+        }
+        if (outbound.isEmpty() && pendingBytes.addAndGet(-writeTo(data)) < WRITE_LOW_WATER_MARK) {
+            wakeWriters();
+        }
+        if (remaining(data) == 0) {
+            release(data);
+        } else {
+            outbound.add(data);
+            if (pendingBytes.get() > WRITE_HIGH_WATER_MARK) {
+                writePaused = true;
+            }
+            updateInterest();
+        }
+    }
+
+    void flush() throws IOException {
+        while (!outbound.isEmpty()) {
+            Object head = outbound.peek();
+            long written = writeTo(head);
+            pendingBytes.addAndGet(-written);
+            if (written > 0) {
+                progressed = true;
+            }
+            if (remaining(head) > 0) {
+                break;
+            }
+            release(outbound.poll());
+        }
+        if (outbound.isEmpty() && closeAfterFlush) {
+            close();
+            return;
+        }
+        if (pendingBytes.get() < WRITE_LOW_WATER_MARK) {
+            writePaused = false;
+            wakeWriters();
+        }
+        updateInterest();
+    }
+
+    private long writeTo(Object data) throws IOException {
+        long written = data instanceof FileRegion
+                ? ((FileRegion) data).transferTo(channel) : channel.write((ByteBuffer) data);
+        metrics.recordBytesWritten(written);
+        return written;
+    }
+
+    private static long remaining(Object data) {
+        if (data instanceof FileRegion) {
+            return ((FileRegion) data).remaining();
+        }
+        return ((ByteBuffer) data).remaining();
+    }
+
+    private void release(Object data) {
+        if (data instanceof FileRegion) {
+            ((FileRegion) data).close();
+        } else {
+            bufferPool.release((ByteBuffer) data);
+        }
+    }
+
+    void closeAfterFlush() throws IOException {
+        if (outbound.isEmpty()) {
+            close();
+        } else {
+            closeAfterFlush = true;
+            updateInterest();
+        }
+    }
+
+    boolean isAcceptingRequests() {
+        return channel.isOpen() && !closeAfterFlush && !writePaused && !requestInFlight;
+    }
+
+    @Override
+    public boolean isWriteBacklogged() {
+        return pendingBytes.get() > WRITE_HIGH_WATER_MARK;
+    }
+
+    @Override
+    public void beginRequest() {
+        requestInFlight = true;
+    }
+
+    @Override
+    public void resume() {
+        eventLoop.resume(this);
+    }
+
+    @Override
+    public void setCloseListener(Runnable listener) {
+        this.closeListener = listener;
+    }
+
+    void endRequest() {
+        requestInFlight = false;
+        if (readPaused) {
+            readPaused = false;
+            updateInterest();
+        }
+    }
+
+    @Override
+    public void whenWritable(Runnable task) {
+        if (!isWriteBacklogged() || !channel.isOpen()) {
+            task.run();
+            return;
+        }
+        if (writableListeners == null) {
+            writableListeners = new ArrayList<>(2);
+        }
+        writableListeners.add(task);
+    }
+
+    private void wakeWriters() {
+        if (writeWaiters > 0) {
+            synchronized (writeMonitor) {
+                writeMonitor.notifyAll();
+            }
+        }
+        List<Runnable> listeners = writableListeners;
+        if (listeners != null) {
+            writableListeners = null;
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+    }
+
+    private void updateInterest() {
+        if (!key.isValid()) {
+            return;
+        }
+        int ops = 0;
+        if (!outbound.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if (!writePaused && !readPaused && !closeAfterFlush) {
+            ops |= SelectionKey.OP_READ;
+        }
+        key.interestOps(ops);
+    }
+
+    Request nextRequest() throws IOException {
+        if (buffer == null) {
+            return null;
+        }
+        if (requestCount == 0 && pending == null && eventLoop.getServer().isHttp2Enabled()) {
+            int preface = Http2Session.matchPreface(buffer);
+            if (preface > 0) {
+                http2 = new Http2Session(this);
+                return null;
+            }
+            if (preface == 0) {
+                releaseIdleBuffer();
+                return null;
+            }
+        }
+        if (pending == null) {
+            if (!parser.parse(buffer, buffer.position())) {
+                releaseIdleBuffer();
+                return null;
+            }
+            pending = parser.newRequest(buffer, null);
+            eventLoop.getServer().admit(pending, getClientAddress());
+            startBody();
+            discard(parser.getHeadEnd());
+            parser.reset();
+        }
+
+        int limit = buffer.position();
+        boolean complete;
+        if (chunkedDecoder != null) {
+            discard(chunkedDecoder.decode(buffer, 0, limit));
+            complete = chunkedDecoder.isDone();
+        } else {
+            int length = (int) Math.min(remainingBody, limit);
+            sink().write(buffer, 0, length);
+            discard(length);
+            remainingBody -= length;
+            complete = remainingBody == 0;
+        }
+        if (multipartParser != null && (complete || multipartParser.isBacklogged())
+                && multipartParser.whenDrained(this::resume)) {
+            readPaused = true;
+            updateInterest();
+            return null;
+        }
+        if (!complete) {
+            releaseIdleBuffer();
+            return null;
+        }
+
+        Request request = pending;
+        if (chunkedDecoder != null) {
+            request.setTrailers(chunkedDecoder.getTrailers());
+        }
+        if (multipartParser != null) {
+            request.setParts(multipartParser.finish());
+        } else {
+            request.setBody(bufferedBody.toByteArray());
+        }
+        pending = null;
+        chunkedDecoder = null;
+        bufferedBody = null;
+        multipartParser = null;
+        requestCount++;
+        return request;
+    }
+
+    int getRequestCount() {
+        return requestCount;
+    }
+
+    void upgradeToHttp2(Request request, byte[] settings) throws IOException {
+        requestCount++;
+        ByteBuffer switching = ByteBuffer.wrap(
+                "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"
+                        .getBytes(StandardCharsets.ISO_8859_1));
+        send(switching, false);
+        http2 = new Http2Session(this);
+        http2.upgrade(request, settings);
+    }
+
+    ByteBuffer readBuffer() {
+        return buffer;
+    }
+
+    void consume(int length) {
+        discard(length);
+        releaseIdleBuffer();
+        if (readPaused) {
+            readPaused = false;
+            updateInterest();
+        }
+    }
+
+    void updateTimeout() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        Phase next = currentPhase();
+        Server server = eventLoop.getServer();
+        if (server.isDraining() && http2 != null) {
+            try {
+                http2.goAway();
+                if (next == Phase.IDLE) {
+                    closeAfterFlush();
+                    return;
+                }
+            } catch (IOException e) {
+                closeQuietly();
+                return;
+            }
+        } else if (next == Phase.IDLE && server.isDraining()) {
+            closeQuietly();
+            return;
+        }
+        boolean restart = progressed && (next == Phase.BODY || next == Phase.WRITE);
+        progressed = false;
+        if (next == phase && !restart) {
+            return;
+        }
+        phase = next;
+        long timeoutMillis = server.getTimeoutMillis(next);
+        if (timeoutMillis > 0) {
+            eventLoop.getTimingWheel().schedule(timeout, timeoutMillis);
+        } else {
+            timeout.cancel();
+        }
+    }
+
+    private Phase currentPhase() {
+        if (http2 != null) {
+            if (!outbound.isEmpty() || http2.hasPendingData()) {
+                return Phase.WRITE;
+            }
+            return http2.hasActiveStreams() ? Phase.HANDLER : Phase.IDLE;
+        }
+        if (!outbound.isEmpty()) {
+            return Phase.WRITE;
+        }
+        if (requestInFlight) {
+            return Phase.HANDLER;
+        }
+        if (pending != null) {
+            return Phase.BODY;
+        }
+        if (buffer != null && buffer.position() > 0) {
+            return Phase.HEADER;
+        }
+        return Phase.IDLE;
+    }
+
+    private void timedOut() {
+        Phase expired = phase;
+        phase = null;
+        metrics.recordTimeout();
+        if (http2 != null) {
+            try {
+                http2.goAway();
+                closeAfterFlush();
+            } catch (IOException e) {
+                closeQuietly();
+            }
+            return;
+        }
+        if (expired != Phase.HEADER && expired != Phase.BODY) {
+            closeQuietly();
+            return;
+        }
+        try {
+            new Response(this, "close").sendText(408, "Request Timeout");
+        } catch (IOException | RuntimeException e) {
+            closeQuietly();
+        }
+    }
+
+    void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        key.cancel();
+        timeout.cancel();
+        Object queued;
+        while ((queued = outbound.poll()) != null) {
+            release(queued);
+        }
+        pendingBytes.set(0);
+        wakeWriters();
+        if (http2 != null) {
+            http2.closed();
+        }
+        bufferPool.release(buffer);
+        buffer = null;
+        if (pending != null) {
+            Server.cancelAdmission(pending);
+        }
+        if (multipartParser != null) {
+            multipartParser.abort();
+            multipartParser = null;
+        }
+        eventLoop.connectionClosed();
+        channel.close();
+        Runnable listener = closeListener;
+        closeListener = null;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    @Override
+    public void closeQuietly() {
+        try {
+            close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void startBody() throws HttpException {
+        Server server = eventLoop.getServer();
+        long maxBodySize = server.getMaxRequestBodySize();
+        long contentLength = Math.max(parser.getContentLength(), 0);
+        if (contentLength > maxBodySize) {
+            throw new HttpException(413, "Payload Too Large");
+        }
+        String boundary = pending.isMultipart() && server.parsesMultipart(pending)
+                ? MultipartParser.boundaryOf(pending.getHeader("Content-Type")) : null;
+        if (boundary != null) {
+            multipartParser = new MultipartParser(boundary, server.getMultipartSpillThreshold(), server.getMaxPartSize());
+        } else {
+            bufferedBody = new BufferedBody((int) Math.min(contentLength, INITIAL_BUFFER_SIZE * 64L));
+        }
+        if (parser.isChunked()) {
+            chunkedDecoder = new ChunkedDecoder(sink(), maxBodySize);
+        } else {
+            remainingBody = contentLength;
+        }
+    }
+
+    private BodySink sink() {
+        return multipartParser != null ? multipartParser : bufferedBody;
+    }
+
+    private void discard(int length) {
+        if (length == 0) {
+            return;
+        }
+        buffer.flip();
+        buffer.position(length);
+        buffer.compact();
+    }
+
+    private void releaseIdleBuffer() {
+        if (buffer.position() == 0) {
+            bufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void grow() {
+        ByteBuffer grown = bufferPool.acquire(Math.min(buffer.capacity() * 2, MAX_READ_BUFFER_SIZE));
+        buffer.flip();
+        grown.put(buffer);
+        bufferPool.release(buffer);
+        buffer = grown;
+    }
+
+    enum Phase {
+        IDLE, HEADER, BODY, HANDLER, WRITE
+    }
+}
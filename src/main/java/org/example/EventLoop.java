@@ -0,0 +1,314 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class EventLoop implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(EventLoop.class.getName());
+    private static final long TIMEOUT_TICK_MILLIS = 100;
+    private static final int TIMEOUT_SLOTS = 512;
+
+    private final Server server;
+    private final String name;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final TimingWheel timingWheel = new TimingWheel(TIMEOUT_TICK_MILLIS, TIMEOUT_SLOTS);
+    private final List<SelectionKey> acceptorKeys = new ArrayList<>();
+    private final Metrics.LoopMetrics metrics;
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    EventLoop(Server server, String name) throws IOException {
+        this.server = server;
+        this.name = name;
+        this.selector = Selector.open();
+        this.metrics = server.getMetrics().loop(name);
+    }
+
+    Server getServer() {
+        return server;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    Metrics.LoopMetrics getMetrics() {
+        return metrics;
+    }
+
+    TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    void registerAcceptor(ServerSocketChannel serverChannel) {
+        execute(() -> {
+            try {
+                serverChannel.configureBlocking(false);
+                acceptorKeys.add(serverChannel.register(selector, SelectionKey.OP_ACCEPT));
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, name + " could not register the server socket", e);
+            }
+        });
+    }
+
+    void resumeAccepting() {
+        execute(() -> {
+            for (SelectionKey key : acceptorKeys) {
+                if (key.isValid()) {
+                    key.interestOps(SelectionKey.OP_ACCEPT);
+                }
+            }
+        });
+    }
+
+    void drain() {
+        execute(() -> {
+            for (SelectionKey key : acceptorKeys) {
+                closeQuietly(key.channel());
+            }
+            acceptorKeys.clear();
+            for (SelectionKey key : selector.keys()) {
+                Object attachment = key.attachment();
+                if (attachment instanceof Connection) {
+                    ((Connection) attachment).updateTimeout();
+                }
+            }
+        });
+    }
+
+    void addConnection(SocketChannel clientChannel) {
+        connectionCount.incrementAndGet();
+        execute(() -> {
+            try {
+                clientChannel.configureBlocking(false);
+                server.configureSocket(clientChannel);
+                SelectionKey clientKey = clientChannel.register(selector, SelectionKey.OP_READ);
+                Connection connection = new Connection(clientKey, this);
+                clientKey.attach(connection);
+                connection.updateTimeout();
+            } catch (IOException e) {
+                connectionClosed();
+                closeQuietly(clientChannel);
+            }
+        });
+    }
+
+    SelectionKey register(SocketChannel channel, int interestOps, Object attachment) throws IOException {
+        return channel.register(selector, interestOps, attachment);
+    }
+
+    void connectionClosed() {
+        connectionCount.decrementAndGet();
+        server.releaseConnection();
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        BufferPool bufferPool = server.getBufferPool();
+        bufferPool.enableThreadCache();
+        try {
+            while (running) {
+                try {
+                    selector.select(timingWheel.isEmpty() ? 0 : TIMEOUT_TICK_MILLIS);
+                    long start = System.nanoTime();
+                    Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+
+                    while (keyIterator.hasNext()) {
+                        SelectionKey key = keyIterator.next();
+                        keyIterator.remove();
+
+                        if (key.isValid() && key.isAcceptable()) {
+                            acceptConnection(key);
+                            continue;
+                        }
+                        if (key.attachment() instanceof UpstreamConnection) {
+                            ((UpstreamConnection) key.attachment()).process(key);
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                handleWrite(key);
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                handleRead(key);
+                            }
+                            connection.updateTimeout();
+                        } catch (IOException | RuntimeException e) {
+                            connection.closeQuietly();
+                        }
+                    }
+                    runTasks();
+                    timingWheel.advance();
+                    metrics.recordIteration(System.nanoTime() - start);
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, name + " iteration failed", e);
+                }
+            }
+        } finally {
+            closeAll();
+            bufferPool.disableThreadCache();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, name + " task failed", e);
+            }
+        }
+    }
+
+    private void acceptConnection(SelectionKey key) {
+        ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
+        try {
+            while (true) {
+                if (!server.reserveConnection()) {
+                    key.interestOps(0);
+                    server.acceptPaused();
+                    return;
+                }
+                SocketChannel clientChannel;
+                try {
+                    clientChannel = serverChannel.accept();
+                } catch (IOException e) {
+                    server.releaseConnection();
+                    throw e;
+                }
+                if (clientChannel == null) {
+                    server.releaseConnection();
+                    return;
+                }
+                if (!server.admitConnection(clientChannel)) {
+                    server.releaseConnection();
+                    closeQuietly(clientChannel);
+                    continue;
+                }
+                server.nextEventLoop(this).addConnection(clientChannel);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, name + " accept failed", e);
+        }
+    }
+
+    private void handleRead(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (connection.read() == -1) {
+            connection.close();
+            return;
+        }
+        processRequests(connection);
+    }
+
+    private void handleWrite(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        connection.flush();
+        processRequests(connection);
+    }
+
+    void resume(Connection connection) {
+        execute(() -> {
+            connection.endRequest();
+            try {
+                processRequests(connection);
+                connection.updateTimeout();
+            } catch (IOException | RuntimeException e) {
+                connection.closeQuietly();
+            }
+        });
+    }
+
+    private void processRequests(Connection connection) throws IOException {
+        while (connection.isAcceptingRequests()) {
+            Http2Session http2 = connection.getHttp2Session();
+            if (http2 != null) {
+                http2.process();
+                return;
+            }
+            Request request;
+            try {
+                request = connection.nextRequest();
+            } catch (HttpException e) {
+                server.recordRejected(e);
+                new Response(connection, "close").sendError(e);
+                return;
+            }
+            if (request == null) {
+                if (connection.getHttp2Session() != null) {
+                    continue;
+                }
+                return;
+            }
+            byte[] settings = server.isHttp2Enabled() ? Http2Session.upgradeSettings(request) : null;
+            if (settings != null) {
+                connection.upgradeToHttp2(request, settings);
+            } else {
+                server.dispatch(connection, request);
+            }
+        }
+    }
+
+    private void closeAll() {
+        runTasks();
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                ((Connection) attachment).closeQuietly();
+            } else {
+                closeQuietly(key.channel());
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package org.example;
+
+public enum ExecutionMode {
+    EVENT_LOOP,
+    VIRTUAL_THREAD,
+    WORKER_POOL
+}
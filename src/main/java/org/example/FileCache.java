@@ -0,0 +1,66 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class FileCache {
+    static final int MAX_FILE_SIZE = 256 * 1024;
+
+    private final long capacity;
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    FileCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    ByteBuffer get(Path path, long length, long lastModified) throws IOException {
+        if (length > MAX_FILE_SIZE || length > capacity) {
+            return null;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(path);
+            if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+                return entry.data.duplicate();
+            }
+        }
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() != length) {
+                return null;
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length).asReadOnlyBuffer();
+        }
+        synchronized (this) {
+            Entry previous = entries.put(path, new Entry(data, length, lastModified));
+            if (previous != null) {
+                size -= previous.length;
+            }
+            size += length;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (size > capacity && eldest.hasNext()) {
+                size -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+        return data.duplicate();
+    }
+
+    private static final class Entry {
+        private final ByteBuffer data;
+        private final long length;
+        private final long lastModified;
+
+        Entry(ByteBuffer data, long length, long lastModified) {
+            this.data = data;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+class FileRegion {
+    private final FileChannel channel;
+    private long position;
+    private final long end;
+
+    FileRegion(FileChannel channel, long position, long count) {
+        this.channel = channel;
+        this.position = position;
+        this.end = position + count;
+    }
+
+    long transferTo(WritableByteChannel target) throws IOException {
+        long transferred = channel.transferTo(position, end - position, target);
+        if (transferred == 0 && position >= channel.size()) {
+            throw new IOException("File shrank while it was being sent");
+        }
+        position += transferred;
+        return transferred;
+    }
+
+    int read(ByteBuffer target) throws IOException {
+        int read = channel.read(target, position);
+        if (read <= 0) {
+            throw new IOException("File shrank while it was being sent");
+        }
+        position += read;
+        return read;
+    }
+
+    long remaining() {
+        return end - position;
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class Hpack {
+    static final int DEFAULT_TABLE_SIZE = 4096;
+    private static final int STATIC_COUNT = 61;
+    private static final String[] STATIC_NAMES = {
+            ":authority", ":method", ":method", ":path", ":path", ":scheme", ":scheme", ":status", ":status",
+            ":status", ":status", ":status", ":status", ":status", "accept-charset", "accept-encoding",
+            "accept-language", "accept-ranges", "accept", "access-control-allow-origin", "age", "allow",
+            "authorization", "cache-control", "content-disposition", "content-encoding", "content-language",
+            "content-length", "content-location", "content-range", "content-type", "cookie", "date", "etag", "expect",
+            "expires", "from", "host", "if-match", "if-modified-since", "if-none-match", "if-range",
+            "if-unmodified-since", "last-modified", "link", "location", "max-forwards", "proxy-authenticate",
+            "proxy-authorization", "range", "referer", "refresh", "retry-after", "server", "set-cookie",
+            "strict-transport-security", "transfer-encoding", "user-agent", "vary", "via", "www-authenticate"
+    };
+    private static final String[] STATIC_VALUES = new String[STATIC_COUNT];
+    private static final Map<String, Integer> STATIC_INDEX = new HashMap<>();
+    private static final List<String> UNINDEXED = Arrays.asList(
+            "age", "content-length", "content-range", "date", "etag", "expires", "last-modified", "set-cookie");
+
+    static {
+        Arrays.fill(STATIC_VALUES, "");
+        String[] values = {"GET", "POST", "/", "/index.html", "http", "https", "200", "204", "206", "304", "400", "404",
+                "500"};
+        System.arraycopy(values, 0, STATIC_VALUES, 1, values.length);
+        STATIC_VALUES[15] = "gzip, deflate";
+        for (int i = STATIC_COUNT - 1; i >= 0; i--) {
+            STATIC_INDEX.put(STATIC_NAMES[i], i + 1);
+        }
+    }
+
+    private Hpack() {
+    }
+
+    private static String staticName(int index) {
+        return STATIC_NAMES[index - 1];
+    }
+
+    private static String staticValue(int index) {
+        return STATIC_VALUES[index - 1];
+    }
+
+    static final class Decoder {
+        private final Table table = new Table(DEFAULT_TABLE_SIZE);
+        private final int maxTableSize;
+        private byte[] block;
+        private int position;
+        private int end;
+
+        Decoder(int maxTableSize) {
+            this.maxTableSize = maxTableSize;
+        }
+
+        List<String> decode(byte[] block, int length) throws Http2Exception {
+            this.block = block;
+            this.position = 0;
+            this.end = length;
+            List<String> fields = new ArrayList<>(16);
+            while (position < end) {
+                int b = block[position] & 0xff;
+                if ((b & 0x80) != 0) {
+                    int index = readInteger(7);
+                    fields.add(name(index));
+                    fields.add(value(index));
+                } else if ((b & 0x40) != 0) {
+                    int index = readInteger(6);
+                    String name = index == 0 ? readString() : name(index);
+                    String value = readString();
+                    table.add(name, value);
+                    fields.add(name);
+                    fields.add(value);
+                } else if ((b & 0x20) != 0) {
+                    if (!fields.isEmpty()) {
+                        throw error("Table size update after a header field");
+                    }
+                    int size = readInteger(5);
+                    if (size > maxTableSize) {
+                        throw error("Table size update above the advertised limit");
+                    }
+                    table.setMaxSize(size);
+                } else {
+                    int index = readInteger(4);
+                    String name = index == 0 ? readString() : name(index);
+                    fields.add(name);
+                    fields.add(readString());
+                }
+            }
+            this.block = null;
+            return fields;
+        }
+
+        private String name(int index) throws Http2Exception {
+            if (index == 0 || index > STATIC_COUNT + table.count()) {
+                throw error("Invalid table index " + index);
+            }
+            return index <= STATIC_COUNT ? staticName(index) : table.name(index - STATIC_COUNT - 1);
+        }
+
+        private String value(int index) {
+            return index <= STATIC_COUNT ? staticValue(index) : table.value(index - STATIC_COUNT - 1);
+        }
+
+        private String readString() throws Http2Exception {
+            if (position >= end) {
+                throw error("Truncated string literal");
+            }
+            boolean huffman = (block[position] & 0x80) != 0;
+            int length = readInteger(7);
+            if (length > end - position) {
+                throw error("Truncated string literal");
+            }
+            String value = huffman ? Huffman.decode(block, position, length)
+                    : new String(block, position, length, StandardCharsets.ISO_8859_1);
+            position += length;
+            return value;
+        }
+
+        private int readInteger(int prefixBits) throws Http2Exception {
+            int max = (1 << prefixBits) - 1;
+            int value = block[position++] & max;
+            if (value < max) {
+                return value;
+            }
+            for (int shift = 0; ; shift += 7) {
+                if (position >= end || shift > 21) {
+                    throw error("Invalid integer encoding");
+                }
+                int b = block[position++];
+                value += (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        private static Http2Exception error(String message) {
+            return new Http2Exception(Http2Session.COMPRESSION_ERROR, message);
+        }
+    }
+
+    static final class Encoder {
+        private final Table table = new Table(DEFAULT_TABLE_SIZE);
+        private int pendingMinSize = -1;
+        private byte[] buffer = new byte[256];
+        private int size;
+
+        void setMaxTableSize(int peerMaxSize) {
+            int maxSize = Math.min(peerMaxSize, DEFAULT_TABLE_SIZE);
+            if (maxSize == table.maxSize) {
+                return;
+            }
+            table.setMaxSize(maxSize);
+            pendingMinSize = pendingMinSize < 0 ? maxSize : Math.min(pendingMinSize, maxSize);
+        }
+
+        int encode(List<String> fields) {
+            size = 0;
+            if (pendingMinSize >= 0) {
+                writeInteger(0x20, 5, pendingMinSize);
+                if (pendingMinSize != table.maxSize) {
+                    writeInteger(0x20, 5, table.maxSize);
+                }
+                pendingMinSize = -1;
+            }
+            for (int i = 0; i < fields.size(); i += 2) {
+                encode(fields.get(i), fields.get(i + 1));
+            }
+            return size;
+        }
+
+        byte[] array() {
+            return buffer;
+        }
+
+        private void encode(String name, String value) {
+            Integer staticIndex = STATIC_INDEX.get(name);
+            if (staticIndex != null) {
+                for (int index = staticIndex; index <= STATIC_COUNT && staticName(index).equals(name); index++) {
+                    if (staticValue(index).equals(value)) {
+                        writeInteger(0x80, 7, index);
+                        return;
+                    }
+                }
+            }
+            int nameIndex = staticIndex != null ? staticIndex : 0;
+            for (int i = 0; i < table.count(); i++) {
+                if (table.name(i).equals(name)) {
+                    if (table.value(i).equals(value)) {
+                        writeInteger(0x80, 7, STATIC_COUNT + 1 + i);
+                        return;
+                    }
+                    if (nameIndex == 0) {
+                        nameIndex = STATIC_COUNT + 1 + i;
+                    }
+                }
+            }
+            if (UNINDEXED.contains(name)) {
+                writeInteger(0x00, 4, nameIndex);
+            } else {
+                writeInteger(0x40, 6, nameIndex);
+                table.add(name, value);
+            }
+            if (nameIndex == 0) {
+                writeString(name);
+            }
+            writeString(value);
+        }
+
+        private void writeString(String value) {
+            int huffmanLength = Huffman.encodedLength(value);
+            if (huffmanLength < value.length()) {
+                writeInteger(0x80, 7, huffmanLength);
+                ensureCapacity(huffmanLength);
+                size = Huffman.encode(value, buffer, size);
+            } else {
+                writeInteger(0x00, 7, value.length());
+                ensureCapacity(value.length());
+                for (int i = 0; i < value.length(); i++) {
+                    buffer[size++] = (byte) value.charAt(i);
+                }
+            }
+        }
+
+        private void writeInteger(int pattern, int prefixBits, int value) {
+            ensureCapacity(6);
+            int max = (1 << prefixBits) - 1;
+            if (value < max) {
+                buffer[size++] = (byte) (pattern | value);
+                return;
+            }
+            buffer[size++] = (byte) (pattern | max);
+            value -= max;
+            while (value >= 0x80) {
+                buffer[size++] = (byte) (value & 0x7f | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(size + additional, buffer.length * 2));
+            }
+        }
+    }
+
+    private static final class Table {
+        private String[] names = new String[16];
+        private String[] values = new String[16];
+        private int first;
+        private int count;
+        private int size;
+        private int maxSize;
+
+        Table(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        int count() {
+            return count;
+        }
+
+        String name(int index) {
+            return names[slot(index)];
+        }
+
+        String value(int index) {
+            return values[slot(index)];
+        }
+
+        void add(String name, String value) {
+            int entrySize = entrySize(name, value);
+            evict(maxSize - entrySize);
+            if (entrySize > maxSize) {
+                return;
+            }
+            if (count == names.length) {
+                grow();
+            }
+            first = (first - 1) & (names.length - 1);
+            names[first] = name;
+            values[first] = value;
+            count++;
+            size += entrySize;
+        }
+
+        void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            evict(maxSize);
+        }
+
+        private void evict(int targetSize) {
+            while (count > 0 && size > targetSize) {
+                int slot = slot(count - 1);
+                size -= entrySize(names[slot], values[slot]);
+                names[slot] = null;
+                values[slot] = null;
+                count--;
+            }
+        }
+
+        private int slot(int index) {
+            return (first + index) & (names.length - 1);
+        }
+
+        private void grow() {
+            String[] grownNames = new String[names.length * 2];
+            String[] grownValues = new String[values.length * 2];
+            for (int i = 0; i < count; i++) {
+                grownNames[i] = name(i);
+                grownValues[i] = value(i);
+            }
+            names = grownNames;
+            values = grownValues;
+            first = 0;
+        }
+
+        private static int entrySize(String name, String value) {
+            return name.length() + value.length() + 32;
+        }
+    }
+}
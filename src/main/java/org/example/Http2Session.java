@@ -0,0 +1,788 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class Http2Session {
+    static final int NO_ERROR = 0x0;
+    static final int PROTOCOL_ERROR = 0x1;
+    static final int INTERNAL_ERROR = 0x2;
+    static final int FLOW_CONTROL_ERROR = 0x3;
+    static final int STREAM_CLOSED = 0x5;
+    static final int FRAME_SIZE_ERROR = 0x6;
+    static final int REFUSED_STREAM = 0x7;
+    static final int COMPRESSION_ERROR = 0x9;
+    static final int ENHANCE_YOUR_CALM = 0xb;
+
+    static final int DATA = 0x0;
+    static final int HEADERS = 0x1;
+    static final int PRIORITY = 0x2;
+    static final int RST_STREAM = 0x3;
+    static final int SETTINGS = 0x4;
+    static final int PUSH_PROMISE = 0x5;
+    static final int PING = 0x6;
+    static final int GOAWAY = 0x7;
+    static final int WINDOW_UPDATE = 0x8;
+    static final int CONTINUATION = 0x9;
+
+    static final int END_STREAM = 0x1;
+    static final int ACK = 0x1;
+    static final int END_HEADERS = 0x4;
+    static final int PADDED = 0x8;
+    static final int PRIORITY_FLAG = 0x20;
+
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    static final int FRAME_HEADER_LENGTH = 9;
+    static final int DEFAULT_WINDOW_SIZE = 65_535;
+    static final int DEFAULT_MAX_FRAME_SIZE = 16_384;
+    private static final int MAX_FRAME_SIZE_LIMIT = 16_777_215;
+    private static final int MAX_HEADER_LIST_SIZE = 2 * Connection.MAX_HEADER_SIZE;
+    private static final int MAX_HEADER_BLOCK_SIZE = 4 * MAX_HEADER_LIST_SIZE;
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final List<String> CONNECTION_SPECIFIC = Arrays.asList(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade");
+
+    private final Connection connection;
+    private final Server server;
+    private final BufferPool bufferPool;
+    private final Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+    private final Hpack.Encoder encoder = new Hpack.Encoder();
+    private final Map<Integer, Http2Stream> streams = new HashMap<>();
+    private final ArrayDeque<Http2Stream> writable = new ArrayDeque<>();
+    private final ArrayDeque<Http2Stream> blocked = new ArrayDeque<>();
+    private boolean prefaceReceived;
+    private int lastStreamId;
+    private boolean goAwaySent;
+    private boolean peerGoingAway;
+    private int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+    private long connectionSendWindow = DEFAULT_WINDOW_SIZE;
+    private int connectionReceiveWindow = DEFAULT_WINDOW_SIZE;
+    private byte[] headerBlock = new byte[1024];
+    private int headerBlockLength;
+    private int headerStreamId;
+    private boolean headerEndStream;
+
+    Http2Session(Connection connection) throws IOException {
+        this.connection = connection;
+        this.server = connection.getEventLoop().getServer();
+        this.bufferPool = server.getBufferPool();
+        ByteBuffer settings = bufferPool.acquire(FRAME_HEADER_LENGTH + 12);
+        putFrameHeader(settings, 12, SETTINGS, 0, 0);
+        settings.putShort((short) SETTINGS_MAX_CONCURRENT_STREAMS).putInt(server.getHttp2MaxConcurrentStreams());
+        settings.putShort((short) SETTINGS_MAX_HEADER_LIST_SIZE).putInt(MAX_HEADER_LIST_SIZE);
+        settings.flip();
+        connection.send(settings, false);
+    }
+
+    static int matchPreface(ByteBuffer buffer) {
+        int length = Math.min(buffer.position(), PREFACE.length);
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(i) != PREFACE[i]) {
+                return -1;
+            }
+        }
+        return length == PREFACE.length ? 1 : 0;
+    }
+
+    static byte[] upgradeSettings(Request request) {
+        String upgrade = request.getHeader("Upgrade");
+        String settings = request.getHeader("HTTP2-Settings");
+        if (upgrade == null || settings == null || !"HTTP/1.1".equals(request.getVersion())) {
+            return null;
+        }
+        boolean h2c = false;
+        for (String protocol : upgrade.split(",")) {
+            h2c |= protocol.trim().equalsIgnoreCase("h2c");
+        }
+        if (!h2c) {
+            return null;
+        }
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(settings.trim());
+            return payload.length % 6 == 0 ? payload : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static boolean isConnectionSpecific(String name) {
+        return CONNECTION_SPECIFIC.contains(name);
+    }
+
+    static void putFrameHeader(ByteBuffer buffer, int length, int type, int flags, int streamId) {
+        buffer.put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length);
+        buffer.put((byte) type).put((byte) flags).putInt(streamId);
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    boolean hasActiveStreams() {
+        return !streams.isEmpty();
+    }
+
+    boolean hasPendingData() {
+        return !writable.isEmpty() || !blocked.isEmpty();
+    }
+
+    void upgrade(Request request, byte[] settings) throws IOException {
+        applySettings(ByteBuffer.wrap(settings), 0, settings.length);
+        lastStreamId = 1;
+        Http2Stream stream = new Http2Stream(this, 1, peerInitialWindowSize, request);
+        streams.put(1, stream);
+        stream.endRequest(null);
+        dispatch(stream);
+    }
+
+    void process() throws IOException {
+        try {
+            readFrames();
+            writeStreams();
+        } catch (Http2Exception e) {
+            goAway(e.getErrorCode());
+            connection.closeAfterFlush();
+        }
+    }
+
+    private void readFrames() throws IOException {
+        ByteBuffer buffer = connection.readBuffer();
+        if (buffer == null) {
+            return;
+        }
+        int limit = buffer.position();
+        int offset = 0;
+        if (!prefaceReceived) {
+            int preface = matchPreface(buffer);
+            if (preface < 0) {
+                throw new Http2Exception(PROTOCOL_ERROR, "Invalid connection preface");
+            }
+            if (preface == 0) {
+                return;
+            }
+            prefaceReceived = true;
+            offset = PREFACE.length;
+        }
+        while (limit - offset >= FRAME_HEADER_LENGTH) {
+            int length = (buffer.get(offset) & 0xff) << 16 | (buffer.get(offset + 1) & 0xff) << 8
+                    | buffer.get(offset + 2) & 0xff;
+            if (length > DEFAULT_MAX_FRAME_SIZE) {
+                throw new Http2Exception(FRAME_SIZE_ERROR, "Frame of " + length + " bytes");
+            }
+            if (limit - offset < FRAME_HEADER_LENGTH + length) {
+                break;
+            }
+            int type = buffer.get(offset + 3) & 0xff;
+            int flags = buffer.get(offset + 4) & 0xff;
+            int streamId = buffer.getInt(offset + 5) & 0x7fffffff;
+            handleFrame(buffer, offset + FRAME_HEADER_LENGTH, length, type, flags, streamId);
+            offset += FRAME_HEADER_LENGTH + length;
+            if (!connection.getChannel().isOpen()) {
+                return;
+            }
+        }
+        connection.consume(offset);
+    }
+
+    private void handleFrame(ByteBuffer buffer, int offset, int length, int type, int flags, int streamId)
+            throws IOException {
+        if (headerStreamId != 0 && (type != CONTINUATION || streamId != headerStreamId)) {
+            throw new Http2Exception(PROTOCOL_ERROR, "Expected CONTINUATION for stream " + headerStreamId);
+        }
+        switch (type) {
+            case DATA:
+                onData(buffer, offset, length, flags, streamId);
+                break;
+            case HEADERS:
+                onHeaders(buffer, offset, length, flags, streamId);
+                break;
+            case PRIORITY:
+                if (streamId == 0) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "PRIORITY on stream 0");
+                }
+                break;
+            case RST_STREAM:
+                onReset(buffer, offset, length, streamId);
+                break;
+            case SETTINGS:
+                onSettings(buffer, offset, length, flags, streamId);
+                break;
+            case PUSH_PROMISE:
+                throw new Http2Exception(PROTOCOL_ERROR, "Clients cannot push");
+            case PING:
+                onPing(buffer, offset, length, flags, streamId);
+                break;
+            case GOAWAY:
+                if (streamId != 0) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "GOAWAY on stream " + streamId);
+                }
+                peerGoingAway = true;
+                if (streams.isEmpty()) {
+                    connection.closeAfterFlush();
+                }
+                break;
+            case WINDOW_UPDATE:
+                onWindowUpdate(buffer, offset, length, streamId);
+                break;
+            case CONTINUATION:
+                if (headerStreamId == 0) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "Unexpected CONTINUATION");
+                }
+                appendHeaderBlock(buffer, offset, offset + length);
+                if ((flags & END_HEADERS) != 0) {
+                    headersComplete();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onData(ByteBuffer buffer, int offset, int length, int flags, int streamId) throws IOException {
+        if (streamId == 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "DATA on stream 0");
+        }
+        connectionReceiveWindow -= length;
+        if (connectionReceiveWindow < 0) {
+            throw new Http2Exception(FLOW_CONTROL_ERROR, "Connection flow-control window exceeded");
+        }
+        int end = offset + length;
+        int start = offset;
+        if ((flags & PADDED) != 0) {
+            start = unpad(buffer, offset, end);
+            end -= buffer.get(offset) & 0xff;
+        }
+        Http2Stream stream = streams.get(streamId);
+        if (stream == null || stream.isRequestEnded()) {
+            if (streamId > lastStreamId) {
+                throw new Http2Exception(PROTOCOL_ERROR, "DATA on idle stream " + streamId);
+            }
+            if (stream != null) {
+                reset(stream, STREAM_CLOSED);
+            }
+        } else if (!stream.consumeWindow(length)) {
+            reset(stream, FLOW_CONTROL_ERROR);
+        } else {
+            try {
+                stream.receiveData(buffer, start, end);
+            } catch (HttpException e) {
+                reject(stream, e);
+            }
+            if ((flags & END_STREAM) != 0) {
+                endRequest(stream);
+            } else {
+                int increment = stream.windowUpdate();
+                if (increment > 0) {
+                    writeWindowUpdate(streamId, increment);
+                } else if (stream.isBodyBacklogged()) {
+                    stream.whenBodyDrained(() -> connection.getEventLoop().execute(() -> replenish(stream)));
+                }
+            }
+        }
+        if (connectionReceiveWindow < DEFAULT_WINDOW_SIZE / 2) {
+            writeWindowUpdate(0, DEFAULT_WINDOW_SIZE - connectionReceiveWindow);
+            connectionReceiveWindow = DEFAULT_WINDOW_SIZE;
+        }
+    }
+
+    private void onHeaders(ByteBuffer buffer, int offset, int length, int flags, int streamId) throws IOException {
+        if (streamId == 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "HEADERS on stream 0");
+        }
+        int start = offset;
+        int end = offset + length;
+        if ((flags & PADDED) != 0) {
+            start = unpad(buffer, offset, end);
+            end -= buffer.get(offset) & 0xff;
+        }
+        if ((flags & PRIORITY_FLAG) != 0) {
+            start += 5;
+            if (start > end) {
+                throw new Http2Exception(FRAME_SIZE_ERROR, "HEADERS frame too short for its priority");
+            }
+        }
+        headerBlockLength = 0;
+        headerStreamId = streamId;
+        headerEndStream = (flags & END_STREAM) != 0;
+        appendHeaderBlock(buffer, start, end);
+        if ((flags & END_HEADERS) != 0) {
+            headersComplete();
+        }
+    }
+
+    private void headersComplete() throws IOException {
+        int streamId = headerStreamId;
+        headerStreamId = 0;
+        List<String> fields = decoder.decode(headerBlock, headerBlockLength);
+        Http2Stream stream = streams.get(streamId);
+        if (stream != null) {
+            if (stream.isRequestEnded()) {
+                reset(stream, STREAM_CLOSED);
+            } else if (!headerEndStream) {
+                reset(stream, PROTOCOL_ERROR);
+            } else {
+                stream.receiveTrailers(fields);
+                endRequest(stream);
+            }
+            return;
+        }
+        if (streamId <= lastStreamId || (streamId & 1) == 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "HEADERS opening invalid stream " + streamId);
+        }
+        lastStreamId = streamId;
+        if (goAwaySent || streams.size() >= server.getHttp2MaxConcurrentStreams()) {
+            writeReset(streamId, REFUSED_STREAM);
+            return;
+        }
+        Request request = newRequest(fields);
+        if (request == null) {
+            writeReset(streamId, PROTOCOL_ERROR);
+            return;
+        }
+        stream = new Http2Stream(this, streamId, peerInitialWindowSize, request);
+        streams.put(streamId, stream);
+        try {
+            if (headerListSize(fields) > MAX_HEADER_LIST_SIZE) {
+                throw new HttpException(431, "Request Header Fields Too Large");
+            }
+            server.admit(request, connection.getClientAddress());
+            stream.startBody();
+        } catch (HttpException e) {
+            reject(stream, e);
+        }
+        if (headerEndStream) {
+            endRequest(stream);
+        }
+    }
+
+    private Request newRequest(List<String> fields) {
+        String method = null;
+        String path = null;
+        String scheme = null;
+        String authority = null;
+        String cookie = null;
+        boolean host = false;
+        List<String> headers = new ArrayList<>(fields.size());
+        for (int i = 0; i < fields.size(); i += 2) {
+            String name = fields.get(i);
+            String value = fields.get(i + 1);
+            if (!isValidValue(value)) {
+                return null;
+            }
+            if (name.startsWith(":")) {
+                if (!headers.isEmpty() || cookie != null) {
+                    return null;
+                }
+                if (name.equals(":method") && method == null) {
+                    method = value;
+                } else if (name.equals(":path") && path == null) {
+                    path = value;
+                } else if (name.equals(":scheme") && scheme == null) {
+                    scheme = value;
+                } else if (name.equals(":authority") && authority == null) {
+                    authority = value;
+                } else {
+                    return null;
+                }
+            } else if (!isValidName(name) || isConnectionSpecific(name) || name.equals("te") && !value.equals("trailers")) {
+                return null;
+            } else if (name.equals("cookie")) {
+                cookie = cookie == null ? value : cookie + "; " + value;
+            } else {
+                host |= name.equals("host");
+                headers.add(name);
+                headers.add(value);
+            }
+        }
+        if (method == null || scheme == null || path == null || path.isEmpty()
+                || !isToken(method) || !isVisible(path)) {
+            return null;
+        }
+        if (authority != null && !host) {
+            headers.add("host");
+            headers.add(authority);
+        }
+        if (cookie != null) {
+            headers.add("cookie");
+            headers.add(cookie);
+        }
+        return Request.of(method, path, headers, "HTTP/2.0");
+    }
+
+    private void endRequest(Http2Stream stream) throws IOException {
+        try {
+            if (!stream.endRequest(() -> connection.getEventLoop().execute(() -> spilled(stream)))) {
+                return;
+            }
+        } catch (HttpException e) {
+            reject(stream, e);
+            return;
+        }
+        if (stream.isClosed()) {
+            responseEnded(stream);
+        } else if (!stream.isRejected()) {
+            dispatch(stream);
+        }
+    }
+
+    // Multipart spill writes finish off the loop; the stream's window and dispatch wait for them instead of the selector.
+    private void replenish(Http2Stream stream) {
+        int increment = stream.isClosed() ? 0 : stream.windowUpdate();
+        if (increment > 0) {
+            try {
+                writeWindowUpdate(stream.getId(), increment);
+            } catch (IOException | RuntimeException e) {
+                connection.closeQuietly();
+            }
+        }
+    }
+
+    private void spilled(Http2Stream stream) {
+        if (stream.isClosed()) {
+            return;
+        }
+        try {
+            endRequest(stream);
+        } catch (IOException | RuntimeException e) {
+            connection.closeQuietly();
+        }
+    }
+
+    private void dispatch(Http2Stream stream) {
+        try {
+            server.dispatch(stream, stream.getRequest(), null);
+        } catch (IOException | RuntimeException e) {
+            reset(stream, INTERNAL_ERROR);
+        }
+    }
+
+    private void reject(Http2Stream stream, HttpException e) throws IOException {
+        if (stream.isRejected()) {
+            return;
+        }
+        stream.reject();
+        server.recordRejected(e);
+        new Response(stream, stream.getRequest(), null).sendError(e);
+    }
+
+    private void onReset(ByteBuffer buffer, int offset, int length, int streamId) throws IOException {
+        if (length != 4) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "RST_STREAM of " + length + " bytes");
+        }
+        if (streamId == 0 || streamId > lastStreamId) {
+            throw new Http2Exception(PROTOCOL_ERROR, "RST_STREAM on idle stream " + streamId);
+        }
+        Http2Stream stream = streams.get(streamId);
+        if (stream != null) {
+            close(stream);
+        }
+    }
+
+    private void onSettings(ByteBuffer buffer, int offset, int length, int flags, int streamId) throws IOException {
+        if (streamId != 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "SETTINGS on stream " + streamId);
+        }
+        if ((flags & ACK) != 0) {
+            if (length != 0) {
+                throw new Http2Exception(FRAME_SIZE_ERROR, "SETTINGS acknowledgement with a payload");
+            }
+            return;
+        }
+        if (length % 6 != 0) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "SETTINGS of " + length + " bytes");
+        }
+        applySettings(buffer, offset, length);
+        ByteBuffer ack = bufferPool.acquire(FRAME_HEADER_LENGTH);
+        putFrameHeader(ack, 0, SETTINGS, ACK, 0);
+        ack.flip();
+        connection.send(ack, false);
+    }
+
+    private void applySettings(ByteBuffer buffer, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i += 6) {
+            int id = buffer.getShort(i) & 0xffff;
+            int value = buffer.getInt(i + 2);
+            switch (id) {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    encoder.setMaxTableSize(value < 0 ? Integer.MAX_VALUE : value);
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    if (value != 0 && value != 1) {
+                        throw new Http2Exception(PROTOCOL_ERROR, "Invalid SETTINGS_ENABLE_PUSH " + value);
+                    }
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value < 0) {
+                        throw new Http2Exception(FLOW_CONTROL_ERROR, "Invalid SETTINGS_INITIAL_WINDOW_SIZE");
+                    }
+                    long delta = (long) value - peerInitialWindowSize;
+                    peerInitialWindowSize = value;
+                    for (Http2Stream stream : streams.values()) {
+                        if (!stream.updateWindow(delta)) {
+                            throw new Http2Exception(FLOW_CONTROL_ERROR, "Stream window overflow");
+                        }
+                        schedule(stream);
+                    }
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < DEFAULT_MAX_FRAME_SIZE || value > MAX_FRAME_SIZE_LIMIT) {
+                        throw new Http2Exception(PROTOCOL_ERROR, "Invalid SETTINGS_MAX_FRAME_SIZE " + value);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void onPing(ByteBuffer buffer, int offset, int length, int flags, int streamId) throws IOException {
+        if (length != 8) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "PING of " + length + " bytes");
+        }
+        if (streamId != 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "PING on stream " + streamId);
+        }
+        if ((flags & ACK) != 0) {
+            return;
+        }
+        ByteBuffer pong = bufferPool.acquire(FRAME_HEADER_LENGTH + 8);
+        putFrameHeader(pong, 8, PING, ACK, 0);
+        pong.putLong(buffer.getLong(offset)).flip();
+        connection.send(pong, false);
+    }
+
+    private void onWindowUpdate(ByteBuffer buffer, int offset, int length, int streamId) throws IOException {
+        if (length != 4) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "WINDOW_UPDATE of " + length + " bytes");
+        }
+        int increment = buffer.getInt(offset) & 0x7fffffff;
+        if (streamId == 0) {
+            if (increment == 0) {
+                throw new Http2Exception(PROTOCOL_ERROR, "Zero WINDOW_UPDATE increment");
+            }
+            connectionSendWindow += increment;
+            if (connectionSendWindow > Integer.MAX_VALUE) {
+                throw new Http2Exception(FLOW_CONTROL_ERROR, "Connection window overflow");
+            }
+            writable.addAll(blocked);
+            blocked.clear();
+            return;
+        }
+        Http2Stream stream = streams.get(streamId);
+        if (stream == null) {
+            if (streamId > lastStreamId) {
+                throw new Http2Exception(PROTOCOL_ERROR, "WINDOW_UPDATE on idle stream " + streamId);
+            }
+        } else if (increment == 0) {
+            reset(stream, PROTOCOL_ERROR);
+        } else if (!stream.updateWindow(increment)) {
+            reset(stream, FLOW_CONTROL_ERROR);
+        } else {
+            schedule(stream);
+        }
+    }
+
+    void schedule(Http2Stream stream) throws IOException {
+        if (!stream.scheduled && stream.hasWritableData()) {
+            stream.scheduled = true;
+            writable.add(stream);
+        }
+        writeStreams();
+    }
+
+    private void writeStreams() throws IOException {
+        while (!writable.isEmpty() && !connection.isWriteBacklogged()) {
+            Http2Stream stream = writable.poll();
+            int written = stream.writeFrame(connectionSendWindow);
+            if (written < 0) {
+                blocked.add(stream);
+                continue;
+            }
+            connectionSendWindow -= written;
+            if (stream.hasWritableData()) {
+                writable.add(stream);
+            } else {
+                stream.scheduled = false;
+            }
+        }
+    }
+
+    void writeHeaders(int streamId, List<String> fields, boolean endStream) throws IOException {
+        int blockLength = encoder.encode(fields);
+        byte[] block = encoder.array();
+        int frames = Math.max(1, (blockLength + DEFAULT_MAX_FRAME_SIZE - 1) / DEFAULT_MAX_FRAME_SIZE);
+        ByteBuffer buffer = bufferPool.acquire(blockLength + frames * FRAME_HEADER_LENGTH);
+        int offset = 0;
+        do {
+            int length = Math.min(DEFAULT_MAX_FRAME_SIZE, blockLength - offset);
+            int flags = offset + length == blockLength ? END_HEADERS : 0;
+            if (offset == 0 && endStream) {
+                flags |= END_STREAM;
+            }
+            putFrameHeader(buffer, length, offset == 0 ? HEADERS : CONTINUATION, flags, streamId);
+            buffer.put(block, offset, length);
+            offset += length;
+        } while (offset < blockLength);
+        buffer.flip();
+        connection.send(buffer, false);
+    }
+
+    void responseEnded(Http2Stream stream) throws IOException {
+        if (!stream.isRequestEnded()) {
+            writeReset(stream.getId(), NO_ERROR);
+        }
+        close(stream);
+    }
+
+    void reset(Http2Stream stream, int errorCode) {
+        if (streams.get(stream.getId()) != stream) {
+            return;
+        }
+        try {
+            writeReset(stream.getId(), errorCode);
+            close(stream);
+        } catch (IOException e) {
+            connection.closeQuietly();
+        }
+    }
+
+    private void close(Http2Stream stream) throws IOException {
+        stream.reset();
+        if (streams.remove(stream.getId()) == null) {
+            return;
+        }
+        if (stream.scheduled) {
+            writable.remove(stream);
+            blocked.remove(stream);
+            stream.scheduled = false;
+        }
+        if (peerGoingAway && streams.isEmpty()) {
+            connection.closeAfterFlush();
+        }
+    }
+
+    void goAway() throws IOException {
+        goAway(NO_ERROR);
+    }
+
+    private void goAway(int errorCode) throws IOException {
+        if (goAwaySent) {
+            return;
+        }
+        goAwaySent = true;
+        ByteBuffer goAway = bufferPool.acquire(FRAME_HEADER_LENGTH + 8);
+        putFrameHeader(goAway, 8, GOAWAY, 0, 0);
+        goAway.putInt(lastStreamId).putInt(errorCode).flip();
+        connection.send(goAway, false);
+    }
+
+    void closed() {
+        for (Http2Stream stream : streams.values()) {
+            stream.reset();
+        }
+        streams.clear();
+        writable.clear();
+        blocked.clear();
+    }
+
+    private void writeReset(int streamId, int errorCode) throws IOException {
+        ByteBuffer reset = bufferPool.acquire(FRAME_HEADER_LENGTH + 4);
+        putFrameHeader(reset, 4, RST_STREAM, 0, streamId);
+        reset.putInt(errorCode).flip();
+        connection.send(reset, false);
+    }
+
+    private void writeWindowUpdate(int streamId, int increment) throws IOException {
+        ByteBuffer update = bufferPool.acquire(FRAME_HEADER_LENGTH + 4);
+        putFrameHeader(update, 4, WINDOW_UPDATE, 0, streamId);
+        update.putInt(increment).flip();
+        connection.send(update, false);
+    }
+
+    private void appendHeaderBlock(ByteBuffer buffer, int from, int to) throws Http2Exception {
+        int length = to - from;
+        if (headerBlockLength + length > MAX_HEADER_BLOCK_SIZE) {
+            throw new Http2Exception(ENHANCE_YOUR_CALM, "Header block too large");
+        }
+        if (headerBlockLength + length > headerBlock.length) {
+            headerBlock = Arrays.copyOf(headerBlock, Math.max(headerBlockLength + length, headerBlock.length * 2));
+        }
+        for (int i = from; i < to; i++) {
+            headerBlock[headerBlockLength++] = buffer.get(i);
+        }
+    }
+
+    private static int unpad(ByteBuffer buffer, int offset, int end) throws Http2Exception {
+        if (offset == end || (buffer.get(offset) & 0xff) >= end - offset) {
+            throw new Http2Exception(PROTOCOL_ERROR, "Padding exceeds the frame");
+        }
+        return offset + 1;
+    }
+
+    private static int headerListSize(List<String> fields) {
+        int size = 0;
+        for (int i = 0; i < fields.size(); i += 2) {
+            size += fields.get(i).length() + fields.get(i + 1).length() + 32;
+        }
+        return size;
+    }
+
+    // RFC 9113 section 8.2.1: names are lowercase tokens, and no value may smuggle a line break or NUL
+    // into the HTTP/1 head that Request.of builds from them.
+    private static boolean isValidName(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return false;
+            }
+        }
+        return isToken(name);
+    }
+
+    private static boolean isToken(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80 || !RequestParser.isTokenChar((byte) c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isValidValue(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\r' || c == '\n' || c == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isVisible(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c <= ' ' || c == 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
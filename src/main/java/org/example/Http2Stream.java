@@ -0,0 +1,516 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+class Http2Stream implements Transport {
+    private static final long IDLE_WAIT_MILLIS = 1000;
+
+    private final Http2Session session;
+    private final int id;
+    private final EventLoop eventLoop;
+    private final BufferPool bufferPool;
+    private final ArrayDeque<Object> outbound = new ArrayDeque<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final Object writeMonitor = new Object();
+    private volatile int writeWaiters;
+    private volatile boolean closed;
+    private final Request request;
+    private final boolean discardBody;
+    private BufferedBody bufferedBody;
+    private MultipartParser multipartParser;
+    private long bodySize;
+    private boolean requestEnded;
+    private boolean rejected;
+    private boolean headSent;
+    private boolean endQueued;
+    private boolean endSent;
+    private List<String> trailers;
+    private long sendWindow;
+    private int receiveWindow = Http2Session.DEFAULT_WINDOW_SIZE;
+    private Runnable closeListener;
+    private Runnable writableListener;
+    boolean scheduled;
+
+    Http2Stream(Http2Session session, int id, int initialWindowSize, Request request) {
+        this.session = session;
+        this.id = id;
+        this.eventLoop = session.getConnection().getEventLoop();
+        this.bufferPool = eventLoop.getServer().getBufferPool();
+        this.sendWindow = initialWindowSize;
+        this.request = request;
+        this.discardBody = request.getHttpMethod() == HttpMethod.HEAD;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    Request getRequest() {
+        return request;
+    }
+
+    @Override
+    public EventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    @Override
+    public InetAddress getClientAddress() {
+        return session.getConnection().getClientAddress();
+    }
+
+    @Override
+    public boolean isMultiplexed() {
+        return true;
+    }
+
+    @Override
+    public void send(ByteBuffer head, Object body, boolean close) throws IOException {
+        submit(head, body, true);
+    }
+
+    @Override
+    public void sendPartial(ByteBuffer data) throws IOException {
+        submit(data, null, false);
+    }
+
+    private void submit(ByteBuffer data, Object body, boolean end) throws IOException {
+        pendingBytes.addAndGet(data.remaining() + (body != null ? remaining(body) : 0));
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(() -> {
+                try {
+                    write(data, body, end);
+                } catch (IOException e) {
+                    session.getConnection().closeQuietly();
+                }
+            });
+            return;
+        }
+        write(data, body, end);
+    }
+
+    @Override
+    public void sendTrailers(List<String> trailers, boolean close) {
+        List<String> fields = new ArrayList<>(trailers.size());
+        for (int i = 0; i < trailers.size(); i += 2) {
+            fields.add(trailers.get(i).toLowerCase(Locale.ROOT));
+            fields.add(trailers.get(i + 1));
+        }
+        Runnable finish = () -> {
+            if (closed) {
+                return;
+            }
+            if (!discardBody && !fields.isEmpty()) {
+                this.trailers = fields;
+            }
+            endQueued = true;
+            try {
+                session.schedule(this);
+            } catch (IOException e) {
+                session.getConnection().closeQuietly();
+            }
+        };
+        if (eventLoop.inEventLoop()) {
+            finish.run();
+        } else {
+            eventLoop.execute(finish);
+        }
+    }
+
+    @Override
+    public void awaitWritable() throws IOException {
+        if (eventLoop.inEventLoop()) {
+            return;
+        }
+        synchronized (writeMonitor) {
+            writeWaiters++;
+            try {
+                while (pendingBytes.get() > Connection.WRITE_HIGH_WATER_MARK && !closed) {
+                    writeMonitor.wait(IDLE_WAIT_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the client to read");
+            } finally {
+                writeWaiters--;
+            }
+        }
+        if (closed && !endSent) {
+            throw new ClosedChannelException();
+        }
+        session.getConnection().awaitWritable();
+    }
+
+    @Override
+    public boolean isWriteBacklogged() {
+        return pendingBytes.get() > Connection.WRITE_HIGH_WATER_MARK || session.getConnection().isWriteBacklogged();
+    }
+
+    @Override
+    public void whenWritable(Runnable task) {
+        if (pendingBytes.get() > Connection.WRITE_HIGH_WATER_MARK && !closed) {
+            writableListener = task;
+        } else {
+            session.getConnection().whenWritable(task);
+        }
+    }
+
+    @Override
+    public void beginRequest() {
+    }
+
+    @Override
+    public void resume() {
+    }
+
+    @Override
+    public void setCloseListener(Runnable listener) {
+        this.closeListener = listener;
+    }
+
+    @Override
+    public void closeQuietly() {
+        if (eventLoop.inEventLoop()) {
+            session.reset(this, Http2Session.INTERNAL_ERROR);
+        } else {
+            eventLoop.execute(() -> session.reset(this, Http2Session.INTERNAL_ERROR));
+        }
+    }
+
+    private void write(ByteBuffer data, Object body, boolean end) throws IOException {
+        if (closed) {
+            discard(data);
+            discard(body);
+            return;
+        }
+        if (!headSent) {
+            headSent = true;
+            int headStart = data.position();
+            List<String> fields = translateHead(data);
+            pendingBytes.addAndGet(headStart - data.position());
+            boolean endStream = end && (discardBody || !data.hasRemaining() && (body == null || remaining(body) == 0));
+            session.writeHeaders(id, fields, endStream);
+            if (endStream) {
+                discard(data);
+                discard(body);
+                ended();
+                return;
+            }
+        }
+        enqueue(data);
+        enqueue(body);
+        if (end) {
+            endQueued = true;
+        }
+        session.schedule(this);
+    }
+
+    private List<String> translateHead(ByteBuffer head) {
+        int position = head.position();
+        List<String> fields = new ArrayList<>(16);
+        fields.add(":status");
+        fields.add(latin1(head, position + 9, position + 12));
+        while (head.get(position) != '\n') {
+            position++;
+        }
+        position++;
+        while (head.get(position) != '\r') {
+            int colon = position;
+            while (head.get(colon) != ':') {
+                colon++;
+            }
+            int valueEnd = colon + 2;
+            while (head.get(valueEnd) != '\r') {
+                valueEnd++;
+            }
+            String name = latin1(head, position, colon).toLowerCase(Locale.ROOT);
+            if (!Http2Session.isConnectionSpecific(name)) {
+                fields.add(name);
+                fields.add(latin1(head, colon + 2, valueEnd));
+            }
+            position = valueEnd + 2;
+        }
+        head.position(position + 2);
+        return fields;
+    }
+
+    private void enqueue(Object data) {
+        if (data == null) {
+            return;
+        }
+        if (discardBody || remaining(data) == 0) {
+            discard(data);
+        } else {
+            outbound.add(data);
+        }
+    }
+
+    boolean hasWritableData() {
+        if (closed) {
+            return false;
+        }
+        if (outbound.isEmpty()) {
+            return endQueued && !endSent;
+        }
+        return sendWindow > 0;
+    }
+
+    int writeFrame(long connectionWindow) throws IOException {
+        Object data = outbound.peek();
+        if (closed) {
+            return 0;
+        }
+        if (data == null) {
+            if (endQueued && !endSent) {
+                if (trailers != null) {
+                    session.writeHeaders(id, trailers, true);
+                } else {
+                    ByteBuffer frame = bufferPool.acquire(Http2Session.FRAME_HEADER_LENGTH);
+                    Http2Session.putFrameHeader(frame, 0, Http2Session.DATA, Http2Session.END_STREAM, id);
+                    frame.flip();
+                    session.getConnection().send(frame, false);
+                }
+                ended();
+            }
+            return 0;
+        }
+        if (sendWindow <= 0) {
+            return 0;
+        }
+        if (connectionWindow <= 0) {
+            return -1;
+        }
+        long available = remaining(data);
+        int length = (int) Math.min(Math.min(available, Http2Session.DEFAULT_MAX_FRAME_SIZE),
+                Math.min(sendWindow, connectionWindow));
+        boolean drained = length == available;
+        boolean last = drained && outbound.size() == 1 && endQueued && trailers == null;
+        ByteBuffer frame = bufferPool.acquire(Http2Session.FRAME_HEADER_LENGTH + length);
+        Http2Session.putFrameHeader(frame, length, Http2Session.DATA, last ? Http2Session.END_STREAM : 0, id);
+        if (data instanceof FileRegion) {
+            frame.limit(frame.position() + length);
+            while (frame.hasRemaining()) {
+                ((FileRegion) data).read(frame);
+            }
+        } else {
+            ByteBuffer source = (ByteBuffer) data;
+            ByteBuffer slice = source.duplicate();
+            slice.limit(slice.position() + length);
+            frame.put(slice);
+            source.position(source.position() + length);
+        }
+        frame.flip();
+        if (drained) {
+            release(outbound.poll());
+        }
+        sendWindow -= length;
+        session.getConnection().send(frame, false);
+        if (pendingBytes.addAndGet(-length) < Connection.WRITE_LOW_WATER_MARK) {
+            wakeWriters();
+        }
+        if (last) {
+            ended();
+        }
+        return length;
+    }
+
+    boolean updateWindow(long delta) {
+        sendWindow += delta;
+        return sendWindow <= Integer.MAX_VALUE;
+    }
+
+    void startBody() throws HttpException {
+        Server server = eventLoop.getServer();
+        String contentLength = request.getHeader("Content-Length");
+        long length = 0;
+        if (contentLength != null) {
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new HttpException(400, "Invalid Content-Length");
+            }
+        }
+        if (length > server.getMaxRequestBodySize()) {
+            throw new HttpException(413, "Payload Too Large");
+        }
+        String boundary = request.isMultipart() && server.parsesMultipart(request)
+                ? MultipartParser.boundaryOf(request.getHeader("Content-Type")) : null;
+        if (boundary != null) {
+            multipartParser = new MultipartParser(boundary, server.getMultipartSpillThreshold(), server.getMaxPartSize());
+        } else {
+            bufferedBody = new BufferedBody((int) Math.min(length, Connection.INITIAL_BUFFER_SIZE * 64L));
+        }
+    }
+
+    boolean consumeWindow(int length) {
+        receiveWindow -= length;
+        return receiveWindow >= 0;
+    }
+
+    int windowUpdate() {
+        if (requestEnded || receiveWindow >= Http2Session.DEFAULT_WINDOW_SIZE / 2 || isBodyBacklogged()) {
+            return 0;
+        }
+        int increment = Http2Session.DEFAULT_WINDOW_SIZE - receiveWindow;
+        receiveWindow = Http2Session.DEFAULT_WINDOW_SIZE;
+        return increment;
+    }
+
+    void receiveData(ByteBuffer buffer, int from, int to) throws HttpException {
+        if (rejected) {
+            return;
+        }
+        bodySize += to - from;
+        if (bodySize > eventLoop.getServer().getMaxRequestBodySize()) {
+            throw new HttpException(413, "Payload Too Large");
+        }
+        if (multipartParser != null) {
+            multipartParser.write(buffer, from, to);
+        } else {
+            bufferedBody.write(buffer, from, to);
+        }
+    }
+
+    boolean isBodyBacklogged() {
+        return multipartParser != null && multipartParser.isBacklogged();
+    }
+
+    boolean whenBodyDrained(Runnable listener) {
+        return multipartParser != null && multipartParser.whenDrained(listener);
+    }
+
+    void receiveTrailers(List<String> fields) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < fields.size(); i += 2) {
+            map.putIfAbsent(fields.get(i), fields.get(i + 1));
+        }
+        request.setTrailers(map);
+    }
+
+    boolean endRequest(Runnable whenDrained) throws HttpException {
+        requestEnded = true;
+        if (rejected) {
+            return true;
+        }
+        if (multipartParser != null) {
+            if (multipartParser.whenDrained(whenDrained)) {
+                return false;
+            }
+            MultipartParser parser = multipartParser;
+            multipartParser = null;
+            request.setParts(parser.finish());
+        } else if (bufferedBody != null) {
+            request.setBody(bufferedBody.toByteArray());
+            bufferedBody = null;
+        }
+        return true;
+    }
+
+    boolean isRequestEnded() {
+        return requestEnded;
+    }
+
+    boolean isRejected() {
+        return rejected;
+    }
+
+    void reject() {
+        rejected = true;
+        Server.cancelAdmission(request);
+        abortBody();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void reset() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Object queued;
+        while ((queued = outbound.poll()) != null) {
+            release(queued);
+        }
+        pendingBytes.set(0);
+        Server.cancelAdmission(request);
+        abortBody();
+        wakeWriters();
+        Runnable listener = closeListener;
+        closeListener = null;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private void ended() throws IOException {
+        endSent = true;
+        closed = true;
+        wakeWriters();
+        session.responseEnded(this);
+    }
+
+    private void abortBody() {
+        if (multipartParser != null) {
+            multipartParser.abort();
+            multipartParser = null;
+        }
+        bufferedBody = null;
+    }
+
+    private void discard(Object data) {
+        if (data != null) {
+            pendingBytes.addAndGet(-remaining(data));
+            release(data);
+        }
+    }
+
+    private void release(Object data) {
+        if (data instanceof FileRegion) {
+            ((FileRegion) data).close();
+        } else {
+            bufferPool.release((ByteBuffer) data);
+        }
+    }
+
+    private void wakeWriters() {
+        if (writeWaiters > 0) {
+            synchronized (writeMonitor) {
+                writeMonitor.notifyAll();
+            }
+        }
+        Runnable listener = writableListener;
+        if (listener != null) {
+            writableListener = null;
+            session.getConnection().whenWritable(listener);
+        }
+    }
+
+    private static long remaining(Object data) {
+        if (data instanceof FileRegion) {
+            return ((FileRegion) data).remaining();
+        }
+        return ((ByteBuffer) data).remaining();
+    }
+
+    private static String latin1(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
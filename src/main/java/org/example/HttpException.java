@@ -0,0 +1,28 @@
+package org.example;
+
+import java.io.IOException;
+
+public class HttpException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final long retryAfterSeconds;
+
+    public HttpException(int statusCode, String message) {
+        this(statusCode, message, 0);
+    }
+
+    public HttpException(int statusCode, String message, long retryAfterSeconds) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
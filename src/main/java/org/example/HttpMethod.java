@@ -0,0 +1,24 @@
+package org.example;
+
+public enum HttpMethod {
+    GET,
+    HEAD,
+    POST,
+    PUT,
+    PATCH,
+    DELETE,
+    OPTIONS,
+    TRACE,
+    CONNECT;
+
+    static final HttpMethod[] VALUES = values();
+
+    public static HttpMethod of(String method) {
+        for (HttpMethod value : VALUES) {
+            if (value.name().equals(method)) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
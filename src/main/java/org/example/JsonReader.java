@@ -0,0 +1,450 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JsonReader {
+    public enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    private static final int MAX_DEPTH = 512;
+
+    private final byte[] data;
+    private final int end;
+    private int position;
+    private boolean[] inObject = new boolean[16];
+    private boolean[] expectingName = new boolean[16];
+    private boolean[] first = new boolean[16];
+    private int depth;
+    private boolean rootRead;
+    private Token peeked;
+
+    public JsonReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public JsonReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    public static Object parse(byte[] data) throws HttpException {
+        JsonReader reader = new JsonReader(data);
+        Object value = reader.readValue();
+        if (reader.peek() != Token.END_DOCUMENT) {
+            throw reader.error("Unexpected data after JSON value");
+        }
+        return value;
+    }
+
+    public Token peek() throws HttpException {
+        if (peeked != null) {
+            return peeked;
+        }
+        skipWhitespace();
+        if (depth == 0) {
+            if (rootRead) {
+                if (position < end) {
+                    throw error("Unexpected data after JSON value");
+                }
+                peeked = Token.END_DOCUMENT;
+                return peeked;
+            }
+            peeked = valueToken();
+            return peeked;
+        }
+        if (position >= end) {
+            throw error("Unexpected end of JSON");
+        }
+        byte b = data[position];
+        if (inObject[depth]) {
+            if (b == '}' && expectingName[depth]) {
+                peeked = Token.END_OBJECT;
+                return peeked;
+            }
+            if (expectingName[depth]) {
+                if (!first[depth]) {
+                    expect(',');
+                    skipWhitespace();
+                }
+                if (position >= end || data[position] != '"') {
+                    throw error("Expected object key");
+                }
+                peeked = Token.NAME;
+                return peeked;
+            }
+            expect(':');
+            skipWhitespace();
+            peeked = valueToken();
+            return peeked;
+        }
+        if (b == ']') {
+            peeked = Token.END_ARRAY;
+            return peeked;
+        }
+        if (!first[depth]) {
+            expect(',');
+            skipWhitespace();
+        }
+        peeked = valueToken();
+        return peeked;
+    }
+
+    public void beginObject() throws HttpException {
+        consume(Token.BEGIN_OBJECT);
+        position++;
+        push(true);
+    }
+
+    public void endObject() throws HttpException {
+        consume(Token.END_OBJECT);
+        position++;
+        pop();
+    }
+
+    public void beginArray() throws HttpException {
+        consume(Token.BEGIN_ARRAY);
+        position++;
+        push(false);
+    }
+
+    public void endArray() throws HttpException {
+        consume(Token.END_ARRAY);
+        position++;
+        pop();
+    }
+
+    public boolean hasNext() throws HttpException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws HttpException {
+        consume(Token.NAME);
+        String name = readString();
+        first[depth] = false;
+        expectingName[depth] = false;
+        return name;
+    }
+
+    public String nextString() throws HttpException {
+        consume(Token.STRING);
+        String value = readString();
+        valueRead();
+        return value;
+    }
+
+    public Number nextNumber() throws HttpException {
+        consume(Token.NUMBER);
+        Number value = readNumber();
+        valueRead();
+        return value;
+    }
+
+    public boolean nextBoolean() throws HttpException {
+        consume(Token.BOOLEAN);
+        boolean value = data[position] == 't';
+        position += value ? 4 : 5;
+        valueRead();
+        return value;
+    }
+
+    public void nextNull() throws HttpException {
+        consume(Token.NULL);
+        position += 4;
+        valueRead();
+    }
+
+    public Object readValue() throws HttpException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                Map<String, Object> map = new LinkedHashMap<>();
+                beginObject();
+                while (hasNext()) {
+                    String name = nextName();
+                    map.put(name, readValue());
+                }
+                endObject();
+                return map;
+            case BEGIN_ARRAY:
+                List<Object> list = new ArrayList<>();
+                beginArray();
+                while (hasNext()) {
+                    list.add(readValue());
+                }
+                endArray();
+                return list;
+            case STRING:
+                return nextString();
+            case NUMBER:
+                return nextNumber();
+            case BOOLEAN:
+                return nextBoolean();
+            case NULL:
+                nextNull();
+                return null;
+            default:
+                throw error("Unexpected " + peek());
+        }
+    }
+
+    private Token valueToken() throws HttpException {
+        if (position >= end) {
+            throw error("Unexpected end of JSON");
+        }
+        switch (data[position]) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+                expectLiteral("true");
+                return Token.BOOLEAN;
+            case 'f':
+                expectLiteral("false");
+                return Token.BOOLEAN;
+            case 'n':
+                expectLiteral("null");
+                return Token.NULL;
+            default:
+                byte b = data[position];
+                if (b == '-' || b >= '0' && b <= '9') {
+                    return Token.NUMBER;
+                }
+                throw error("Unexpected character '" + (char) b + "'");
+        }
+    }
+
+    private void consume(Token expected) throws HttpException {
+        Token token = peek();
+        if (token != expected) {
+            throw error("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    private void push(boolean object) throws HttpException {
+        if (depth == MAX_DEPTH) {
+            throw error("JSON nested too deeply");
+        }
+        depth++;
+        if (depth == inObject.length) {
+            inObject = Arrays.copyOf(inObject, depth * 2);
+            expectingName = Arrays.copyOf(expectingName, depth * 2);
+            first = Arrays.copyOf(first, depth * 2);
+        }
+        inObject[depth] = object;
+        expectingName[depth] = object;
+        first[depth] = true;
+    }
+
+    private void pop() {
+        depth--;
+        valueRead();
+    }
+
+    private void valueRead() {
+        if (depth == 0) {
+            rootRead = true;
+        } else if (inObject[depth]) {
+            expectingName[depth] = true;
+        } else {
+            first[depth] = false;
+        }
+    }
+
+    private String readString() throws HttpException {
+        int start = ++position;
+        boolean ascii = true;
+        while (position < end) {
+            byte b = data[position];
+            if (b == '"') {
+                String value = new String(data, start, position - start,
+                        ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+                position++;
+                return value;
+            }
+            if (b == '\\') {
+                return readEscapedString(start);
+            }
+            if (b >= 0 && b < 0x20) {
+                throw error("Unescaped control character in string");
+            }
+            ascii &= b >= 0;
+            position++;
+        }
+        throw error("Unterminated string");
+    }
+
+    private String readEscapedString(int start) throws HttpException {
+        StringBuilder builder = new StringBuilder();
+        int segmentStart = start;
+        while (position < end) {
+            byte b = data[position];
+            if (b == '"') {
+                builder.append(new String(data, segmentStart, position - segmentStart, StandardCharsets.UTF_8));
+                position++;
+                return builder.toString();
+            }
+            if (b >= 0 && b < 0x20) {
+                throw error("Unescaped control character in string");
+            }
+            if (b != '\\') {
+                position++;
+                continue;
+            }
+            builder.append(new String(data, segmentStart, position - segmentStart, StandardCharsets.UTF_8));
+            if (position + 1 >= end) {
+                throw error("Unterminated string");
+            }
+            byte escaped = data[position + 1];
+            position += 2;
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    builder.append((char) escaped);
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 > end) {
+                        throw error("Invalid unicode escape");
+                    }
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(data[position + i], 16);
+                        if (digit < 0) {
+                            throw error("Invalid unicode escape");
+                        }
+                        code = (code << 4) | digit;
+                    }
+                    builder.append((char) code);
+                    position += 4;
+                    break;
+                default:
+                    throw error("Invalid escape sequence");
+            }
+            segmentStart = position;
+        }
+        throw error("Unterminated string");
+    }
+
+    private Number readNumber() throws HttpException {
+        int start = position;
+        boolean negative = data[position] == '-';
+        if (negative) {
+            position++;
+        }
+        int digitsStart = position;
+        long value = 0;
+        boolean overflow = false;
+        while (position < end && data[position] >= '0' && data[position] <= '9') {
+            int digit = data[position] - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                overflow = true;
+            }
+            value = value * 10 + digit;
+            position++;
+        }
+        int digits = position - digitsStart;
+        if (digits == 0 || digits > 1 && data[digitsStart] == '0') {
+            throw error("Invalid number");
+        }
+        boolean fractional = false;
+        if (position < end && data[position] == '.') {
+            fractional = true;
+            position++;
+            position = skipDigits(position);
+        }
+        if (position < end && (data[position] == 'e' || data[position] == 'E')) {
+            fractional = true;
+            position++;
+            if (position < end && (data[position] == '+' || data[position] == '-')) {
+                position++;
+            }
+            position = skipDigits(position);
+        }
+        if (fractional || overflow) {
+            return Double.parseDouble(new String(data, start, position - start, StandardCharsets.ISO_8859_1));
+        }
+        long signed = negative ? -value : value;
+        if (signed >= Integer.MIN_VALUE && signed <= Integer.MAX_VALUE) {
+            return (int) signed;
+        }
+        return signed;
+    }
+
+    private int skipDigits(int from) throws HttpException {
+        int i = from;
+        while (i < end && data[i] >= '0' && data[i] <= '9') {
+            i++;
+        }
+        if (i == from) {
+            throw error("Invalid number");
+        }
+        return i;
+    }
+
+    private void expectLiteral(String literal) throws HttpException {
+        if (end - position < literal.length()) {
+            throw error("Unexpected end of JSON");
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (data[position + i] != literal.charAt(i)) {
+                throw error("Invalid literal");
+            }
+        }
+    }
+
+    private void expect(char c) throws HttpException {
+        if (position >= end || data[position] != c) {
+            throw error("Expected '" + c + "'");
+        }
+        position++;
+    }
+
+    private void skipWhitespace() {
+        while (position < end) {
+            byte b = data[position];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private HttpException error(String message) {
+        return new HttpException(400, "Malformed JSON at offset " + position + ": " + message);
+    }
+}
@@ -0,0 +1,219 @@
+package org.example;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+public class JsonWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+
+    private byte[] buffer;
+    private int size;
+
+    public JsonWriter() {
+        this(256);
+    }
+
+    public JsonWriter(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    public static byte[] toBytes(Object value) {
+        JsonWriter writer = new JsonWriter();
+        writer.writeValue(value);
+        return writer.toByteArray();
+    }
+
+    public JsonWriter writeValue(Object value) {
+        if (value == null) {
+            writeRaw(NULL);
+        } else if (value instanceof CharSequence || value instanceof Character) {
+            writeString(value.toString());
+        } else if (value instanceof Boolean) {
+            writeRaw((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                writeRaw(NULL);
+            } else {
+                writeAscii(value.toString());
+            }
+        } else if (value instanceof Number) {
+            writeAscii(value.toString());
+        } else if (value instanceof Map) {
+            writeObject((Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            writeArray((Collection<?>) value);
+        } else if (value.getClass().isArray()) {
+            ensureCapacity(2);
+            buffer[size++] = '[';
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    buffer[size++] = ',';
+                }
+                writeValue(Array.get(value, i));
+                ensureCapacity(1);
+            }
+            buffer[size++] = ']';
+        } else {
+            writeString(value.toString());
+        }
+        return this;
+    }
+
+    public JsonWriter writeString(String value) {
+        ensureCapacity(value.length() + 2);
+        buffer[size++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    ensureCapacity(2);
+                    buffer[size++] = '\\';
+                    buffer[size++] = (byte) c;
+                } else if (c < 0x20) {
+                    writeControlCharacter(c);
+                } else {
+                    ensureCapacity(1);
+                    buffer[size++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[size++] = (byte) (0xc0 | c >> 6);
+                buffer[size++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(4);
+                buffer[size++] = (byte) (0xf0 | codePoint >> 18);
+                buffer[size++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                buffer[size++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[size++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                writeUnicodeEscape(c);
+            } else {
+                ensureCapacity(3);
+                buffer[size++] = (byte) (0xe0 | c >> 12);
+                buffer[size++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buffer[size++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        ensureCapacity(1);
+        buffer[size++] = '"';
+        return this;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    byte[] array() {
+        return buffer;
+    }
+
+    private void writeObject(Map<?, ?> map) {
+        ensureCapacity(1);
+        buffer[size++] = '{';
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!first) {
+                ensureCapacity(1);
+                buffer[size++] = ',';
+            }
+            first = false;
+            writeString(String.valueOf(entry.getKey()));
+            ensureCapacity(1);
+            buffer[size++] = ':';
+            writeValue(entry.getValue());
+        }
+        ensureCapacity(1);
+        buffer[size++] = '}';
+    }
+
+    private void writeArray(Collection<?> values) {
+        ensureCapacity(1);
+        buffer[size++] = '[';
+        boolean first = true;
+        for (Object value : values) {
+            if (!first) {
+                ensureCapacity(1);
+                buffer[size++] = ',';
+            }
+            first = false;
+            writeValue(value);
+        }
+        ensureCapacity(1);
+        buffer[size++] = ']';
+    }
+
+    private void writeControlCharacter(char c) {
+        switch (c) {
+            case '\n':
+                writeEscape('n');
+                break;
+            case '\r':
+                writeEscape('r');
+                break;
+            case '\t':
+                writeEscape('t');
+                break;
+            case '\b':
+                writeEscape('b');
+                break;
+            case '\f':
+                writeEscape('f');
+                break;
+            default:
+                writeUnicodeEscape(c);
+                break;
+        }
+    }
+
+    private void writeEscape(char c) {
+        ensureCapacity(2);
+        buffer[size++] = '\\';
+        buffer[size++] = (byte) c;
+    }
+
+    private void writeUnicodeEscape(char c) {
+        ensureCapacity(6);
+        buffer[size++] = '\\';
+        buffer[size++] = 'u';
+        buffer[size++] = HEX[c >> 12 & 0xf];
+        buffer[size++] = HEX[c >> 8 & 0xf];
+        buffer[size++] = HEX[c >> 4 & 0xf];
+        buffer[size++] = HEX[c & 0xf];
+    }
+
+    private void writeAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeRaw(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(size + extra, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package org.example;
+
+public enum LoadBalancing {
+    ROUND_ROBIN,
+    LEAST_CONNECTIONS
+}
@@ -0,0 +1,268 @@
+package org.example;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+public class Metrics {
+    private static final double[] LATENCY_BUCKETS_SECONDS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private final Map<String, RouteMetrics> routes = new ConcurrentSkipListMap<>();
+    private final Map<String, LoopMetrics> loops = new ConcurrentSkipListMap<>();
+    private final Map<String, Sampled> sampled = new ConcurrentSkipListMap<>();
+    private final LongAdder[] responses = new LongAdder[STATUS_CLASSES.length];
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder parseErrors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    public Metrics() {
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = new LongAdder();
+        }
+    }
+
+    public RouteMetrics getRoute(String method, String path) {
+        return routes.get(method + " " + path);
+    }
+
+    public long getResponses(int statusCode) {
+        int statusClass = statusCode / 100 - 1;
+        return statusClass >= 0 && statusClass < responses.length ? responses[statusClass].sum() : 0;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getParseErrors() {
+        return parseErrors.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getShed() {
+        return shed.sum();
+    }
+
+    public void gauge(String name, String help, LongSupplier value) {
+        sampled.put(name, new Sampled("gauge", help, value));
+    }
+
+    public void counter(String name, String help, LongSupplier value) {
+        sampled.put(name, new Sampled("counter", help, value));
+    }
+
+    RouteMetrics route(String method, String path) {
+        return routes.computeIfAbsent(method + " " + path, key -> new RouteMetrics(method, path));
+    }
+
+    LoopMetrics loop(String name) {
+        return loops.computeIfAbsent(name, LoopMetrics::new);
+    }
+
+    void recordResponse(int statusCode) {
+        int statusClass = statusCode / 100 - 1;
+        if (statusClass >= 0 && statusClass < responses.length) {
+            responses[statusClass].increment();
+        }
+    }
+
+    void recordBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    void recordBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    void recordParseError() {
+        parseErrors.increment();
+    }
+
+    void recordTimeout() {
+        timeouts.increment();
+    }
+
+    void recordShed() {
+        shed.increment();
+    }
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        header(out, "http_requests_total", "counter", "Requests handed to a handler, by route.");
+        for (RouteMetrics route : routes.values()) {
+            out.append("http_requests_total");
+            routeLabels(out, route, null);
+            out.append(' ').append(route.latency.getCount()).append('\n');
+        }
+        header(out, "http_request_errors_total", "counter", "Handler calls that threw, by route.");
+        for (RouteMetrics route : routes.values()) {
+            out.append("http_request_errors_total");
+            routeLabels(out, route, null);
+            out.append(' ').append(route.errors.sum()).append('\n');
+        }
+        header(out, "http_request_duration_seconds", "histogram", "Time spent in the handler, by route.");
+        for (RouteMetrics route : routes.values()) {
+            histogram(out, "http_request_duration_seconds", route.latency, label -> routeLabels(out, route, label));
+        }
+        header(out, "http_responses_total", "counter", "Responses sent, by status class.");
+        for (int i = 0; i < STATUS_CLASSES.length; i++) {
+            out.append("http_responses_total{code=\"").append(STATUS_CLASSES[i]).append("\"} ")
+                    .append(responses[i].sum()).append('\n');
+        }
+        counter(out, "http_received_bytes_total", "Bytes read from client sockets.", bytesRead.sum());
+        counter(out, "http_sent_bytes_total", "Bytes written to client sockets.", bytesWritten.sum());
+        counter(out, "http_parse_errors_total", "Requests rejected while parsing.", parseErrors.sum());
+        counter(out, "http_timeouts_total", "Connections that hit a read, write or idle timeout.", timeouts.sum());
+        counter(out, "http_shed_total", "Requests and connections refused by rate or concurrency limits.", shed.sum());
+        header(out, "http_event_loop_iteration_seconds", "histogram",
+                "Time each selector loop iteration spent on ready keys and tasks.");
+        for (LoopMetrics loop : loops.values()) {
+            histogram(out, "http_event_loop_iteration_seconds", loop.iterations, label -> loopLabels(out, loop, label));
+        }
+        header(out, "http_event_loop_handler_seconds", "histogram",
+                "Time handlers ran on, and blocked, the event loop.");
+        for (LoopMetrics loop : loops.values()) {
+            histogram(out, "http_event_loop_handler_seconds", loop.handlerBlocking, label -> loopLabels(out, loop, label));
+        }
+        for (Map.Entry<String, Sampled> metric : sampled.entrySet()) {
+            header(out, metric.getKey(), metric.getValue().type, metric.getValue().help);
+            out.append(metric.getKey()).append(' ').append(metric.getValue().value.getAsLong()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void histogram(StringBuilder out, String name, Histogram histogram, Labels labels) {
+        for (double bound : LATENCY_BUCKETS_SECONDS) {
+            out.append(name).append("_bucket");
+            labels.append(BigDecimal.valueOf(bound).toPlainString());
+            out.append(' ').append(histogram.countAtOrBelow((long) (bound * 1_000_000))).append('\n');
+        }
+        out.append(name).append("_bucket");
+        labels.append("+Inf");
+        out.append(' ').append(histogram.getCount()).append('\n');
+        out.append(name).append("_sum");
+        labels.append(null);
+        out.append(' ').append(histogram.getSum() / 1_000_000.0).append('\n');
+        out.append(name).append("_count");
+        labels.append(null);
+        out.append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    private static void routeLabels(StringBuilder out, RouteMetrics route, String le) {
+        out.append("{method=\"").append(route.method).append("\",route=\"");
+        escape(out, route.path);
+        out.append('"');
+        le(out, le);
+    }
+
+    private static void loopLabels(StringBuilder out, LoopMetrics loop, String le) {
+        out.append("{loop=\"");
+        escape(out, loop.name);
+        out.append('"');
+        le(out, le);
+    }
+
+    private static void le(StringBuilder out, String le) {
+        if (le != null) {
+            out.append(",le=\"").append(le).append('"');
+        }
+        out.append('}');
+    }
+
+    private static void escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private interface Labels {
+        void append(String le);
+    }
+
+    private static final class Sampled {
+        private final String type;
+        private final String help;
+        private final LongSupplier value;
+
+        Sampled(String type, String help, LongSupplier value) {
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    public static final class RouteMetrics {
+        private final String method;
+        private final String path;
+        private final Histogram latency = new Histogram();
+        private final LongAdder errors = new LongAdder();
+
+        RouteMetrics(String method, String path) {
+            this.method = method;
+            this.path = path;
+        }
+
+        public Histogram getLatencyMicros() {
+            return latency;
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        void record(long startNanos, boolean failed) {
+            latency.record((System.nanoTime() - startNanos) / 1000);
+            if (failed) {
+                errors.increment();
+            }
+        }
+    }
+
+    static final class LoopMetrics {
+        private final String name;
+        private final Histogram iterations = new Histogram();
+        private final Histogram handlerBlocking = new Histogram();
+
+        LoopMetrics(String name) {
+            this.name = name;
+        }
+
+        void recordIteration(long nanos) {
+            iterations.record(nanos / 1000);
+        }
+
+        void recordHandler(long nanos) {
+            handlerBlocking.record(nanos / 1000);
+        }
+    }
+}
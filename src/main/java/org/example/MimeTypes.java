@@ -0,0 +1,60 @@
+package org.example;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+class MimeTypes {
+    private static final String DEFAULT = "application/octet-stream";
+    private static final Map<String, String> TYPES = new HashMap<>();
+
+    static {
+        TYPES.put("html", "text/html; charset=utf-8");
+        TYPES.put("htm", "text/html; charset=utf-8");
+        TYPES.put("css", "text/css; charset=utf-8");
+        TYPES.put("js", "text/javascript; charset=utf-8");
+        TYPES.put("mjs", "text/javascript; charset=utf-8");
+        TYPES.put("json", "application/json");
+        TYPES.put("map", "application/json");
+        TYPES.put("txt", "text/plain; charset=utf-8");
+        TYPES.put("csv", "text/csv; charset=utf-8");
+        TYPES.put("xml", "application/xml");
+        TYPES.put("svg", "image/svg+xml");
+        TYPES.put("png", "image/png");
+        TYPES.put("jpg", "image/jpeg");
+        TYPES.put("jpeg", "image/jpeg");
+        TYPES.put("gif", "image/gif");
+        TYPES.put("webp", "image/webp");
+        TYPES.put("avif", "image/avif");
+        TYPES.put("ico", "image/x-icon");
+        TYPES.put("woff", "font/woff");
+        TYPES.put("woff2", "font/woff2");
+        TYPES.put("ttf", "font/ttf");
+        TYPES.put("otf", "font/otf");
+        TYPES.put("wasm", "application/wasm");
+        TYPES.put("pdf", "application/pdf");
+        TYPES.put("zip", "application/zip");
+        TYPES.put("gz", "application/gzip");
+        TYPES.put("mp4", "video/mp4");
+        TYPES.put("webm", "video/webm");
+        TYPES.put("mp3", "audio/mpeg");
+    }
+
+    private MimeTypes() {
+    }
+
+    static String of(Path path) {
+        Path fileName = path.getFileName();
+        if (fileName == null) {
+            return DEFAULT;
+        }
+        String name = fileName.toString();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return DEFAULT;
+        }
+        String type = TYPES.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+        return type != null ? type : DEFAULT;
+    }
+}
@@ -0,0 +1,259 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class MultipartParser implements BodySink {
+    private static final int WINDOW_SIZE = 16 * 1024;
+    private static final int MAX_PARTS = 1000;
+
+    private static final int PREAMBLE = 0;
+    private static final int DELIMITER_SUFFIX = 1;
+    private static final int HEADERS = 2;
+    private static final int BODY = 3;
+    private static final int EPILOGUE = 4;
+
+    private final byte[] delimiter;
+    private final int[] shift = new int[256];
+    private final int spillThreshold;
+    private final long maxPartSize;
+    private final byte[] window;
+    private final List<Part> parts = new ArrayList<>();
+    private int windowLength;
+    private int state = PREAMBLE;
+    private Part current;
+
+    MultipartParser(String boundary, int spillThreshold, long maxPartSize) {
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.spillThreshold = spillThreshold;
+        this.maxPartSize = maxPartSize;
+        this.window = new byte[Math.max(WINDOW_SIZE, delimiter.length * 4)];
+        Arrays.fill(shift, delimiter.length);
+        for (int i = 0; i < delimiter.length - 1; i++) {
+            shift[delimiter[i] & 0xff] = delimiter.length - 1 - i;
+        }
+        window[0] = '\r';
+        window[1] = '\n';
+        windowLength = 2;
+    }
+
+    static String boundaryOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.regionMatches(true, 0, "boundary=", 0, 9)) {
+                String boundary = trimmed.substring(9);
+                if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return boundary.isEmpty() ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer, int from, int to) throws HttpException {
+        while (from < to) {
+            int length = Math.min(to - from, window.length - windowLength);
+            for (int i = 0; i < length; i++) {
+                window[windowLength + i] = buffer.get(from + i);
+            }
+            windowLength += length;
+            from += length;
+            process();
+        }
+    }
+
+    void write(byte[] bytes) throws HttpException {
+        write(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    List<Part> finish() throws HttpException {
+        if (state != EPILOGUE) {
+            abort();
+            throw new HttpException(400, "Incomplete multipart body");
+        }
+        for (Part part : parts) {
+            try {
+                part.checkFailure();
+            } catch (IOException e) {
+                abort();
+                throw new HttpException(500, "Could not store multipart part");
+            }
+        }
+        return parts;
+    }
+
+    boolean isBacklogged() {
+        return current != null && current.isBacklogged();
+    }
+
+    boolean whenDrained(Runnable listener) {
+        for (Part part : parts) {
+            if (part.whenDrained(listener)) {
+                return true;
+            }
+        }
+        return current != null && current.whenDrained(listener);
+    }
+
+    void abort() {
+        for (Part part : parts) {
+            try {
+                part.delete();
+            } catch (IOException ignored) {
+            }
+        }
+        if (current != null) {
+            try {
+                current.delete();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void process() throws HttpException {
+        int position = 0;
+        while (true) {
+            if (state == PREAMBLE || state == BODY) {
+                int match = indexOfDelimiter(position);
+                int end = match >= 0 ? match : windowLength - (delimiter.length - 1);
+                if (end > position && state == BODY) {
+                    appendToPart(position, end);
+                }
+                if (match < 0) {
+                    position = Math.max(position, end);
+                    break;
+                }
+                if (state == BODY) {
+                    finishPart();
+                }
+                position = match + delimiter.length;
+                state = DELIMITER_SUFFIX;
+            } else if (state == DELIMITER_SUFFIX) {
+                if (windowLength - position < 2) {
+                    break;
+                }
+                if (window[position] == '-' && window[position + 1] == '-') {
+                    state = EPILOGUE;
+                } else if (window[position] == '\r' && window[position + 1] == '\n') {
+                    state = HEADERS;
+                } else {
+                    throw new HttpException(400, "Malformed multipart boundary");
+                }
+                position += 2;
+            } else if (state == HEADERS) {
+                int headersEnd = indexOfHeadersEnd(position);
+                if (headersEnd < 0) {
+                    if (position == 0 && windowLength == window.length) {
+                        throw new HttpException(431, "Multipart headers too large");
+                    }
+                    break;
+                }
+                startPart(position, headersEnd);
+                position = headersEnd + (headersEnd == position ? 2 : 4);
+                state = BODY;
+            } else {
+                position = windowLength;
+                break;
+            }
+        }
+        System.arraycopy(window, position, window, 0, windowLength - position);
+        windowLength -= position;
+    }
+
+    private int indexOfDelimiter(int from) {
+        int last = delimiter.length - 1;
+        int i = from;
+        while (i + last < windowLength) {
+            int j = last;
+            while (j >= 0 && window[i + j] == delimiter[j]) {
+                j--;
+            }
+            if (j < 0) {
+                return i;
+            }
+            i += shift[window[i + last] & 0xff];
+        }
+        return -1;
+    }
+
+    private int indexOfHeadersEnd(int from) {
+        if (windowLength - from >= 2 && window[from] == '\r' && window[from + 1] == '\n') {
+            return from;
+        }
+        for (int i = from; i + 3 < windowLength; i++) {
+            if (window[i] == '\r' && window[i + 1] == '\n' && window[i + 2] == '\r' && window[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void startPart(int from, int to) throws HttpException {
+        if (parts.size() == MAX_PARTS) {
+            throw new HttpException(413, "Too many multipart parts");
+        }
+        String name = null;
+        String filename = null;
+        String contentType = null;
+        for (String line : new String(window, from, to - from, StandardCharsets.UTF_8).split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String headerName = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (headerName.equalsIgnoreCase("Content-Disposition")) {
+                name = parameter(value, "name");
+                filename = parameter(value, "filename");
+            } else if (headerName.equalsIgnoreCase("Content-Type")) {
+                contentType = value;
+            }
+        }
+        current = new Part(name, filename, contentType, spillThreshold);
+    }
+
+    private void appendToPart(int from, int to) throws HttpException {
+        if (current.getSize() + (to - from) > maxPartSize) {
+            throw new HttpException(413, "Multipart part too large");
+        }
+        try {
+            current.write(window, from, to - from);
+        } catch (IOException e) {
+            throw new HttpException(500, "Could not store multipart part");
+        }
+    }
+
+    private void finishPart() throws HttpException {
+        try {
+            current.finish();
+        } catch (IOException e) {
+            throw new HttpException(500, "Could not store multipart part");
+        }
+        parts.add(current);
+        current = null;
+    }
+
+    private static String parameter(String header, String key) {
+        for (String parameter : header.split(";")) {
+            String trimmed = parameter.trim();
+            int equals = trimmed.indexOf('=');
+            if (equals > 0 && trimmed.substring(0, equals).trim().equalsIgnoreCase(key)) {
+                String value = trimmed.substring(equals + 1).trim();
+                if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+}
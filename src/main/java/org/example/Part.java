@@ -0,0 +1,255 @@
+package org.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class Part {
+    private static final int MAX_PENDING_SPILL = 1024 * 1024;
+    private static final int SPILL_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final ExecutorService SPILL_EXECUTOR = Executors.newFixedThreadPool(SPILL_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "http-multipart-spill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final String filename;
+    private final String contentType;
+    private final int spillThreshold;
+    private byte[] data = new byte[256];
+    private long size;
+    private boolean spilled;
+    private volatile Path file;
+    private FileChannel fileChannel;
+    private final ArrayDeque<Runnable> spillQueue = new ArrayDeque<>();
+    private boolean spillScheduled;
+    private long pendingBytes;
+    private int pendingWrites;
+    private Runnable drainListener;
+    private volatile IOException failure;
+
+    Part(String name, String filename, String contentType, int spillThreshold) {
+        this.name = name;
+        this.filename = filename;
+        this.contentType = contentType;
+        this.spillThreshold = spillThreshold;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public boolean isFile() {
+        return filename != null;
+    }
+
+    public boolean isInMemory() {
+        return !spilled;
+    }
+
+    public Path getPath() {
+        return file;
+    }
+
+    public InputStream getInputStream() throws IOException {
+        if (spilled) {
+            return Files.newInputStream(file);
+        }
+        return new ByteArrayInputStream(data, 0, (int) size);
+    }
+
+    public ReadableByteChannel openChannel() throws IOException {
+        if (spilled) {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        }
+        return Channels.newChannel(getInputStream());
+    }
+
+    public byte[] getBytes() throws IOException {
+        if (spilled) {
+            return Files.readAllBytes(file);
+        }
+        return Arrays.copyOf(data, (int) size);
+    }
+
+    public String getString() throws IOException {
+        return new String(getBytes(), StandardCharsets.UTF_8);
+    }
+
+    public void delete() throws IOException {
+        synchronized (this) {
+            if (pendingWrites > 0) {
+                submit(0, this::deleteFile);
+                return;
+            }
+        }
+        deleteFile();
+    }
+
+    // Creating the temp file and writing spilled bytes run on a small shared pool, in order per part, so a slow
+    // disk never stalls the event loop and one large upload holds at most one spill thread. Callers stop reading
+    // once isBacklogged() reports more than MAX_PENDING_SPILL bytes queued for this part.
+    void write(byte[] src, int offset, int length) throws IOException {
+        checkFailure();
+        if (!spilled && size + length > spillThreshold) {
+            spill();
+        }
+        if (spilled) {
+            enqueue(Arrays.copyOfRange(src, offset, offset + length), length);
+        } else {
+            if (size + length > data.length) {
+                data = Arrays.copyOf(data, (int) Math.max(size + length, data.length * 2L));
+            }
+            System.arraycopy(src, offset, data, (int) size, length);
+        }
+        size += length;
+    }
+
+    void finish() throws IOException {
+        checkFailure();
+        if (spilled) {
+            submit(0, this::closeFile);
+        }
+    }
+
+    synchronized boolean isBacklogged() {
+        return pendingBytes > MAX_PENDING_SPILL;
+    }
+
+    synchronized boolean whenDrained(Runnable listener) {
+        if (pendingWrites == 0) {
+            return false;
+        }
+        drainListener = listener;
+        return true;
+    }
+
+    void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private void spill() {
+        spilled = true;
+        byte[] buffered = data;
+        int length = (int) size;
+        data = null;
+        submit(length, () -> {
+            file = Files.createTempFile("multipart-", ".part");
+            fileChannel = FileChannel.open(file, StandardOpenOption.WRITE);
+            writeFully(buffered, length);
+        });
+    }
+
+    private void enqueue(byte[] bytes, int length) {
+        submit(length, () -> writeFully(bytes, length));
+    }
+
+    private void writeFully(byte[] bytes, int length) throws IOException {
+        FileChannel channel = fileChannel;
+        if (channel == null) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void submit(int length, SpillTask task) {
+        boolean schedule;
+        synchronized (this) {
+            pendingBytes += length;
+            pendingWrites++;
+            spillQueue.add(() -> runSpill(length, task));
+            schedule = !spillScheduled;
+            spillScheduled = true;
+        }
+        if (schedule) {
+            SPILL_EXECUTOR.execute(this::drainSpillQueue);
+        }
+    }
+
+    // Runs one task and requeues behind other parts' work rather than monopolising a spill thread.
+    private void drainSpillQueue() {
+        Runnable next;
+        synchronized (this) {
+            next = spillQueue.poll();
+        }
+        next.run();
+        synchronized (this) {
+            if (spillQueue.isEmpty()) {
+                spillScheduled = false;
+                return;
+            }
+        }
+        SPILL_EXECUTOR.execute(this::drainSpillQueue);
+    }
+
+    private void runSpill(int length, SpillTask task) {
+        try {
+            task.run();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        Runnable listener = null;
+        synchronized (this) {
+            pendingBytes -= length;
+            if (--pendingWrites == 0) {
+                listener = drainListener;
+                drainListener = null;
+            }
+        }
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private void closeFile() throws IOException {
+        if (fileChannel != null) {
+            fileChannel.close();
+            fileChannel = null;
+        }
+    }
+
+    private void deleteFile() throws IOException {
+        closeFile();
+        Path path = file;
+        if (path != null) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private interface SpillTask {
+        void run() throws IOException;
+    }
+}
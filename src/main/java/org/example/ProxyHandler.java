@@ -0,0 +1,160 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ProxyHandler implements Handler, Closeable {
+    private final List<Upstream> upstreams;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile LoadBalancing loadBalancing = LoadBalancing.ROUND_ROBIN;
+    private ScheduledExecutorService healthChecker;
+
+    public ProxyHandler(Upstream... upstreams) {
+        if (upstreams.length == 0) {
+            throw new IllegalArgumentException("At least one upstream is required");
+        }
+        this.upstreams = Arrays.asList(upstreams.clone());
+    }
+
+    public void setLoadBalancing(LoadBalancing loadBalancing) {
+        this.loadBalancing = loadBalancing;
+    }
+
+    public synchronized void setHealthCheck(String path, long intervalMillis) {
+        close();
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "http-proxy-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(() -> {
+            for (Upstream upstream : upstreams) {
+                upstream.setHealthy(check(upstream, path));
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public List<Upstream> getUpstreams() {
+        return upstreams;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+            healthChecker = null;
+        }
+    }
+
+    @Override
+    public void handle(Request request, Response response) throws IOException {
+        if (!isSafeToForward(request)) {
+            throw new HttpException(400, "Bad Request");
+        }
+        Upstream upstream = select();
+        if (upstream == null) {
+            throw new HttpException(502, "Bad Gateway");
+        }
+        EventLoop eventLoop = response.getTransport().getEventLoop();
+        response.suspend();
+        if (eventLoop.inEventLoop()) {
+            forward(upstream, eventLoop, request, response);
+        } else {
+            eventLoop.execute(() -> forward(upstream, eventLoop, request, response));
+        }
+    }
+
+    Upstream select() {
+        if (loadBalancing == LoadBalancing.LEAST_CONNECTIONS) {
+            Upstream least = null;
+            for (Upstream upstream : upstreams) {
+                if (upstream.isHealthy() && (least == null || upstream.getActiveCount() < least.getActiveCount())) {
+                    least = upstream;
+                }
+            }
+            return least;
+        }
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < upstreams.size(); i++) {
+            Upstream upstream = upstreams.get((start + i) % upstreams.size());
+            if (upstream.isHealthy()) {
+                return upstream;
+            }
+        }
+        return null;
+    }
+
+    // The upstream head is rebuilt as HTTP/1 text, so CR, LF or NUL in any field would split it into extra lines.
+    static boolean isSafeToForward(Request request) {
+        if (!isFieldSafe(request.getMethod()) || !isFieldSafe(request.getTarget())) {
+            return false;
+        }
+        for (int i = 0; i < request.getHeaderCount(); i++) {
+            if (!isFieldSafe(request.getHeaderName(i)) || !isFieldSafe(request.getHeaderValue(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isFieldSafe(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\r' || c == '\n' || c == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void forward(Upstream upstream, EventLoop eventLoop, Request request, Response response) {
+        UpstreamConnection connection;
+        try {
+            connection = upstream.acquire(eventLoop);
+        } catch (IOException e) {
+            try {
+                response.sendError(new HttpException(502, "Bad Gateway"));
+            } catch (IOException | RuntimeException ignored) {
+                response.getTransport().closeQuietly();
+            }
+            response.release();
+            return;
+        }
+        connection.exchange(request, response);
+    }
+
+    private static boolean check(Upstream upstream, String path) {
+        try (Socket socket = new Socket()) {
+            socket.connect(upstream.getAddress(), (int) upstream.getConnectTimeoutMillis());
+            socket.setSoTimeout((int) upstream.getResponseTimeoutMillis());
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET " + path + " HTTP/1.1\r\nHost: " + upstream.getHostHeader()
+                    + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            byte[] statusLine = new byte[12];
+            int read = 0;
+            while (read < statusLine.length) {
+                int n = in.read(statusLine, read, statusLine.length - read);
+                if (n < 0) {
+                    return false;
+                }
+                read += n;
+            }
+            char status = (char) statusLine[9];
+            return status == '2' || status == '3';
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.example;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+class RateLimiter {
+    private static final long SWEEP_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final TokenBucket bucket;
+    private final int maxEntries;
+    private final ConcurrentHashMap<Object, AtomicLong> states = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+    RateLimiter(double permitsPerSecond, int burst, int maxEntries) {
+        this.bucket = new TokenBucket(permitsPerSecond, burst);
+        this.maxEntries = maxEntries;
+    }
+
+    long tryAcquire(Object key) {
+        long now = System.nanoTime();
+        AtomicLong state = states.get(key);
+        if (state == null) {
+            if (states.size() >= maxEntries) {
+                evict(now);
+                // Still full of active clients: refuse the newcomer rather than let address churn grow the map.
+                if (states.size() >= maxEntries) {
+                    return SWEEP_INTERVAL_NANOS;
+                }
+            }
+            state = states.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        return bucket.tryAcquire(state, now);
+    }
+
+    int size() {
+        return states.size();
+    }
+
+    // A bucket that has refilled is no different from a new one, so dropping it forgets nothing.
+    private void evict(long now) {
+        long sweepAt = nextSweep.get();
+        if (now - sweepAt < 0 || !nextSweep.compareAndSet(sweepAt, now + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        Iterator<AtomicLong> iterator = states.values().iterator();
+        while (iterator.hasNext()) {
+            if (TokenBucket.isFull(iterator.next(), now)) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -1,165 +1,506 @@
 package org.example;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 public class Request {
-    private final String method;
-    private final String path;
-    private final Map<String, String> headers;
-    private final String body;
-    private final Map<String, String> formData;
-    private final Map<String, byte[]> fileData;
-    private final Map<String, Object> jsonData;
-
-    private Request(String method, String path, Map<String, String> headers, String body) {
-        this.method = method;
-        this.path = path;
-        this.headers = headers;
+    private final byte[] head;
+    private final int[] offsets;
+    private final int headerCount;
+    private byte[] body;
+    private String method;
+    private HttpMethod httpMethod;
+    private String path;
+    private String queryString;
+    private Map<String, List<String>> queryParameters;
+    private Map<String, String> pathParams;
+    private Map<String, String> trailers = Collections.emptyMap();
+    private String version;
+    private String[] headerValues;
+    private String bodyText;
+    private Map<String, String> headers;
+    private List<Part> parts;
+    private Map<String, String> formData;
+    private Map<String, byte[]> fileData;
+    private Map<String, Object> jsonData;
+    private Object json;
+    private final long receivedNanos = System.nanoTime();
+    private ConcurrencyLimiter admission;
+    private Route route;
+    private boolean routed;
+
+    Request(byte[] head, int[] offsets, int headerCount, byte[] body) {
+        this.head = head;
+        this.offsets = offsets;
+        this.headerCount = headerCount;
         this.body = body;
-        this.formData = new HashMap<>();
-        this.fileData = new HashMap<>();
-        this.jsonData = new HashMap<>();
+    }
 
-        if (isMultipart()) {
-            parseMultipartData();
-        } else if (isJson()) {
-            parseJsonData();
+    public static Request parse(String requestData) {
+        byte[] bytes = requestData.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        RequestParser parser = new RequestParser(bytes.length, Integer.MAX_VALUE);
+        try {
+            if (!parser.parse(buffer, bytes.length)) {
+                throw new IllegalArgumentException("Incomplete request head");
+            }
+        } catch (HttpException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
         }
+        byte[] body = new byte[bytes.length - parser.getHeadEnd()];
+        System.arraycopy(bytes, parser.getHeadEnd(), body, 0, body.length);
+        return parser.newRequest(buffer, body);
     }
 
-    public static Request parse(String requestData) {
-        String[] lines = requestData.split("\r\n");
-        String[] requestLine = lines[0].split(" ");
-        String method = requestLine[0];
-        String path = requestLine[1];
-
-        Map<String, String> headers = new HashMap<>();
-        int i = 1;
-        while (i < lines.length && !lines[i].isEmpty()) {
-            String[] header = lines[i].split(": ");
-            if (header.length == 2) {
-                headers.put(header[0], header[1]);
-            }
-            i++;
-        }
-
-        StringBuilder bodyBuilder = new StringBuilder();
-        for (int j = i + 1; j < lines.length; j++) {
-            bodyBuilder.append(lines[j]).append("\r\n");
-        }
-        String body = bodyBuilder.toString().trim();
-
-        return new Request(method, path, headers, body);
-    }
-
-    private void parseJsonData() {
-        if (body != null && !body.isEmpty()) {
-            String jsonString = body.trim();
-            if (jsonString.startsWith("{") && jsonString.endsWith("}")) {
-                jsonString = jsonString.substring(1, jsonString.length() - 1);
-                String[] pairs = jsonString.split(",");
-                for (String pair : pairs) {
-                    String[] keyValue = pair.split(":");
-                    if (keyValue.length == 2) {
-                        String key = keyValue[0].trim().replace("\"", "");
-                        Object value = parseJsonValue(keyValue[1].trim());
-                        jsonData.put(key, value);
-                    }
-                }
+    static Request of(String method, String target, List<String> headers, String version) {
+        int length = method.length() + target.length() + version.length() + 4;
+        for (String field : headers) {
+            length += field.length() + 2;
+        }
+        byte[] head = new byte[length];
+        int headerCount = headers.size() / 2;
+        int[] offsets = new int[RequestParser.FIRST_HEADER + 4 * headerCount];
+        int position = 0;
+        offsets[RequestParser.METHOD] = position;
+        position = putLatin1(head, position, method);
+        offsets[RequestParser.METHOD + 1] = position;
+        head[position++] = ' ';
+        offsets[RequestParser.TARGET] = position;
+        position = putLatin1(head, position, target);
+        offsets[RequestParser.TARGET + 1] = position;
+        head[position++] = ' ';
+        offsets[RequestParser.VERSION] = position;
+        position = putLatin1(head, position, version);
+        offsets[RequestParser.VERSION + 1] = position;
+        head[position++] = '\r';
+        head[position++] = '\n';
+        for (int header = 0; header < headerCount; header++) {
+            int index = RequestParser.headerIndex(header);
+            offsets[index] = position;
+            position = putLatin1(head, position, headers.get(2 * header));
+            offsets[index + 1] = position;
+            head[position++] = ':';
+            head[position++] = ' ';
+            offsets[index + 2] = position;
+            position = putLatin1(head, position, headers.get(2 * header + 1));
+            offsets[index + 3] = position;
+            head[position++] = '\r';
+            head[position++] = '\n';
+        }
+        Request request = new Request(head, offsets, headerCount, new byte[0]);
+        request.version = version;
+        return request;
+    }
+
+    private static int putLatin1(byte[] target, int position, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            target[position++] = (byte) value.charAt(i);
+        }
+        return position;
+    }
+
+    long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    boolean isRouted() {
+        return routed;
+    }
+
+    Route getRoute() {
+        return route;
+    }
+
+    void setRoute(Route route) {
+        this.route = route;
+        this.routed = true;
+    }
+
+    void setAdmission(ConcurrencyLimiter admission) {
+        this.admission = admission;
+    }
+
+    ConcurrencyLimiter takeAdmission() {
+        ConcurrencyLimiter taken = admission;
+        admission = null;
+        return taken;
+    }
+
+    public String getMethod() {
+        if (method == null) {
+            httpMethod = knownMethod();
+            if (httpMethod != null) {
+                method = httpMethod.name();
+            } else {
+                method = text(offsets[RequestParser.METHOD], offsets[RequestParser.METHOD + 1]);
             }
         }
+        return method;
     }
 
-    private void parseMultipartData() {
-        String boundary = headers.get("Boundary");
-        String[] parts = body.split("--" + boundary);
+    public HttpMethod getHttpMethod() {
+        getMethod();
+        return httpMethod;
+    }
 
-        for (String part : parts) {
-            if (part.contains("Content-Disposition")) {
-                String[] lines = part.split("\r\n");
-                String disposition = lines[1];
-                String name = extractValue(disposition, "name");
+    public String getPath() {
+        if (path == null) {
+            int start = offsets[RequestParser.TARGET];
+            int end = offsets[RequestParser.TARGET + 1];
+            int query = start;
+            while (query < end && head[query] != '?' && head[query] != '#') {
+                query++;
+            }
+            path = text(start, query);
+            if (query < end && head[query] == '?') {
+                int fragment = query + 1;
+                while (fragment < end && head[fragment] != '#') {
+                    fragment++;
+                }
+                queryString = text(query + 1, fragment);
+            }
+        }
+        return path;
+    }
+
+    public String getQueryString() {
+        getPath();
+        return queryString;
+    }
 
-                if (disposition.contains("filename")) {
-                    String filename = extractValue(disposition, "filename");
-                    String fileContent = extractFileContent(lines);
-                    fileData.put(filename, fileContent.getBytes());
-                } else {
-                    String value = extractValue(lines);
-                    formData.put(name, value);
+    public Map<String, List<String>> getQueryParameters() {
+        if (queryParameters == null) {
+            Map<String, List<String>> map = new LinkedHashMap<>();
+            String query = getQueryString();
+            if (query != null) {
+                int start = 0;
+                while (start <= query.length()) {
+                    int end = query.indexOf('&', start);
+                    if (end < 0) {
+                        end = query.length();
+                    }
+                    if (end > start) {
+                        int equals = query.indexOf('=', start);
+                        String name;
+                        String value;
+                        if (equals < 0 || equals > end) {
+                            name = decode(query.substring(start, end), true);
+                            value = "";
+                        } else {
+                            name = decode(query.substring(start, equals), true);
+                            value = decode(query.substring(equals + 1, end), true);
+                        }
+                        map.computeIfAbsent(name, k -> new ArrayList<>(1)).add(value);
+                    }
+                    start = end + 1;
                 }
             }
+            queryParameters = Collections.unmodifiableMap(map);
         }
+        return queryParameters;
+    }
+
+    public String getQueryParameter(String name) {
+        List<String> values = getQueryParameters().get(name);
+        return values != null ? values.get(0) : null;
     }
 
-    private String extractValue(String line, String key) {
-        return line.split(key + "=\"")[1].split("\"")[0];
+    public String getPathParam(String name) {
+        return pathParams != null ? pathParams.get(name) : null;
     }
 
-    private String extractValue(String[] lines) {
-        StringBuilder valueBuilder = new StringBuilder();
-        for (int i = 3; i < lines.length; i++) {
-            valueBuilder.append(lines[i]).append("\r\n");
+    public Map<String, String> getPathParams() {
+        return pathParams != null ? Collections.unmodifiableMap(pathParams) : Collections.emptyMap();
+    }
+
+    public String getVersion() {
+        if (version == null) {
+            version = head[offsets[RequestParser.VERSION] + 7] == '0' ? "HTTP/1.0" : "HTTP/1.1";
         }
-        return valueBuilder.toString().trim();
+        return version;
     }
 
-    private Object parseJsonValue(String value) {
-        if (value.startsWith("\"") && value.endsWith("\"")) {
-            return value.substring(1, value.length() - 1);
-        } else if (value.equals("true") || value.equals("false")) {
-            return Boolean.parseBoolean(value);
-        } else if (value.matches("-?\\d+(\\.\\d+)?")) {
-            if (value.contains(".")) {
-                return Double.parseDouble(value);
-            } else {
-                return Integer.parseInt(value);
-            }
-        } else {
-            return value;
+    public String getHeader(String name) {
+        int header = findHeader(name);
+        if (header < 0) {
+            return null;
+        }
+        if (headerValues == null) {
+            headerValues = new String[headerCount];
         }
+        if (headerValues[header] == null) {
+            int index = RequestParser.headerIndex(header);
+            headerValues[header] = text(offsets[index + 2], offsets[index + 3]);
+        }
+        return headerValues[header];
     }
 
-    private String extractFileContent(String[] lines) {
-        StringBuilder contentBuilder = new StringBuilder();
-        for (int i = 3; i < lines.length; i++) {
-            contentBuilder.append(lines[i]).append("\r\n");
+    public Map<String, String> getHeaders() {
+        if (headers == null) {
+            Map<String, String> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int header = 0; header < headerCount; header++) {
+                int index = RequestParser.headerIndex(header);
+                map.putIfAbsent(text(offsets[index], offsets[index + 1]), text(offsets[index + 2], offsets[index + 3]));
+            }
+            headers = Collections.unmodifiableMap(map);
         }
-        return contentBuilder.toString().trim();
+        return headers;
     }
 
+    String getTarget() {
+        return text(offsets[RequestParser.TARGET], offsets[RequestParser.TARGET + 1]);
+    }
 
+    int getHeaderCount() {
+        return headerCount;
+    }
 
-    public String getMethod() {
-        return method;
+    String getHeaderName(int header) {
+        int index = RequestParser.headerIndex(header);
+        return text(offsets[index], offsets[index + 1]);
     }
 
-    public String getPath() {
-        return path;
+    String getHeaderValue(int header) {
+        int index = RequestParser.headerIndex(header);
+        return text(offsets[index + 2], offsets[index + 3]);
+    }
+
+    public Map<String, String> getTrailers() {
+        return trailers;
+    }
+
+    public boolean isKeepAlive() {
+        String connection = getHeader("Connection");
+        if ("HTTP/1.0".equals(getVersion())) {
+            return "keep-alive".equalsIgnoreCase(connection);
+        }
+        return !"close".equalsIgnoreCase(connection);
     }
 
     public String getBody() {
+        if (bodyText == null) {
+            bodyText = new String(body, StandardCharsets.UTF_8);
+        }
+        return bodyText;
+    }
+
+    public byte[] getBodyBytes() {
         return body;
     }
 
+    @SuppressWarnings("unchecked")
     public Map<String, Object> getJsonData() {
+        if (jsonData == null) {
+            jsonData = new HashMap<>();
+            if (isJson() && body.length > 0) {
+                try {
+                    Object json = getJson();
+                    if (json instanceof Map) {
+                        jsonData = (Map<String, Object>) json;
+                    }
+                } catch (HttpException ignored) {
+                }
+            }
+        }
         return jsonData;
     }
 
+    public Object getJson() throws HttpException {
+        if (json == null) {
+            json = JsonReader.parse(body);
+        }
+        return json;
+    }
+
+    public List<Part> getParts() {
+        if (parts == null) {
+            parts = Collections.emptyList();
+            String boundary = isMultipart() ? MultipartParser.boundaryOf(getHeader("Content-Type")) : null;
+            if (boundary != null) {
+                MultipartParser parser = new MultipartParser(boundary, Integer.MAX_VALUE, Long.MAX_VALUE);
+                try {
+                    parser.write(body);
+                    parts = parser.finish();
+                } catch (HttpException ignored) {
+                }
+            }
+        }
+        return parts;
+    }
+
+    public Part getPart(String name) {
+        for (Part part : getParts()) {
+            if (name.equals(part.getName())) {
+                return part;
+            }
+        }
+        return null;
+    }
+
     public Map<String, String> getFormData() {
+        if (formData == null) {
+            formData = new HashMap<>();
+            for (Part part : getParts()) {
+                if (!part.isFile() && part.getName() != null) {
+                    formData.put(part.getName(), readPart(part));
+                }
+            }
+        }
         return formData;
     }
 
     public Map<String, byte[]> getFileData() {
+        if (fileData == null) {
+            fileData = new HashMap<>();
+            for (Part part : getParts()) {
+                if (part.isFile()) {
+                    try {
+                        fileData.put(part.getFilename(), part.getBytes());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+        }
         return fileData;
     }
 
     public boolean isMultipart() {
-        return headers.getOrDefault("Content-Type", "").startsWith("multipart/form-data");
+        return headerStartsWith("Content-Type", "multipart/form-data");
     }
 
     public boolean isJson() {
-        return headers.getOrDefault("Content-Type", "").startsWith("application/json");
+        return headerStartsWith("Content-Type", "application/json");
+    }
+
+    void setPathParam(String name, String value) {
+        if (pathParams == null) {
+            pathParams = new HashMap<>(4);
+        }
+        pathParams.put(name, value);
+    }
+
+    static String decode(String value, boolean plusAsSpace) {
+        if (value.indexOf('%') < 0 && (!plusAsSpace || value.indexOf('+') < 0)) {
+            return value;
+        }
+        byte[] bytes = new byte[value.length()];
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length() && Character.digit(value.charAt(i + 1), 16) >= 0
+                    && Character.digit(value.charAt(i + 2), 16) >= 0) {
+                bytes[length++] = (byte) (Character.digit(value.charAt(i + 1), 16) << 4
+                        | Character.digit(value.charAt(i + 2), 16));
+                i += 2;
+            } else if (c == '+' && plusAsSpace) {
+                bytes[length++] = ' ';
+            } else {
+                bytes[length++] = (byte) c;
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    void setTrailers(Map<String, String> trailers) {
+        this.trailers = trailers;
+    }
+
+    void setBody(byte[] body) {
+        this.body = body;
+    }
+
+    void setParts(List<Part> parts) {
+        this.body = new byte[0];
+        this.parts = parts;
+    }
+
+    void deleteParts() {
+        if (parts == null) {
+            return;
+        }
+        for (Part part : parts) {
+            try {
+                part.delete();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static String readPart(Part part) {
+        try {
+            return part.getString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean headerStartsWith(String name, String prefix) {
+        int header = findHeader(name);
+        if (header < 0) {
+            return false;
+        }
+        int index = RequestParser.headerIndex(header);
+        int start = offsets[index + 2];
+        if (offsets[index + 3] - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (RequestParser.toLowerCase(head[start + i]) != Character.toLowerCase(prefix.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int findHeader(String name) {
+        for (int header = 0; header < headerCount; header++) {
+            int index = RequestParser.headerIndex(header);
+            int start = offsets[index];
+            if (offsets[index + 1] - start != name.length()) {
+                continue;
+            }
+            int i = 0;
+            while (i < name.length()
+                    && RequestParser.toLowerCase(head[start + i]) == Character.toLowerCase(name.charAt(i))) {
+                i++;
+            }
+            if (i == name.length()) {
+                return header;
+            }
+        }
+        return -1;
+    }
+
+    private HttpMethod knownMethod() {
+        int start = offsets[RequestParser.METHOD];
+        int length = offsets[RequestParser.METHOD + 1] - start;
+        for (HttpMethod known : HttpMethod.VALUES) {
+            String name = known.name();
+            if (name.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && head[start + i] == name.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return known;
+            }
+        }
+        return null;
+    }
+
+    private String text(int from, int to) {
+        return new String(head, from, to - from, StandardCharsets.ISO_8859_1);
     }
-}
\ No newline at end of file
+}
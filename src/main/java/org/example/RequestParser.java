@@ -0,0 +1,283 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+class RequestParser {
+    static final int METHOD = 0;
+    static final int TARGET = 2;
+    static final int VERSION = 4;
+    static final int FIRST_HEADER = 6;
+
+    private static final int S_METHOD = 0;
+    private static final int S_TARGET = 1;
+    private static final int S_VERSION = 2;
+    private static final int S_LINE_LF = 3;
+    private static final int S_HEADER_START = 4;
+    private static final int S_HEADER_NAME = 5;
+    private static final int S_VALUE_START = 6;
+    private static final int S_VALUE = 7;
+    private static final int S_HEADER_LF = 8;
+    private static final int S_FINAL_LF = 9;
+    private static final int S_DONE = 10;
+
+    private static final byte[] CONTENT_LENGTH = "content-length".getBytes();
+    private static final byte[] TRANSFER_ENCODING = "transfer-encoding".getBytes();
+    private static final byte[] CHUNKED = "chunked".getBytes();
+
+    private final int maxHeaderSize;
+    private final int maxHeaderCount;
+    private int state = S_METHOD;
+    private int position;
+    private int[] offsets = new int[FIRST_HEADER + 4 * 16];
+    private int headerCount;
+    private int headEnd;
+    private long contentLength = -1;
+    private boolean chunked;
+
+    RequestParser(int maxHeaderSize, int maxHeaderCount) {
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxHeaderCount = maxHeaderCount;
+    }
+
+    boolean parse(ByteBuffer buffer, int limit) throws HttpException {
+        int end = Math.min(limit, maxHeaderSize + 1);
+        while (position < end && state != S_DONE) {
+            byte b = buffer.get(position);
+            switch (state) {
+                case S_METHOD:
+                    if (b == ' ') {
+                        if (position == 0) {
+                            throw new HttpException(400, "Malformed request line");
+                        }
+                        offsets[METHOD] = 0;
+                        offsets[METHOD + 1] = position;
+                        offsets[TARGET] = position + 1;
+                        state = S_TARGET;
+                    } else if (!isTokenChar(b)) {
+                        throw new HttpException(400, "Malformed request line");
+                    }
+                    break;
+                case S_TARGET:
+                    if (b == ' ') {
+                        if (position == offsets[TARGET]) {
+                            throw new HttpException(400, "Malformed request line");
+                        }
+                        offsets[TARGET + 1] = position;
+                        offsets[VERSION] = position + 1;
+                        state = S_VERSION;
+                    } else if (b == '\r' || b == '\n' || b < 0x21) {
+                        throw new HttpException(400, "Malformed request line");
+                    }
+                    break;
+                case S_VERSION:
+                    if (b == '\r' || b == '\n') {
+                        offsets[VERSION + 1] = position;
+                        if (!isHttpVersion(buffer)) {
+                            throw new HttpException(505, "HTTP Version Not Supported");
+                        }
+                        state = b == '\r' ? S_LINE_LF : S_HEADER_START;
+                    }
+                    break;
+                case S_LINE_LF:
+                    expectLineFeed(b);
+                    state = S_HEADER_START;
+                    break;
+                case S_HEADER_START:
+                    if (b == '\r') {
+                        state = S_FINAL_LF;
+                    } else if (b == '\n') {
+                        finish(position + 1);
+                    } else if (b == ' ' || b == '\t') {
+                        throw new HttpException(400, "Folded header lines are not supported");
+                    } else if (isTokenChar(b)) {
+                        if (headerCount == maxHeaderCount) {
+                            throw new HttpException(431, "Request Header Fields Too Large");
+                        }
+                        ensureCapacity();
+                        offsets[headerIndex(headerCount)] = position;
+                        state = S_HEADER_NAME;
+                    } else {
+                        throw new HttpException(400, "Malformed header");
+                    }
+                    break;
+                case S_HEADER_NAME:
+                    if (b == ':') {
+                        offsets[headerIndex(headerCount) + 1] = position;
+                        state = S_VALUE_START;
+                    } else if (!isTokenChar(b)) {
+                        throw new HttpException(400, "Malformed header");
+                    }
+                    break;
+                case S_VALUE_START:
+                    if (b == ' ' || b == '\t') {
+                        break;
+                    }
+                    offsets[headerIndex(headerCount) + 2] = position;
+                    state = S_VALUE;
+                    if (b == '\r' || b == '\n') {
+                        endHeader(buffer, b);
+                    }
+                    break;
+                case S_VALUE:
+                    if (b == '\r' || b == '\n') {
+                        endHeader(buffer, b);
+                    }
+                    break;
+                case S_HEADER_LF:
+                    expectLineFeed(b);
+                    state = S_HEADER_START;
+                    break;
+                case S_FINAL_LF:
+                    expectLineFeed(b);
+                    finish(position + 1);
+                    break;
+                default:
+                    break;
+            }
+            if (state != S_DONE) {
+                position++;
+            }
+        }
+        if (state != S_DONE && position > maxHeaderSize) {
+            throw new HttpException(431, "Request Header Fields Too Large");
+        }
+        return state == S_DONE;
+    }
+
+    Request newRequest(ByteBuffer buffer, byte[] body) {
+        byte[] head = new byte[headEnd];
+        for (int i = 0; i < headEnd; i++) {
+            head[i] = buffer.get(i);
+        }
+        return new Request(head, Arrays.copyOf(offsets, FIRST_HEADER + 4 * headerCount), headerCount, body);
+    }
+
+    int getHeadEnd() {
+        return headEnd;
+    }
+
+    long getContentLength() {
+        return contentLength;
+    }
+
+    boolean isChunked() {
+        return chunked;
+    }
+
+    void reset() {
+        state = S_METHOD;
+        position = 0;
+        headerCount = 0;
+        headEnd = 0;
+        contentLength = -1;
+        chunked = false;
+    }
+
+    static int headerIndex(int header) {
+        return FIRST_HEADER + 4 * header;
+    }
+
+    private void endHeader(ByteBuffer buffer, byte b) throws HttpException {
+        int index = headerIndex(headerCount);
+        int valueEnd = position;
+        while (valueEnd > offsets[index + 2]
+                && (buffer.get(valueEnd - 1) == ' ' || buffer.get(valueEnd - 1) == '\t')) {
+            valueEnd--;
+        }
+        offsets[index + 3] = valueEnd;
+        readFraming(buffer, index);
+        headerCount++;
+        state = b == '\r' ? S_HEADER_LF : S_HEADER_START;
+    }
+
+    private void readFraming(ByteBuffer buffer, int index) throws HttpException {
+        int nameStart = offsets[index];
+        int nameEnd = offsets[index + 1];
+        int valueStart = offsets[index + 2];
+        int valueEnd = offsets[index + 3];
+        if (equalsIgnoreCase(buffer, nameStart, nameEnd, CONTENT_LENGTH)) {
+            long value = 0;
+            if (valueStart == valueEnd) {
+                throw new HttpException(400, "Invalid Content-Length");
+            }
+            for (int i = valueStart; i < valueEnd; i++) {
+                byte digit = buffer.get(i);
+                if (digit < '0' || digit > '9' || value > Long.MAX_VALUE / 10 - 9) {
+                    throw new HttpException(400, "Invalid Content-Length");
+                }
+                value = value * 10 + (digit - '0');
+            }
+            if (contentLength >= 0 && contentLength != value) {
+                throw new HttpException(400, "Conflicting Content-Length headers");
+            }
+            if (chunked) {
+                throw new HttpException(400, "Both Content-Length and Transfer-Encoding");
+            }
+            contentLength = value;
+        } else if (equalsIgnoreCase(buffer, nameStart, nameEnd, TRANSFER_ENCODING)) {
+            // Only a lone "chunked" is decoded; any other coding would reach handlers still encoded.
+            if (chunked || !equalsIgnoreCase(buffer, valueStart, valueEnd, CHUNKED)) {
+                throw new HttpException(501, "Unsupported Transfer-Encoding");
+            }
+            if (contentLength >= 0) {
+                throw new HttpException(400, "Both Content-Length and Transfer-Encoding");
+            }
+            chunked = true;
+        }
+    }
+
+    private void finish(int end) {
+        headEnd = end;
+        state = S_DONE;
+    }
+
+    private void ensureCapacity() {
+        if (headerIndex(headerCount + 1) > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+    }
+
+    private boolean isHttpVersion(ByteBuffer buffer) {
+        int start = offsets[VERSION];
+        int end = offsets[VERSION + 1];
+        return end - start == 8 && buffer.get(start) == 'H' && buffer.get(start + 1) == 'T'
+                && buffer.get(start + 2) == 'T' && buffer.get(start + 3) == 'P' && buffer.get(start + 4) == '/'
+                && buffer.get(start + 5) == '1' && buffer.get(start + 6) == '.';
+    }
+
+    private static void expectLineFeed(byte b) throws HttpException {
+        if (b != '\n') {
+            throw new HttpException(400, "Malformed line ending");
+        }
+    }
+
+    static boolean isTokenChar(byte b) {
+        if (b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9') {
+            return true;
+        }
+        switch (b) {
+            case '!': case '#': case '$': case '%': case '&': case '\'': case '*':
+            case '+': case '-': case '.': case '^': case '_': case '`': case '|': case '~':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static boolean equalsIgnoreCase(ByteBuffer buffer, int from, int to, byte[] lowerCase) {
+        if (to - from != lowerCase.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCase.length; i++) {
+            if (toLowerCase(buffer.get(from + i)) != lowerCase[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+}
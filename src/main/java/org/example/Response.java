@@ -2,68 +2,701 @@ package org.example;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Response {
-    private final SocketChannel clientChannel;
+    private static final String APPLICATION_JSON = "application/json";
+    private static final String TEXT_PLAIN = "text/plain";
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] CONTENT_LENGTH = "Content-Length: ".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CONNECTION_CLOSE = "Connection: close\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CONNECTION_KEEP_ALIVE = "Connection: keep-alive\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[][] STATUS_LINES = new byte[600][];
+    private static final int MAX_CACHED_CONTENT_TYPES = 256;
+    private static final Map<String, byte[]> CONTENT_TYPE_LINES = new ConcurrentHashMap<>();
+    private static final int MAX_RETAINED_JSON_BUFFER = 64 * 1024;
+    private static final ThreadLocal<JsonWriter> JSON_WRITERS = ThreadLocal.withInitial(JsonWriter::new);
 
-    public Response(SocketChannel clientChannel) {
-        this.clientChannel = clientChannel;
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private final Transport transport;
+    private final Request request;
+    private String connectionHeader;
+    private final List<String> headers = new ArrayList<>(0);
+    private volatile boolean committed;
+    private ResponseCache.Flight capture;
+    private long captureTtlMillis;
+    private int connectionLineStart;
+    private int headEnd;
+    private ResponseStream stream;
+    private final AtomicInteger holds = new AtomicInteger();
+    private volatile boolean failed;
+    private final AtomicReference<Runnable> completion = new AtomicReference<>();
+
+    Response(Transport transport, String connectionHeader) {
+        this(transport, null, connectionHeader);
+    }
+
+    Response(Transport transport, Request request, String connectionHeader) {
+        this.transport = transport;
+        this.request = request;
+        this.connectionHeader = connectionHeader;
+    }
+
+    public void setHeader(String name, String value) {
+        if (committed) {
+            throw new IllegalStateException("Response has already been sent");
+        }
+        for (int i = 0; i < headers.size(); i += 2) {
+            if (headers.get(i).equalsIgnoreCase(name)) {
+                headers.set(i + 1, value);
+                return;
+            }
+        }
+        headers.add(name);
+        headers.add(value);
     }
 
     public void sendJson(int statusCode, Map<String, Object> jsonData) throws IOException {
-        String jsonBody = buildJsonBody(jsonData);
-        String response = buildResponse(statusCode, "application/json", jsonBody);
-        sendResponse(response);
-        clientChannel.close();
+        sendJson(statusCode, (Object) jsonData);
+    }
+
+    public void sendJson(int statusCode, Object json) throws IOException {
+        JsonWriter writer = JSON_WRITERS.get();
+        writer.reset();
+        writer.writeValue(json);
+        try {
+            send(statusCode, APPLICATION_JSON, writer.array(), 0, writer.size());
+        } finally {
+            if (writer.array().length > MAX_RETAINED_JSON_BUFFER) {
+                JSON_WRITERS.remove();
+            }
+        }
     }
 
     public void sendText(int statusCode, String responseBody) throws IOException {
-        String response = buildResponse(statusCode, "text/plain", responseBody);
-        sendResponse(response);
-        clientChannel.close();
+        int bodyLength = utf8Length(responseBody);
+        String encoding = contentEncoding(TEXT_PLAIN, bodyLength);
+        if (encoding != null) {
+            byte[] body = responseBody.getBytes(StandardCharsets.UTF_8);
+            sendEncoded(statusCode, TEXT_PLAIN, encoding, body, 0, body.length);
+            return;
+        }
+        commit();
+        ByteBuffer buffer = writeHead(statusCode, TEXT_PLAIN, bodyLength, bodyLength);
+        encodeUtf8(responseBody, buffer);
+        buffer.flip();
+        captureIfCacheable(statusCode, buffer);
+        transport.send(buffer, !isKeepAlive());
+    }
+
+    void addHeader(String name, String value) {
+        if (committed) {
+            throw new IllegalStateException("Response has already been sent");
+        }
+        headers.add(name);
+        headers.add(value);
+    }
+
+    void sendError(HttpException e) throws IOException {
+        if (e.getRetryAfterSeconds() > 0) {
+            setHeader("Retry-After", Long.toString(e.getRetryAfterSeconds()));
+        }
+        sendText(e.getStatusCode(), e.getMessage());
     }
 
     public void sendMultipart(int statusCode, Map<String, String> formData, Map<String, byte[]> fileData) throws IOException {
         String responseBody = buildMultipartBody(formData, fileData);
-        String response = buildResponse(statusCode, "text/plain", responseBody);
-        sendResponse(response);
-        clientChannel.close();
+        sendText(statusCode, responseBody);
+    }
+
+    public void send(int statusCode, String contentType, byte[] body) throws IOException {
+        send(statusCode, contentType, body, 0, body.length);
+    }
+
+    private void send(int statusCode, String contentType, byte[] body, int offset, int length) throws IOException {
+        String encoding = contentEncoding(contentType, length);
+        if (encoding != null) {
+            sendEncoded(statusCode, contentType, encoding, body, offset, length);
+        } else {
+            sendIdentity(statusCode, contentType, body, offset, length);
+        }
+    }
+
+    private void sendEncoded(int statusCode, String contentType, String encoding, byte[] body, int offset, int length)
+            throws IOException {
+        Compressor compressor = Compressor.acquire();
+        try {
+            int compressedLength = compressor.compress(encoding, transport.getEventLoop().getServer().getCompressionLevel(),
+                    body, offset, length);
+            if (compressedLength < length) {
+                setHeader("Content-Encoding", encoding);
+                sendIdentity(statusCode, contentType, compressor.output(), 0, compressedLength);
+            } else {
+                sendIdentity(statusCode, contentType, body, offset, length);
+            }
+        } finally {
+            compressor.release();
+        }
+    }
+
+    private void sendIdentity(int statusCode, String contentType, byte[] body, int offset, int length) throws IOException {
+        commit();
+        ByteBuffer buffer = writeHead(statusCode, contentType, length, length);
+        buffer.put(body, offset, length).flip();
+        captureIfCacheable(statusCode, buffer);
+        transport.send(buffer, !isKeepAlive());
+    }
+
+    public void sendFile(Path path) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            attributes = null;
+        }
+        if (attributes == null || !attributes.isRegularFile()) {
+            sendText(404, "Not Found");
+            return;
+        }
+        String contentType = MimeTypes.of(path);
+        long lastModified = attributes.lastModifiedTime().toMillis() / 1000 * 1000;
+        String encoding = precompressedEncoding(path, contentType, lastModified);
+        if (encoding != null) {
+            path = precompressedPath(path, encoding);
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            lastModified = attributes.lastModifiedTime().toMillis() / 1000 * 1000;
+        }
+        long length = attributes.size();
+        String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+        setHeader("ETag", etag);
+        setHeader("Last-Modified", HTTP_DATE.format(Instant.ofEpochMilli(lastModified)));
+        setHeader("Accept-Ranges", "bytes");
+        if (isNotModified(etag, lastModified)) {
+            if (encoding != null) {
+                setHeader("Content-Encoding", encoding);
+            }
+            commit();
+            logAccess(304, 0);
+            ByteBuffer buffer = writeHead(304, null, -1, 0);
+            buffer.flip();
+            transport.send(buffer, !isKeepAlive());
+            return;
+        }
+
+        int statusCode = 200;
+        long start = 0;
+        long count = length;
+        String range = request != null ? request.getHeader("Range") : null;
+        if (range != null && ifRangeMatches(etag, lastModified)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds != null && bounds[0] < 0) {
+                setHeader("Content-Range", "bytes */" + length);
+                sendText(416, "Range Not Satisfiable");
+                return;
+            }
+            if (bounds != null) {
+                statusCode = 206;
+                start = bounds[0];
+                count = bounds[1] - bounds[0] + 1;
+                setHeader("Content-Range", "bytes " + start + "-" + bounds[1] + "/" + length);
+            }
+        }
+
+        if (encoding != null) {
+            setHeader("Content-Encoding", encoding);
+        }
+        commit();
+        ByteBuffer head = writeHead(statusCode, contentType, count, 0);
+        head.flip();
+        if (count == 0 || request != null && request.getHttpMethod() == HttpMethod.HEAD) {
+            transport.send(head, !isKeepAlive());
+            return;
+        }
+        FileCache cache = transport.getEventLoop().getServer().getFileCache();
+        ByteBuffer cached = cache != null ? cache.get(path, length, lastModified) : null;
+        if (cached != null) {
+            cached.position((int) start).limit((int) (start + count));
+            transport.send(head, cached, !isKeepAlive());
+        } else {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            transport.send(head, new FileRegion(channel, start, count), !isKeepAlive());
+        }
+    }
+
+    private String precompressedEncoding(Path path, String contentType, long lastModified) throws IOException {
+        Server server = transport.getEventLoop().getServer();
+        if (request == null || !server.isCompressionEnabled()
+                || !Compressor.isCompressible(contentType, server.getCompressibleTypes())) {
+            return null;
+        }
+        addVary("Accept-Encoding");
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return null;
+        }
+        for (String encoding : Compressor.PRECOMPRESSED) {
+            if (!Compressor.accepts(acceptEncoding, encoding)) {
+                continue;
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(precompressedPath(path, encoding), BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            if (attributes.isRegularFile() && attributes.lastModifiedTime().toMillis() / 1000 * 1000 >= lastModified) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    private static Path precompressedPath(Path path, String encoding) {
+        return path.resolveSibling(path.getFileName() + (encoding.equals(Compressor.GZIP) ? ".gz" : ".br"));
+    }
+
+    private String contentEncoding(String contentType, int length) {
+        Server server = transport.getEventLoop().getServer();
+        if (!server.isCompressionEnabled() || length < server.getCompressionMinSize()
+                || !Compressor.isCompressible(contentType, server.getCompressibleTypes())
+                || header("Content-Encoding") != null) {
+            return null;
+        }
+        addVary("Accept-Encoding");
+        return request != null ? Compressor.negotiate(request.getHeader("Accept-Encoding"), Compressor.ON_THE_FLY) : null;
+    }
+
+    private void addVary(String name) {
+        String vary = header("Vary");
+        if (vary == null) {
+            setHeader("Vary", name);
+            return;
+        }
+        for (String existing : vary.split(",")) {
+            if (existing.trim().equalsIgnoreCase(name) || existing.trim().equals("*")) {
+                return;
+            }
+        }
+        setHeader("Vary", vary + ", " + name);
+    }
+
+    private String header(String name) {
+        for (int i = 0; i < headers.size(); i += 2) {
+            if (headers.get(i).equalsIgnoreCase(name)) {
+                return headers.get(i + 1);
+            }
+        }
+        return null;
+    }
+
+    private boolean isNotModified(String etag, long lastModified) {
+        if (request == null) {
+            return false;
+        }
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = parseDate(request.getHeader("If-Modified-Since"));
+        return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+    }
+
+    private boolean ifRangeMatches(String etag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        return parseDate(ifRange) == lastModified;
+    }
+
+    static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = range.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix == 0) {
+                    return new long[]{-1, -1};
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                if (end < start) {
+                    return null;
+                }
+            }
+            if (start >= length) {
+                return new long[]{-1, -1};
+            }
+            return new long[]{start, Math.min(end, length - 1)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return HTTP_DATE.parse(value.trim(), Instant::from).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    public ResponseStream stream() throws IOException {
+        return stream(200, "application/octet-stream");
+    }
+
+    public ResponseStream stream(int statusCode, String contentType) throws IOException {
+        return stream(statusCode, contentType, -1);
+    }
+
+    ResponseStream stream(int statusCode, String contentType, long contentLength) throws IOException {
+        boolean multiplexed = transport.isMultiplexed();
+        boolean chunked = contentLength < 0 && !multiplexed
+                && (request == null || !"HTTP/1.0".equals(request.getVersion()));
+        if (contentLength >= 0) {
+            if (statusCode != 204 && statusCode != 304) {
+                setHeader("Content-Length", Long.toString(contentLength));
+            }
+        } else if (chunked) {
+            setHeader("Transfer-Encoding", "chunked");
+        } else if (!multiplexed) {
+            connectionHeader = "close";
+        }
+        commit();
+        completeCapture();
+        suspend();
+        ByteBuffer head = writeHead(statusCode, contentType, -1, 0);
+        head.flip();
+        transport.sendPartial(head);
+        boolean discardBody = request != null && request.getHttpMethod() == HttpMethod.HEAD;
+        stream = new ResponseStream(this, transport, statusCode, chunked, discardBody, !isKeepAlive());
+        return stream;
+    }
+
+    void suspend() {
+        if (transport.getEventLoop().inEventLoop()) {
+            transport.beginRequest();
+        }
+        hold();
+    }
+
+    void hold() {
+        holds.incrementAndGet();
+    }
+
+    Transport getTransport() {
+        return transport;
+    }
+
+    void release() {
+        if (holds.decrementAndGet() == 0) {
+            complete();
+            transport.resume();
+        }
+    }
+
+    void onComplete(Runnable task) {
+        completion.getAndUpdate(previous -> previous == null ? task : () -> {
+            previous.run();
+            task.run();
+        });
+    }
+
+    void markFailed() {
+        failed = true;
+    }
+
+    boolean isFailed() {
+        return failed;
     }
 
-    private String buildResponse(int statusCode, String contentType, String responseBody) {
-        String statusText = getStatusText(statusCode);
-        return "HTTP/1.1 " + statusCode + " " + statusText + "\r\n" +
-                "Content-Type: " + contentType + "\r\n" +
-                "Content-Length: " + responseBody.getBytes().length + "\r\n" +
-                "\r\n" +
-                responseBody;
+    void completeIfReleased() {
+        if (holds.get() == 0) {
+            complete();
+        }
+    }
+
+    private void complete() {
+        Runnable task = completion.getAndSet(null);
+        if (task != null) {
+            task.run();
+        }
+    }
+
+    void logAccess(int statusCode, long bytes) {
+        AccessLog accessLog = transport.getEventLoop().getServer().getAccessLog();
+        if (accessLog != null) {
+            accessLog.log(request, transport.getClientAddress(), statusCode, bytes);
+        }
+    }
+
+    void abortStream() {
+        if (stream != null) {
+            stream.abort();
+        }
     }
 
-    private void sendResponse(String response) throws IOException {
-        ByteBuffer buffer = ByteBuffer.wrap(response.getBytes());
-        clientChannel.write(buffer);
-        clientChannel.close();
+    void sendCached(ResponseCache.Entry entry) throws IOException {
+        commit();
+        transport.getEventLoop().getServer().getMetrics().recordResponse(200);
+        logAccess(200, entry.getBody().remaining());
+        byte[] connectionLine = connectionLine();
+        ByteBuffer head = entry.getHead();
+        ByteBuffer body = entry.getBody();
+        int headLength = head.remaining() + connectionLine.length + 2;
+        boolean inline = headLength + body.remaining() <= BufferPool.MAX_POOLED_SIZE;
+        ByteBuffer buffer = transport.getEventLoop().getServer().getBufferPool()
+                .acquire(headLength + (inline ? body.remaining() : 0));
+        buffer.put(head).put(connectionLine).put(CRLF);
+        if (inline) {
+            buffer.put(body).flip();
+            transport.send(buffer, !isKeepAlive());
+        } else {
+            buffer.flip();
+            transport.send(buffer, body, !isKeepAlive());
+        }
     }
 
-    private String buildJsonBody(Map<String, Object> jsonData) {
-        StringBuilder jsonBuilder = new StringBuilder("{");
-        for (Map.Entry<String, Object> entry : jsonData.entrySet()) {
-            jsonBuilder.append("\"").append(entry.getKey()).append("\":");
-            Object value = entry.getValue();
-            if (value instanceof String) {
-                jsonBuilder.append("\"").append(value).append("\"");
+    void capture(ResponseCache.Flight flight, long ttlMillis) {
+        this.capture = flight;
+        this.captureTtlMillis = ttlMillis;
+    }
+
+    void completeCapture() {
+        if (capture != null) {
+            capture.complete(null);
+            capture = null;
+        }
+    }
+
+    private void captureIfCacheable(int statusCode, ByteBuffer buffer) {
+        if (capture == null) {
+            return;
+        }
+        ResponseCache.Entry entry = null;
+        if (statusCode == 200 && isShareable()) {
+            entry = new ResponseCache.Entry(buffer, connectionLineStart, headEnd, captureTtlMillis);
+        }
+        capture.complete(entry);
+        capture = null;
+    }
+
+    // The cache key ignores Authorization and Cookie, so per-user responses must never be replayed to other clients.
+    private boolean isShareable() {
+        for (int i = 0; i < headers.size(); i += 2) {
+            String name = headers.get(i);
+            if (name.equalsIgnoreCase("Set-Cookie")) {
+                return false;
+            }
+            if (name.equalsIgnoreCase("Cache-Control")) {
+                String value = headers.get(i + 1).toLowerCase(Locale.ROOT);
+                if (value.contains("no-store") || value.contains("private")) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void commit() {
+        if (committed) {
+            throw new IllegalStateException("Response has already been sent");
+        }
+        committed = true;
+        if (transport.getEventLoop().getServer().isDraining() && !transport.isMultiplexed()) {
+            connectionHeader = "close";
+        }
+    }
+
+    private ByteBuffer writeHead(int statusCode, String contentType, long contentLength, int bodyCapacity) {
+        transport.getEventLoop().getServer().getMetrics().recordResponse(statusCode);
+        if (contentLength >= 0) {
+            logAccess(statusCode, contentLength);
+        }
+        byte[] statusLine = statusLine(statusCode);
+        byte[] contentTypeLine = contentType != null ? contentTypeLine(contentType) : EMPTY;
+        byte[] connectionLine = connectionLine();
+        int headLength = statusLine.length + contentTypeLine.length + connectionLine.length + 2;
+        if (contentLength >= 0) {
+            headLength += CONTENT_LENGTH.length + digits(contentLength) + 2;
+        }
+        for (String header : headers) {
+            headLength += header.length() + 2;
+        }
+        ByteBuffer buffer = transport.getEventLoop().getServer().getBufferPool().acquire(headLength + bodyCapacity);
+        buffer.put(statusLine).put(contentTypeLine);
+        if (contentLength >= 0) {
+            buffer.put(CONTENT_LENGTH);
+            putDecimal(buffer, contentLength);
+            buffer.put(CRLF);
+        }
+        for (int i = 0; i < headers.size(); i += 2) {
+            putLatin1(buffer, headers.get(i));
+            buffer.put((byte) ':').put((byte) ' ');
+            putLatin1(buffer, headers.get(i + 1));
+            buffer.put(CRLF);
+        }
+        connectionLineStart = buffer.position();
+        buffer.put(connectionLine).put(CRLF);
+        headEnd = buffer.position();
+        return buffer;
+    }
+
+    private byte[] connectionLine() {
+        if (connectionHeader == null) {
+            return EMPTY;
+        }
+        if (connectionHeader.equals("close")) {
+            return CONNECTION_CLOSE;
+        }
+        if (connectionHeader.equals("keep-alive")) {
+            return CONNECTION_KEEP_ALIVE;
+        }
+        return ("Connection: " + connectionHeader + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private byte[] statusLine(int statusCode) {
+        if (statusCode < 0 || statusCode >= STATUS_LINES.length) {
+            return buildStatusLine(statusCode);
+        }
+        byte[] line = STATUS_LINES[statusCode];
+        if (line == null) {
+            line = buildStatusLine(statusCode);
+            STATUS_LINES[statusCode] = line;
+        }
+        return line;
+    }
+
+    private byte[] buildStatusLine(int statusCode) {
+        return ("HTTP/1.1 " + statusCode + " " + getStatusText(statusCode) + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] contentTypeLine(String contentType) {
+        byte[] line = CONTENT_TYPE_LINES.get(contentType);
+        if (line == null) {
+            line = ("Content-Type: " + contentType + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            if (CONTENT_TYPE_LINES.size() < MAX_CACHED_CONTENT_TYPES) {
+                CONTENT_TYPE_LINES.put(contentType, line);
+            }
+        }
+        return line;
+    }
+
+    private static void putLatin1(ByteBuffer buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            buffer.put(c == '\r' || c == '\n' ? (byte) ' ' : (byte) c);
+        }
+    }
+
+    private static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private static void putDecimal(ByteBuffer buffer, long value) {
+        int end = buffer.position() + digits(value);
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
             } else {
-                jsonBuilder.append(value);
+                length += 3;
             }
-            jsonBuilder.append(",");
         }
-        if (jsonBuilder.length() > 1) {
-            jsonBuilder.setLength(jsonBuilder.length() - 1);
+        return length;
+    }
+
+    private static void encodeUtf8(String value, ByteBuffer buffer) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xf0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3f));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3f));
+                buffer.put((byte) (0x80 | codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xe0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+                buffer.put((byte) (0x80 | c & 0x3f));
+            }
         }
-        jsonBuilder.append("}");
-        return jsonBuilder.toString();
     }
 
     private String buildMultipartBody(Map<String, String> formData, Map<String, byte[]> fileData) {
@@ -74,21 +707,55 @@ public class Response {
         }
         for (Map.Entry<String, byte[]> entry : fileData.entrySet()) {
             bodyBuilder.append("\nReceived file: ").append(entry.getKey())
-                    .append(", Content: ").append(new String(entry.getValue()));
+                    .append(", Content: ").append(new String(entry.getValue(), StandardCharsets.UTF_8));
         }
         return bodyBuilder.toString();
     }
 
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public boolean isKeepAlive() {
+        return !"close".equals(connectionHeader);
+    }
+
     private String getStatusText(int statusCode) {
         switch (statusCode) {
             case 200:
                 return "OK";
+            case 206:
+                return "Partial Content";
+            case 304:
+                return "Not Modified";
             case 400:
                 return "Bad Request";
             case 404:
                 return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 408:
+                return "Request Timeout";
+            case 413:
+                return "Payload Too Large";
+            case 416:
+                return "Range Not Satisfiable";
+            case 429:
+                return "Too Many Requests";
+            case 431:
+                return "Request Header Fields Too Large";
             case 500:
                 return "Internal Server Error";
+            case 501:
+                return "Not Implemented";
+            case 502:
+                return "Bad Gateway";
+            case 503:
+                return "Service Unavailable";
+            case 504:
+                return "Gateway Timeout";
+            case 505:
+                return "HTTP Version Not Supported";
             default:
                 return "Unknown";
         }
@@ -0,0 +1,196 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+public class ResponseCache {
+    private final long capacity;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Flight> flights = new HashMap<>();
+    private long size;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public ResponseCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    // Authorization and Cookie are deliberately not part of the key unless a route lists them as vary headers.
+    static String key(Request request, List<String> varyHeaders) {
+        String query = request.getQueryString();
+        if (query == null && varyHeaders.isEmpty()) {
+            return request.getPath();
+        }
+        StringBuilder key = new StringBuilder(request.getPath());
+        if (query != null) {
+            key.append('?').append(query);
+        }
+        for (String header : varyHeaders) {
+            String value = request.getHeader(header);
+            key.append('\0').append(value != null ? value : "");
+        }
+        return key.toString();
+    }
+
+    Entry get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt <= now) {
+                entries.remove(key);
+                size -= entry.size;
+                expirations.increment();
+                entry = null;
+            }
+            if (entry != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+            }
+            return entry;
+        }
+    }
+
+    synchronized Flight join(String key, Consumer<Entry> waiter) {
+        Flight flight = flights.get(key);
+        if (flight != null) {
+            flight.waiters.add(waiter);
+            coalesced.increment();
+            return null;
+        }
+        flight = new Flight(key);
+        flights.put(key, flight);
+        return flight;
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        size = 0;
+    }
+
+    public synchronized void invalidate(String path) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            String key = entry.getKey();
+            if (key.startsWith(path) && (key.length() == path.length()
+                    || key.charAt(path.length()) == '?' || key.charAt(path.length()) == '\0')) {
+                size -= entry.getValue().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private void complete(Flight flight, Entry entry) {
+        List<Consumer<Entry>> waiters;
+        synchronized (this) {
+            flights.remove(flight.key);
+            waiters = flight.waiters;
+            if (entry != null && entry.size <= capacity) {
+                Entry previous = entries.put(flight.key, entry);
+                if (previous != null) {
+                    size -= previous.size;
+                }
+                size += entry.size;
+                Iterator<Entry> eldest = entries.values().iterator();
+                while (size > capacity && eldest.hasNext()) {
+                    size -= eldest.next().size;
+                    eldest.remove();
+                    evictions.increment();
+                }
+            }
+        }
+        for (Consumer<Entry> waiter : waiters) {
+            waiter.accept(entry);
+        }
+    }
+
+    class Flight {
+        private final String key;
+        private final List<Consumer<Entry>> waiters = new ArrayList<>();
+        private boolean done;
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        void complete(Entry entry) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            ResponseCache.this.complete(this, entry);
+        }
+    }
+
+    static class Entry {
+        private final ByteBuffer head;
+        private final ByteBuffer body;
+        private final long expiresAt;
+        private final int size;
+
+        Entry(ByteBuffer response, int headEnd, int bodyStart, long ttlMillis) {
+            this.head = copy(response, 0, headEnd);
+            this.body = copy(response, bodyStart, response.limit());
+            this.expiresAt = System.currentTimeMillis() + ttlMillis;
+            this.size = head.capacity() + body.capacity();
+        }
+
+        ByteBuffer getHead() {
+            return head.duplicate();
+        }
+
+        ByteBuffer getBody() {
+            return body.duplicate();
+        }
+
+        private static ByteBuffer copy(ByteBuffer source, int from, int to) {
+            ByteBuffer slice = source.duplicate();
+            slice.limit(to).position(from);
+            ByteBuffer copy = ByteBuffer.allocateDirect(to - from);
+            copy.put(slice).flip();
+            return copy.asReadOnlyBuffer();
+        }
+    }
+}
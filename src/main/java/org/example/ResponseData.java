@@ -0,0 +1,51 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResponseData {
+    private final int statusCode;
+    private final String contentType;
+    private final byte[] body;
+    private final List<String> headers = new ArrayList<>(0);
+
+    public ResponseData(int statusCode, String contentType, byte[] body) {
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.body = body;
+    }
+
+    public static ResponseData text(int statusCode, String body) {
+        return new ResponseData(statusCode, "text/plain", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ResponseData json(int statusCode, Object json) {
+        return new ResponseData(statusCode, "application/json", JsonWriter.toBytes(json));
+    }
+
+    public void setHeader(String name, String value) {
+        headers.add(name);
+        headers.add(value);
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    void sendTo(Response response) throws IOException {
+        for (int i = 0; i < headers.size(); i += 2) {
+            response.setHeader(headers.get(i), headers.get(i + 1));
+        }
+        response.send(statusCode, contentType, body);
+    }
+}
@@ -0,0 +1,144 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResponseStream implements WritableByteChannel {
+    private static final int MAX_CHUNK_SIZE = BufferPool.MAX_POOLED_SIZE - 16;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final Response response;
+    private final Transport transport;
+    private final int statusCode;
+    private final BufferPool bufferPool;
+    private final boolean chunked;
+    private final boolean discardBody;
+    private final boolean closeConnection;
+    private final List<String> trailers = new ArrayList<>(0);
+    private volatile boolean open = true;
+    private long bytesWritten;
+
+    ResponseStream(Response response, Transport transport, int statusCode, boolean chunked, boolean discardBody,
+                   boolean closeConnection) {
+        this.response = response;
+        this.transport = transport;
+        this.statusCode = statusCode;
+        this.bufferPool = transport.getEventLoop().getServer().getBufferPool();
+        this.chunked = chunked;
+        this.discardBody = discardBody;
+        this.closeConnection = closeConnection;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        int written = src.remaining();
+        bytesWritten += written;
+        while (src.hasRemaining()) {
+            int length = Math.min(src.remaining(), MAX_CHUNK_SIZE);
+            if (!discardBody) {
+                ByteBuffer chunk = bufferPool.acquire(length + 16);
+                if (chunked) {
+                    putHex(chunk, length);
+                    chunk.put(CRLF);
+                }
+                ByteBuffer slice = src.duplicate();
+                slice.limit(slice.position() + length);
+                chunk.put(slice);
+                if (chunked) {
+                    chunk.put(CRLF);
+                }
+                chunk.flip();
+                transport.sendPartial(chunk);
+                transport.awaitWritable();
+            }
+            src.position(src.position() + length);
+        }
+        return written;
+    }
+
+    public void write(byte[] bytes) throws IOException {
+        write(ByteBuffer.wrap(bytes));
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        write(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    public void write(String text) throws IOException {
+        write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Writes from an event loop handler never block, so such handlers pace themselves with these two instead.
+    public boolean isWriteBacklogged() {
+        return transport.isWriteBacklogged();
+    }
+
+    public void whenWritable(Runnable task) {
+        EventLoop eventLoop = transport.getEventLoop();
+        if (eventLoop.inEventLoop()) {
+            transport.whenWritable(task);
+        } else {
+            eventLoop.execute(() -> transport.whenWritable(task));
+        }
+    }
+
+    public synchronized void setTrailer(String name, String value) {
+        if (!open) {
+            throw new IllegalStateException("Stream has already been closed");
+        }
+        trailers.add(name);
+        trailers.add(value);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        response.logAccess(statusCode, bytesWritten);
+        try {
+            if (transport.isMultiplexed() || chunked && !discardBody) {
+                transport.sendTrailers(trailers, closeConnection);
+            } else if (closeConnection) {
+                transport.send(ByteBuffer.allocate(0), true);
+            }
+        } finally {
+            response.release();
+        }
+    }
+
+    synchronized void abort() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        response.logAccess(statusCode, bytesWritten);
+        transport.getEventLoop().execute(transport::closeQuietly);
+        response.release();
+    }
+
+    private static void putHex(ByteBuffer buffer, int value) {
+        int shift = 28;
+        while (shift > 0 && (value >>> shift & 0xf) == 0) {
+            shift -= 4;
+        }
+        for (; shift >= 0; shift -= 4) {
+            buffer.put(HEX[value >>> shift & 0xf]);
+        }
+    }
+}
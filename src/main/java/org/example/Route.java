@@ -0,0 +1,52 @@
+package org.example;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+class Route {
+    private final Handler handler;
+    private final ExecutionMode executionMode;
+    private final long cacheTtlMillis;
+    private final List<String> cacheVaryHeaders;
+    private final Metrics.RouteMetrics metrics;
+    private final TokenBucket rateLimit;
+    private final AtomicLong rateLimitState = new AtomicLong(System.nanoTime());
+
+    Route(Handler handler, RouteOptions options, Metrics.RouteMetrics metrics) {
+        this.handler = handler;
+        this.metrics = metrics;
+        this.executionMode = options.getExecutionMode();
+        this.cacheTtlMillis = options.getCacheTtlMillis();
+        this.cacheVaryHeaders = options.getCacheVaryHeaders();
+        this.rateLimit = options.getRateLimit() > 0
+                ? new TokenBucket(options.getRateLimit(), options.getRateLimitBurst()) : null;
+    }
+
+    boolean isRateLimited() {
+        return rateLimit != null;
+    }
+
+    long tryAcquire() {
+        return rateLimit != null ? rateLimit.tryAcquire(rateLimitState, System.nanoTime()) : 0;
+    }
+
+    Handler getHandler() {
+        return handler;
+    }
+
+    ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    long getCacheTtlMillis() {
+        return cacheTtlMillis;
+    }
+
+    List<String> getCacheVaryHeaders() {
+        return cacheVaryHeaders;
+    }
+
+    Metrics.RouteMetrics getMetrics() {
+        return metrics;
+    }
+}
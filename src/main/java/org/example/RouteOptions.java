@@ -0,0 +1,59 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RouteOptions {
+    private ExecutionMode executionMode = ExecutionMode.EVENT_LOOP;
+    private long cacheTtlMillis;
+    private List<String> cacheVaryHeaders = Collections.emptyList();
+    private long deadlineMillis = 30_000;
+    private double rateLimit;
+    private int rateLimitBurst;
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public long getCacheTtlMillis() {
+        return cacheTtlMillis;
+    }
+
+    public void setCacheTtlMillis(long cacheTtlMillis) {
+        this.cacheTtlMillis = cacheTtlMillis;
+    }
+
+    public List<String> getCacheVaryHeaders() {
+        return cacheVaryHeaders;
+    }
+
+    public void setCacheVaryHeaders(String... headers) {
+        this.cacheVaryHeaders = Collections.unmodifiableList(Arrays.asList(headers.clone()));
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    public void setRateLimit(double requestsPerSecond, int burst) {
+        this.rateLimit = requestsPerSecond;
+        this.rateLimitBurst = burst;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public void setDeadlineMillis(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+    }
+}
@@ -0,0 +1,198 @@
+package org.example;
+
+import java.util.Arrays;
+
+class Router {
+    static final String WILDCARD = "*";
+
+    private final Node root = new Node("");
+
+    synchronized void add(HttpMethod method, String pattern, Route route) {
+        if (pattern.isEmpty() || pattern.charAt(0) != '/') {
+            throw new IllegalArgumentException("Route must start with '/': " + pattern);
+        }
+        Node node = root;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '{') {
+                int close = pattern.indexOf('}', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed path parameter in " + pattern);
+                }
+                if (close + 1 < pattern.length() && pattern.charAt(close + 1) != '/') {
+                    throw new IllegalArgumentException("Path parameter must span a whole segment in " + pattern);
+                }
+                String name = pattern.substring(i + 1, close);
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Empty path parameter name in " + pattern);
+                }
+                if (node.paramChild == null) {
+                    node.paramChild = new Node("");
+                    node.paramChild.name = name;
+                } else if (!node.paramChild.name.equals(name)) {
+                    throw new IllegalArgumentException("Conflicting path parameter {" + name + "} and {"
+                            + node.paramChild.name + "} in " + pattern);
+                }
+                node = node.paramChild;
+                i = close + 1;
+            } else if (c == '*') {
+                if (i != pattern.length() - 1) {
+                    throw new IllegalArgumentException("Wildcard must be the last character of " + pattern);
+                }
+                if (node.wildcardChild == null) {
+                    node.wildcardChild = new Node("");
+                    node.wildcardChild.name = WILDCARD;
+                }
+                node = node.wildcardChild;
+                i++;
+            } else {
+                int end = i;
+                while (end < pattern.length() && pattern.charAt(end) != '{' && pattern.charAt(end) != '*') {
+                    end++;
+                }
+                node = insertStatic(node, pattern.substring(i, end));
+                i = end;
+            }
+        }
+        node.routes[method.ordinal()] = route;
+        node.terminal = true;
+    }
+
+    Route find(HttpMethod method, String path, Request request) {
+        if (method == null) {
+            return null;
+        }
+        Node node = match(root, path, 0, method.ordinal(), request);
+        return node != null ? node.routes[method.ordinal()] : null;
+    }
+
+    String allowedMethods(String path) {
+        Node node = match(root, path, 0, -1, null);
+        if (node == null) {
+            return null;
+        }
+        StringBuilder allow = new StringBuilder();
+        for (HttpMethod method : HttpMethod.VALUES) {
+            if (node.routes[method.ordinal()] != null) {
+                if (allow.length() > 0) {
+                    allow.append(", ");
+                }
+                allow.append(method.name());
+            }
+        }
+        return allow.toString();
+    }
+
+    private static Node match(Node node, String path, int i, int method, Request request) {
+        if (i == path.length()) {
+            if (accepts(node, method)) {
+                return node;
+            }
+            if (node.wildcardChild != null && accepts(node.wildcardChild, method)) {
+                capture(request, WILDCARD, "");
+                return node.wildcardChild;
+            }
+            return null;
+        }
+        Node child = node.child(path.charAt(i));
+        if (child != null && path.startsWith(child.prefix, i)) {
+            Node found = match(child, path, i + child.prefix.length(), method, request);
+            if (found != null) {
+                return found;
+            }
+        }
+        if (node.paramChild != null) {
+            int end = path.indexOf('/', i);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > i) {
+                Node found = match(node.paramChild, path, end, method, request);
+                if (found != null) {
+                    capture(request, node.paramChild.name, path.substring(i, end));
+                    return found;
+                }
+            }
+        }
+        if (node.wildcardChild != null && accepts(node.wildcardChild, method)) {
+            capture(request, WILDCARD, path.substring(i));
+            return node.wildcardChild;
+        }
+        return null;
+    }
+
+    private static boolean accepts(Node node, int method) {
+        return method < 0 ? node.terminal : node.routes[method] != null;
+    }
+
+    private static void capture(Request request, String name, String value) {
+        if (request != null) {
+            request.setPathParam(name, Request.decode(value, false));
+        }
+    }
+
+    private static Node insertStatic(Node node, String segment) {
+        Node child = node.child(segment.charAt(0));
+        if (child == null) {
+            child = new Node(segment);
+            node.addChild(child);
+            return child;
+        }
+        int common = 0;
+        int max = Math.min(child.prefix.length(), segment.length());
+        while (common < max && child.prefix.charAt(common) == segment.charAt(common)) {
+            common++;
+        }
+        if (common < child.prefix.length()) {
+            Node split = new Node(child.prefix.substring(0, common));
+            child.prefix = child.prefix.substring(common);
+            split.addChild(child);
+            node.replaceChild(child, split);
+            child = split;
+        }
+        if (common == segment.length()) {
+            return child;
+        }
+        return insertStatic(child, segment.substring(common));
+    }
+
+    private static final class Node {
+        private String prefix;
+        private String name;
+        private volatile Node[] children = new Node[0];
+        private Node paramChild;
+        private Node wildcardChild;
+        private final Route[] routes = new Route[HttpMethod.VALUES.length];
+        private boolean terminal;
+
+        Node(String prefix) {
+            this.prefix = prefix;
+        }
+
+        Node child(char c) {
+            for (Node child : children) {
+                if (child.prefix.charAt(0) == c) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        void addChild(Node child) {
+            Node[] grown = Arrays.copyOf(children, children.length + 1);
+            grown[children.length] = child;
+            children = grown;
+        }
+
+        void replaceChild(Node existing, Node replacement) {
+            Node[] replaced = children.clone();
+            for (int i = 0; i < replaced.length; i++) {
+                if (replaced[i] == existing) {
+                    replaced[i] = replacement;
+                }
+            }
+            children = replaced;
+        }
+    }
+}
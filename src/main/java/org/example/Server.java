@@ -1,33 +1,492 @@
 package org.example;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
+import java.net.StandardSocketOptions;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Server {
     private final String host;
     private final int port;
-    private final Map<String, Handler> handlers = new HashMap<>();
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final Router router = new Router();
+    private final List<EventLoop> eventLoops = new CopyOnWriteArrayList<>();
+    private final List<ServerSocketChannel> serverChannels = new ArrayList<>();
+    private long idleTimeoutMillis = 30_000;
+    private long headerReadTimeoutMillis = 10_000;
+    private long bodyReadTimeoutMillis = 30_000;
+    private long writeTimeoutMillis = 30_000;
+    private int maxConnections = 10_000;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private volatile boolean acceptPaused;
+    private volatile boolean draining;
+    private final Object drainMonitor = new Object();
+    private final Metrics metrics = new Metrics();
+    private int maxRequestsPerConnection = 1000;
+    private int eventLoopCount = 1;
+    private LoadBalancing loadBalancing = LoadBalancing.ROUND_ROBIN;
+    private boolean reusePort;
+    private int workerPoolSize = Runtime.getRuntime().availableProcessors();
+    private int workerQueueSize = 10_000;
+    private long maxRequestBodySize = 10 * 1024 * 1024;
+    private int multipartSpillThreshold = 64 * 1024;
+    private long maxPartSize = 10 * 1024 * 1024;
+    private BufferPool bufferPool = new BufferPool();
+    private volatile FileCache fileCache;
+    private volatile ResponseCache responseCache = new ResponseCache(64 * 1024 * 1024);
+    private boolean compressionEnabled;
+    private int compressionMinSize = 1024;
+    private int compressionLevel = 6;
+    private List<String> compressibleTypes = Arrays.asList(
+            "text/", "application/json", "application/javascript", "application/xml", "image/svg+xml");
+    private boolean http2Enabled;
+    private int http2MaxConcurrentStreams = 100;
+    private ExecutorService virtualThreadExecutor;
+    private ExecutorService workerPool;
+    private int nextLoop;
+    private volatile EventLoop acceptor;
+    private RateLimiter clientRateLimiter;
+    private RateLimiter connectionRateLimiter;
+    private ConcurrencyLimiter concurrencyLimiter;
+    private volatile boolean routeRateLimits;
+    private volatile AccessLog accessLog;
+    private boolean tcpNoDelay;
+    private int receiveBufferSize;
+    private int sendBufferSize;
+    private int backlog;
+    private int warmupIterations;
+    private boolean defaultHandlersEnabled = true;
 
     public Server(String host, int port) {
         this.host = host;
         this.port = port;
+        metrics.gauge("http_connections_active", "Open client connections.", connectionCount::get);
+        metrics.gauge("http_worker_queue_depth", "Requests waiting for a worker thread.", this::workerQueueDepth);
+        metrics.counter("http_response_cache_hits_total", "Response cache hits.", () -> responseCache.getHits());
+        metrics.counter("http_response_cache_misses_total", "Response cache misses.", () -> responseCache.getMisses());
+        metrics.gauge("http_buffer_pool_outstanding", "Pooled buffers currently in use.",
+                () -> bufferPool.getOutstandingCount());
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public void setHeaderReadTimeoutMillis(long headerReadTimeoutMillis) {
+        this.headerReadTimeoutMillis = headerReadTimeoutMillis;
+    }
+
+    public void setBodyReadTimeoutMillis(long bodyReadTimeoutMillis) {
+        this.bodyReadTimeoutMillis = bodyReadTimeoutMillis;
+    }
+
+    public void setWriteTimeoutMillis(long writeTimeoutMillis) {
+        this.writeTimeoutMillis = writeTimeoutMillis;
+    }
+
+    public void setClientRateLimit(double requestsPerSecond, int burst) {
+        RateLimiter limiter = new RateLimiter(requestsPerSecond, burst, maxConnections);
+        clientRateLimiter = limiter;
+        metrics.gauge("http_rate_limited_clients", "Client addresses with a request rate bucket.", limiter::size);
+    }
+
+    public void setClientConnectionRateLimit(double connectionsPerSecond, int burst) {
+        connectionRateLimiter = new RateLimiter(connectionsPerSecond, burst, maxConnections);
+    }
+
+    public void setConcurrencyLimit(int maxConcurrency, long targetLatencyMillis) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(Math.min(maxConcurrency, 2 * workerPoolSize + 16),
+                maxConcurrency, TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis));
+        concurrencyLimiter = limiter;
+        metrics.gauge("http_concurrency_limit", "Current adaptive concurrency limit.", limiter::getLimit);
+        metrics.gauge("http_requests_in_flight", "Requests currently inside a handler.", limiter::getInFlight);
+    }
+
+    public void setAccessLog(AccessLog accessLog) {
+        this.accessLog = accessLog;
+        if (accessLog != null) {
+            metrics.counter("http_access_log_dropped_total", "Access log entries dropped because the buffer was full.",
+                    accessLog::getDropped);
+        }
+    }
+
+    AccessLog getAccessLog() {
+        return accessLog;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public void setSocketBufferSizes(int receiveBufferSize, int sendBufferSize) {
+        if (receiveBufferSize < 0 || sendBufferSize < 0) {
+            throw new IllegalArgumentException("Socket buffer sizes must not be negative");
+        }
+        this.receiveBufferSize = receiveBufferSize;
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    public void setWarmupIterations(int warmupIterations) {
+        this.warmupIterations = warmupIterations;
+    }
+
+    public void setDefaultHandlersEnabled(boolean defaultHandlersEnabled) {
+        this.defaultHandlersEnabled = defaultHandlersEnabled;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be at least 1");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetricsPath(String path) {
+        registerHandler(path, "GET", (req, res) -> res.send(200, "text/plain; version=0.0.4; charset=utf-8",
+                metrics.toPrometheus().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+    }
+
+    public void setEventLoopCount(int eventLoopCount) {
+        if (eventLoopCount < 1) {
+            throw new IllegalArgumentException("eventLoopCount must be at least 1");
+        }
+        this.eventLoopCount = eventLoopCount;
+    }
+
+    public void setLoadBalancing(LoadBalancing loadBalancing) {
+        this.loadBalancing = loadBalancing;
+    }
+
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    public void setWorkerPoolSize(int workerPoolSize) {
+        this.workerPoolSize = workerPoolSize;
+    }
+
+    public void setWorkerQueueSize(int workerQueueSize) {
+        this.workerQueueSize = workerQueueSize;
+    }
+
+    public void setMaxRequestBodySize(long maxRequestBodySize) {
+        this.maxRequestBodySize = maxRequestBodySize;
+    }
+
+    public void setMultipartSpillThreshold(int multipartSpillThreshold) {
+        this.multipartSpillThreshold = multipartSpillThreshold;
+    }
+
+    public void setMaxPartSize(long maxPartSize) {
+        this.maxPartSize = maxPartSize;
+    }
+
+    public void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    public void setFileCacheCapacity(long capacity) {
+        this.fileCache = capacity > 0 ? new FileCache(capacity) : null;
+    }
+
+    FileCache getFileCache() {
+        return fileCache;
+    }
+
+    public void setResponseCacheCapacity(long capacity) {
+        this.responseCache = new ResponseCache(capacity);
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public void setCompressionMinSize(int compressionMinSize) {
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < 1 || compressionLevel > 9) {
+            throw new IllegalArgumentException("compressionLevel must be between 1 and 9");
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    public void setCompressibleTypes(String... compressibleTypes) {
+        this.compressibleTypes = Arrays.asList(compressibleTypes.clone());
+    }
+
+    public void setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+    }
+
+    public void setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+        if (http2MaxConcurrentStreams < 1) {
+            throw new IllegalArgumentException("http2MaxConcurrentStreams must be at least 1");
+        }
+        this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+    }
+
+    boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    int getHttp2MaxConcurrentStreams() {
+        return http2MaxConcurrentStreams;
+    }
+
+    boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    List<String> getCompressibleTypes() {
+        return compressibleTypes;
+    }
+
+    long getMaxRequestBodySize() {
+        return maxRequestBodySize;
+    }
+
+    int getMultipartSpillThreshold() {
+        return multipartSpillThreshold;
+    }
+
+    long getMaxPartSize() {
+        return maxPartSize;
+    }
+
+    long getTimeoutMillis(Connection.Phase phase) {
+        switch (phase) {
+            case IDLE:
+                return idleTimeoutMillis;
+            case HEADER:
+                return headerReadTimeoutMillis;
+            case BODY:
+                return bodyReadTimeoutMillis;
+            case WRITE:
+                return writeTimeoutMillis;
+            default:
+                return 0;
+        }
+    }
+
+    boolean isDraining() {
+        return draining;
+    }
+
+    boolean admitConnection(SocketChannel channel) {
+        RateLimiter limiter = connectionRateLimiter;
+        if (limiter == null || limiter.tryAcquire(channel.socket().getInetAddress()) == 0) {
+            return true;
+        }
+        metrics.recordShed();
+        return false;
+    }
+
+    void admit(Request request, InetAddress client) throws HttpException {
+        long waitNanos = clientRateLimiter != null ? clientRateLimiter.tryAcquire(client) : 0;
+        if (waitNanos == 0 && routeRateLimits) {
+            Route route = route(request);
+            waitNanos = route != null ? route.tryAcquire() : 0;
+        }
+        if (waitNanos > 0) {
+            long retryAfterSeconds = TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999);
+            throw new HttpException(429, "Too Many Requests", retryAfterSeconds);
+        }
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter != null) {
+            if (!limiter.tryAcquire()) {
+                throw new HttpException(503, "Service Unavailable", 1);
+            }
+            request.setAdmission(limiter);
+        }
+    }
+
+    static void cancelAdmission(Request request) {
+        ConcurrencyLimiter limiter = request.takeAdmission();
+        if (limiter != null) {
+            limiter.cancel();
+        }
+    }
+
+    // Multipart bodies are only parsed, and possibly spilled to disk, for a local handler that can consume the parts.
+    boolean parsesMultipart(Request request) {
+        Route route = route(request);
+        return route != null && !(route.getHandler() instanceof ProxyHandler);
+    }
+
+    // Resolved once per request, right after the head is parsed, and reused by admission, body setup and dispatch.
+    Route route(Request request) {
+        if (!request.isRouted()) {
+            request.setRoute(router.find(request.getHttpMethod(), request.getPath(), request));
+        }
+        return request.getRoute();
+    }
+
+    void recordRejected(HttpException e) {
+        if (e.getRetryAfterSeconds() > 0) {
+            metrics.recordShed();
+        } else {
+            metrics.recordParseError();
+        }
+    }
+
+    boolean reserveConnection() {
+        if (connectionCount.incrementAndGet() <= maxConnections && !draining) {
+            return true;
+        }
+        releaseConnection();
+        return false;
+    }
+
+    void releaseConnection() {
+        int remaining = connectionCount.decrementAndGet();
+        if (acceptPaused && remaining < maxConnections) {
+            resumeAccepting();
+        }
+        if (draining && remaining == 0) {
+            synchronized (drainMonitor) {
+                drainMonitor.notifyAll();
+            }
+        }
+    }
+
+    void acceptPaused() {
+        acceptPaused = true;
+        if (connectionCount.get() < maxConnections) {
+            resumeAccepting();
+        }
+    }
+
+    private void resumeAccepting() {
+        if (!acceptPaused || draining) {
+            return;
+        }
+        acceptPaused = false;
+        EventLoop dedicated = acceptor;
+        if (dedicated != null) {
+            dedicated.resumeAccepting();
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.resumeAccepting();
+        }
     }
 
     public void registerHandler(String path, String method, Handler handler) {
+        registerHandler(path, method, handler, ExecutionMode.EVENT_LOOP);
+    }
+
+    public void registerHandler(String path, String method, Handler handler, ExecutionMode executionMode) {
+        RouteOptions options = new RouteOptions();
+        options.setExecutionMode(executionMode);
+        registerHandler(path, method, handler, options);
+    }
+
+    public void registerHandler(String path, String method, Handler handler, RouteOptions options) {
+        HttpMethod httpMethod = HttpMethod.of(method);
+        if (httpMethod == null) {
+            throw new IllegalArgumentException("Unsupported method: " + method);
+        }
+        router.add(httpMethod, path, new Route(handler, options, metrics.route(httpMethod.name(), path)));
         handlers.put(method + " " + path, handler);
+        if (options.getRateLimit() > 0) {
+            routeRateLimits = true;
+        }
+    }
+
+    public void registerHandler(String path, String method, AsyncHandler handler) {
+        registerHandler(path, method, handler, new RouteOptions());
+    }
+
+    public void registerHandler(String path, String method, AsyncHandler handler, RouteOptions options) {
+        registerHandler(path, method, AsyncExchange.adapt(handler, options.getDeadlineMillis()), options);
+    }
+
+    public void mount(String prefix, Handler handler) {
+        mount(prefix, handler, ExecutionMode.EVENT_LOOP);
+    }
+
+    public void mount(String prefix, Handler handler, ExecutionMode executionMode) {
+        for (HttpMethod method : HttpMethod.VALUES) {
+            mount(prefix, method, handler, executionMode);
+        }
+    }
+
+    public void serveStatic(String prefix, Path directory) {
+        StaticFiles files = new StaticFiles(directory);
+        mount(prefix, HttpMethod.GET, files, ExecutionMode.EVENT_LOOP);
+        mount(prefix, HttpMethod.HEAD, files, ExecutionMode.EVENT_LOOP);
+    }
+
+    private void mount(String prefix, HttpMethod method, Handler handler, ExecutionMode executionMode) {
+        String base = prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+        if (!base.isEmpty()) {
+            registerHandler(base, method.name(), handler, executionMode);
+        }
+        registerHandler(base + "/" + Router.WILDCARD, method.name(), handler, executionMode);
     }
 
     public void registerDefaultHandlers() {
-        registerHandler("/", "GET", (req, res) -> res.sendText(200, "Received GET request"));
-        registerHandler("/", "POST", (req, res) -> {
+        registerDefaultHandlers(false);
+    }
+
+    private void registerDefaultHandlers(boolean onlyMissing) {
+        registerDefaultHandler("GET", (req, res) -> res.sendText(200, "Received GET request"), onlyMissing);
+        registerDefaultHandler("POST", (req, res) -> {
             if (req.isJson()) {
                 res.sendJson(200, req.getJsonData());
             } else if (req.isMultipart()) {
@@ -35,8 +494,8 @@ public class Server {
             } else {
                 res.sendText(200, "Received POST request with body: " + req.getBody());
             }
-        });
-        registerHandler("/", "PUT", (req, res) -> {
+        }, onlyMissing);
+        registerDefaultHandler("PUT", (req, res) -> {
             if (req.isJson()) {
                 res.sendJson(200, req.getJsonData());
             } else if (req.isMultipart()) {
@@ -44,8 +503,8 @@ public class Server {
             } else {
                 res.sendText(200, "Received PUT request with body: " + req.getBody());
             }
-        });
-        registerHandler("/", "PATCH", (req, res) -> {
+        }, onlyMissing);
+        registerDefaultHandler("PATCH", (req, res) -> {
             if (req.isJson()) {
                 res.sendJson(200, req.getJsonData());
             } else if (req.isMultipart()) {
@@ -53,68 +512,347 @@ public class Server {
             } else {
                 res.sendText(200, "Received PATCH request with body: " + req.getBody());
             }
-        });
-        registerHandler("/", "DELETE", (req, res) -> res.sendText(200, "Received DELETE request"));
+        }, onlyMissing);
+        registerDefaultHandler("DELETE", (req, res) -> res.sendText(200, "Received DELETE request"), onlyMissing);
+    }
+
+    private void registerDefaultHandler(String method, Handler handler, boolean onlyMissing) {
+        if (!onlyMissing || !handlers.containsKey(method + " /")) {
+            registerHandler("/", method, handler);
+        }
+    }
+
+    public void warmUp(int iterations) {
+        new Warmup(router, handlers.keySet(), http2Enabled, compressionEnabled ? compressionLevel : 0).run(iterations);
+    }
+
+    void dispatch(Connection connection, Request request) throws IOException {
+        dispatch(connection, request, connectionHeader(connection, request));
     }
 
-    private void handleRequest(SelectionKey key) throws IOException {
-        SocketChannel clientChannel = (SocketChannel) key.channel();
-        ByteBuffer buffer = ByteBuffer.allocate(1024);
-        int bytesRead = clientChannel.read(buffer);
+    void dispatch(Transport transport, Request request, String connectionHeader) throws IOException {
+        Response response = new Response(transport, request, connectionHeader);
 
-        if (bytesRead == -1) {
-            clientChannel.close();
+        Route route = route(request);
+
+        if (route == null) {
+            String allow = router.allowedMethods(request.getPath());
+            if (allow == null) {
+                response.sendText(404, "Not Found");
+            } else if (request.getHttpMethod() == null) {
+                response.sendText(501, "Not Implemented");
+            } else {
+                response.setHeader("Allow", allow);
+                response.sendText(405, "Method Not Allowed");
+            }
+            cancelAdmission(request);
+            request.deleteParts();
+        } else if (route.getCacheTtlMillis() > 0 && request.getHttpMethod() == HttpMethod.GET) {
+            dispatchCached(transport, request, response, route);
+        } else {
+            invoke(transport, request, response, route);
+        }
+    }
+
+    private void dispatchCached(Transport transport, Request request, Response response, Route route)
+            throws IOException {
+        ResponseCache cache = responseCache;
+        String key = ResponseCache.key(request, route.getCacheVaryHeaders());
+        if (compressionEnabled) {
+            String encoding = Compressor.negotiate(request.getHeader("Accept-Encoding"), Compressor.ON_THE_FLY);
+            key = key + '\0' + (encoding != null ? encoding : "identity");
+        }
+        ResponseCache.Entry entry = cache.get(key);
+        if (entry != null) {
+            cancelAdmission(request);
+            request.deleteParts();
+            response.sendCached(entry);
             return;
         }
+        ResponseCache.Flight flight = cache.join(key, cached -> {
+            EventLoop eventLoop = transport.getEventLoop();
+            if (cached != null) {
+                cancelAdmission(request);
+                request.deleteParts();
+                try {
+                    response.sendCached(cached);
+                } catch (IOException e) {
+                    transport.closeQuietly();
+                }
+                transport.resume();
+            } else {
+                eventLoop.execute(() -> {
+                    boolean inline = route.getExecutionMode() == ExecutionMode.EVENT_LOOP;
+                    if (inline) {
+                        response.hold();
+                    }
+                    try {
+                        invoke(transport, request, response, route);
+                    } catch (IOException | RuntimeException e) {
+                        transport.closeQuietly();
+                    }
+                    if (inline) {
+                        response.release();
+                    }
+                });
+            }
+        });
+        if (flight == null) {
+            transport.beginRequest();
+            return;
+        }
+        response.capture(flight, route.getCacheTtlMillis());
+        invoke(transport, request, response, route);
+    }
 
-        buffer.flip();
-        String requestData = new String(buffer.array(), 0, bytesRead);
-        Request request = Request.parse(requestData);
-        Response response = new Response(clientChannel);
+    private void invoke(Transport transport, Request request, Response response, Route route) throws IOException {
+        ConcurrencyLimiter limiter = request.takeAdmission();
+        if (limiter != null) {
+            long admitted = System.nanoTime();
+            response.onComplete(() -> limiter.release(admitted));
+        }
+        if (route.getExecutionMode() == ExecutionMode.EVENT_LOOP) {
+            long start = System.nanoTime();
+            finishOnComplete(route, request, response, start);
+            try {
+                route.getHandler().handle(request, response);
+            } catch (HttpException e) {
+                response.markFailed();
+                if (response.isCommitted()) {
+                    throw e;
+                }
+                response.sendError(e);
+            } catch (IOException | RuntimeException e) {
+                response.markFailed();
+                throw e;
+            } finally {
+                transport.getEventLoop().getMetrics().recordHandler(System.nanoTime() - start);
+                response.completeIfReleased();
+            }
+        } else {
+            transport.beginRequest();
+            try {
+                executorFor(route.getExecutionMode()).execute(() -> runHandler(route, request, response));
+            } catch (RejectedExecutionException e) {
+                transport.resume();
+                response.completeCapture();
+                request.deleteParts();
+                response.completeIfReleased();
+                metrics.recordShed();
+                response.sendError(new HttpException(503, "Service Unavailable", 1));
+            }
+        }
+    }
 
-        String handlerKey = request.getMethod() + " " + request.getPath();
-        Handler handler = handlers.get(handlerKey);
+    private void runHandler(Route route, Request request, Response response) {
+        response.hold();
+        finishOnComplete(route, request, response, System.nanoTime());
+        try {
+            route.getHandler().handle(request, response);
+        } catch (Exception e) {
+            response.markFailed();
+            if (!response.isCommitted()) {
+                try {
+                    if (e instanceof HttpException) {
+                        response.sendError((HttpException) e);
+                    } else {
+                        response.sendText(500, "Internal Server Error");
+                    }
+                } catch (IOException ignored) {
+                }
+            } else {
+                response.abortStream();
+            }
+        } finally {
+            response.release();
+        }
+    }
 
-        if (handler != null) {
-            handler.handle(request, response);
-        } else {
-            response.sendText(404, "Not Found");
+    private static void finishOnComplete(Route route, Request request, Response response, long start) {
+        response.onComplete(() -> {
+            route.getMetrics().record(start, response.isFailed());
+            response.completeCapture();
+            request.deleteParts();
+        });
+    }
+
+    private synchronized ExecutorService executorFor(ExecutionMode executionMode) {
+        if (executionMode == ExecutionMode.VIRTUAL_THREAD) {
+            if (virtualThreadExecutor == null) {
+                virtualThreadExecutor = newVirtualThreadExecutor();
+            }
+            return virtualThreadExecutor;
+        }
+        if (workerPool == null) {
+            workerPool = new ThreadPoolExecutor(workerPoolSize, workerPoolSize, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(workerQueueSize), daemonThreads("http-worker-"));
+        }
+        return workerPool;
+    }
+
+    private synchronized long workerQueueDepth() {
+        return workerPool instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) workerPool).getQueue().size() : 0;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads("http-handler-"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private String connectionHeader(Connection connection, Request request) {
+        if (!request.isKeepAlive() || connection.getRequestCount() >= maxRequestsPerConnection) {
+            return "close";
         }
+        return "HTTP/1.0".equals(request.getVersion()) ? "keep-alive" : null;
     }
 
     public void startServer() throws IOException {
-        registerDefaultHandlers();
+        if (defaultHandlersEnabled) {
+            registerDefaultHandlers(true);
+        }
+        if (warmupIterations > 0) {
+            warmUp(warmupIterations);
+        }
+        draining = false;
+        acceptPaused = false;
 
-        try (Selector selector = Selector.open();
-             ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+        List<Thread> threads = new ArrayList<>();
+        try {
+            boolean dedicatedAcceptor = eventLoopCount > 1 && !reusePort;
+            for (int i = 0; i < eventLoopCount; i++) {
+                eventLoops.add(new EventLoop(this, "http-loop-" + i));
+            }
+            if (reusePort) {
+                for (EventLoop eventLoop : eventLoops) {
+                    eventLoop.registerAcceptor(openServerChannel());
+                }
+            } else if (dedicatedAcceptor) {
+                acceptor = new EventLoop(this, "http-acceptor");
+                acceptor.registerAcceptor(openServerChannel());
+            } else {
+                eventLoops.get(0).registerAcceptor(openServerChannel());
+            }
 
-            serverChannel.bind(new InetSocketAddress(host, port));
-            serverChannel.configureBlocking(false);
-            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            EventLoop current = dedicatedAcceptor ? acceptor : eventLoops.get(0);
+            for (EventLoop eventLoop : eventLoops) {
+                if (eventLoop != current) {
+                    Thread thread = new Thread(eventLoop, eventLoop.getName());
+                    thread.start();
+                    threads.add(thread);
+                }
+            }
+            current.run();
+        } finally {
+            stop();
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (ServerSocketChannel serverChannel : serverChannels) {
+                serverChannel.close();
+            }
+            serverChannels.clear();
+            eventLoops.clear();
+            acceptor = null;
+        }
+    }
 
-            while (true) {
-                selector.select();
-                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+    public boolean shutdownGracefully(long timeoutMillis) throws InterruptedException {
+        draining = true;
+        synchronized (this) {
+            if (acceptor != null) {
+                acceptor.drain();
+            }
+            for (EventLoop eventLoop : eventLoops) {
+                eventLoop.drain();
+            }
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (drainMonitor) {
+            long remaining;
+            while (connectionCount.get() > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                drainMonitor.wait(remaining);
+            }
+        }
+        boolean drained = connectionCount.get() == 0;
+        stop();
+        return drained;
+    }
 
-                while (keyIterator.hasNext()) {
-                    SelectionKey key = keyIterator.next();
-                    keyIterator.remove();
+    public synchronized void stop() {
+        if (acceptor != null) {
+            acceptor.shutdown();
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+            virtualThreadExecutor = null;
+        }
+        if (workerPool != null) {
+            workerPool.shutdown();
+            workerPool = null;
+        }
+    }
 
-                    if (key.isAcceptable()) {
-                        acceptConnection(key, selector);
-                    } else if (key.isReadable()) {
-                        handleRequest(key);
-                    }
+    EventLoop nextEventLoop(EventLoop acceptingLoop) {
+        if (reusePort) {
+            return acceptingLoop;
+        }
+        if (loadBalancing == LoadBalancing.LEAST_CONNECTIONS) {
+            EventLoop least = eventLoops.get(0);
+            for (EventLoop eventLoop : eventLoops) {
+                if (eventLoop.getConnectionCount() < least.getConnectionCount()) {
+                    least = eventLoop;
                 }
             }
+            return least;
+        }
+        EventLoop eventLoop = eventLoops.get(nextLoop);
+        nextLoop = (nextLoop + 1) % eventLoops.size();
+        return eventLoop;
+    }
+
+    private ServerSocketChannel openServerChannel() throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannels.add(serverChannel);
+        if (reusePort) {
+            if (!serverChannel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                throw new IOException("SO_REUSEPORT is not supported on this platform");
+            }
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        if (receiveBufferSize > 0) {
+            serverChannel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
         }
+        serverChannel.bind(new InetSocketAddress(host, port), backlog);
+        return serverChannel;
     }
 
-    private void acceptConnection(SelectionKey key, Selector selector) throws IOException {
-        ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
-        SocketChannel clientChannel = serverChannel.accept();
-        clientChannel.configureBlocking(false);
-        clientChannel.register(selector, SelectionKey.OP_READ);
+    void configureSocket(SocketChannel channel) throws IOException {
+        if (tcpNoDelay) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        if (sendBufferSize > 0) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+        }
     }
 
     public Map<String, Handler> getHandlers() {
@@ -0,0 +1,222 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+public class ServerConfig {
+    private final Map<String, String> values;
+    private final Map<String, String> environment;
+    private final Properties systemProperties;
+
+    ServerConfig(Map<String, String> values, Map<String, String> environment, Properties systemProperties) {
+        this.values = values;
+        this.environment = environment;
+        this.systemProperties = systemProperties;
+    }
+
+    public static ServerConfig load(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".yml") || name.endsWith(".yaml")) {
+            return new ServerConfig(parseYaml(Files.readAllLines(file, StandardCharsets.UTF_8)),
+                    System.getenv(), System.getProperties());
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return fromProperties(properties);
+    }
+
+    public static ServerConfig fromProperties(Properties properties) {
+        Map<String, String> values = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            values.put(name, properties.getProperty(name).trim());
+        }
+        return new ServerConfig(values, System.getenv(), System.getProperties());
+    }
+
+    public static ServerConfig fromEnvironment() {
+        return new ServerConfig(new HashMap<>(), System.getenv(), System.getProperties());
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = systemProperties.getProperty(key);
+        if (value == null) {
+            value = environment.get(key.replace('.', '_').replace('-', '_').toUpperCase(Locale.ROOT));
+        }
+        if (value == null) {
+            value = values.get(key);
+        }
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw invalid(key, value);
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value == null ? defaultValue : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw invalid(key, value);
+        }
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value == null ? defaultValue : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw invalid(key, value);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw invalid(key, value);
+    }
+
+    public Server createServer() throws IOException {
+        Server server = new Server(getString("server.host", "localhost"), getInt("server.port", 8081));
+        server.setEventLoopCount(getInt("server.eventLoops", 1));
+        server.setLoadBalancing(LoadBalancing.valueOf(
+                getString("server.loadBalancing", LoadBalancing.ROUND_ROBIN.name()).toUpperCase(Locale.ROOT)));
+        server.setReusePort(getBoolean("server.reusePort", false));
+        server.setWorkerPoolSize(getInt("server.workerPoolSize", Runtime.getRuntime().availableProcessors()));
+        server.setWorkerQueueSize(getInt("server.workerQueueSize", 10_000));
+        server.setMaxConnections(getInt("server.maxConnections", 10_000));
+        server.setMaxRequestsPerConnection(getInt("server.maxRequestsPerConnection", 1000));
+        server.setMaxRequestBodySize(getLong("server.maxRequestBodySize", 10 * 1024 * 1024));
+        server.setWarmupIterations(getInt("server.warmupIterations", 0));
+        server.setDefaultHandlersEnabled(getBoolean("server.defaultHandlers", true));
+
+        server.setTcpNoDelay(getBoolean("socket.tcpNoDelay", false));
+        server.setSocketBufferSizes(getInt("socket.receiveBufferSize", 0), getInt("socket.sendBufferSize", 0));
+        server.setBacklog(getInt("socket.backlog", 0));
+
+        server.setIdleTimeoutMillis(getLong("timeouts.idleMillis", 30_000));
+        server.setHeaderReadTimeoutMillis(getLong("timeouts.headerReadMillis", 10_000));
+        server.setBodyReadTimeoutMillis(getLong("timeouts.bodyReadMillis", 30_000));
+        server.setWriteTimeoutMillis(getLong("timeouts.writeMillis", 30_000));
+
+        server.setHttp2Enabled(getBoolean("http2.enabled", false));
+        server.setHttp2MaxConcurrentStreams(getInt("http2.maxConcurrentStreams", 100));
+        server.setCompressionEnabled(getBoolean("compression.enabled", false));
+        server.setCompressionMinSize(getInt("compression.minSize", 1024));
+        server.setCompressionLevel(getInt("compression.level", 6));
+        server.setResponseCacheCapacity(getLong("cache.responseCapacity", 64 * 1024 * 1024));
+        server.setFileCacheCapacity(getLong("cache.fileCapacity", 0));
+
+        if (getDouble("limits.clientRate", 0) > 0) {
+            server.setClientRateLimit(getDouble("limits.clientRate", 0), getInt("limits.clientBurst", 1));
+        }
+        if (getDouble("limits.connectionRate", 0) > 0) {
+            server.setClientConnectionRateLimit(getDouble("limits.connectionRate", 0),
+                    getInt("limits.connectionBurst", 1));
+        }
+        if (getInt("limits.concurrency", 0) > 0) {
+            server.setConcurrencyLimit(getInt("limits.concurrency", 0), getLong("limits.targetLatencyMillis", 100));
+        }
+
+        String metricsPath = getString("metrics.path", null);
+        if (metricsPath != null) {
+            server.setMetricsPath(metricsPath);
+        }
+        String accessLog = getString("accessLog.path", null);
+        if (accessLog != null) {
+            server.setAccessLog(new AccessLog(Paths.get(accessLog), getLong("accessLog.flushMillis", 1000),
+                    getLong("accessLog.maxFileSize", 100L * 1024 * 1024), getInt("accessLog.maxFiles", 5)));
+        }
+        return server;
+    }
+
+    static Map<String, String> parseYaml(List<String> lines) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        List<Integer> indents = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (int number = 1; number <= lines.size(); number++) {
+            String line = stripComment(lines.get(number - 1));
+            if (line.trim().isEmpty() || line.trim().equals("---")) {
+                continue;
+            }
+            int indent = 0;
+            while (line.charAt(indent) == ' ') {
+                indent++;
+            }
+            int colon = line.indexOf(':', indent);
+            if (line.charAt(indent) == '-' || colon < 0) {
+                throw new IOException("Unsupported YAML on line " + number + ": " + line.trim());
+            }
+            while (!indents.isEmpty() && indents.get(indents.size() - 1) >= indent) {
+                indents.remove(indents.size() - 1);
+                keys.remove(keys.size() - 1);
+            }
+            String key = line.substring(indent, colon).trim();
+            String value = unquote(line.substring(colon + 1).trim());
+            String path = keys.isEmpty() ? key : keys.get(keys.size() - 1) + "." + key;
+            if (value.isEmpty()) {
+                indents.add(indent);
+                keys.add(path);
+            } else {
+                values.put(path, value);
+            }
+        }
+        return values;
+    }
+
+    private static String stripComment(String line) {
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '#' && (i == 0 || line.charAt(i - 1) == ' ')) {
+                return line.substring(0, i);
+            } else if (c == '\t') {
+                line = line.substring(0, i) + ' ' + line.substring(i + 1);
+            }
+        }
+        return line;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && (value.charAt(0) == '"' || value.charAt(0) == '\'')
+                && value.charAt(value.length() - 1) == value.charAt(0)) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static IllegalArgumentException invalid(String key, String value) {
+        return new IllegalArgumentException("Invalid value for " + key + ": " + value);
+    }
+}
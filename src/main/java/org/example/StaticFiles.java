@@ -0,0 +1,52 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+
+public class StaticFiles implements Handler {
+    private final Path root;
+    private final String indexFile;
+
+    public StaticFiles(Path root) {
+        this(root, "index.html");
+    }
+
+    public StaticFiles(Path root, String indexFile) {
+        this.root = root.toAbsolutePath().normalize();
+        this.indexFile = indexFile;
+    }
+
+    @Override
+    public void handle(Request request, Response response) throws IOException {
+        String relative = request.getPathParam(Router.WILDCARD);
+        if (relative == null) {
+            relative = Request.decode(request.getPath(), false);
+        }
+        while (relative.startsWith("/")) {
+            relative = relative.substring(1);
+        }
+        Path file = resolve(relative);
+        if (file == null) {
+            response.sendText(404, "Not Found");
+            return;
+        }
+        if (Files.isDirectory(file) && indexFile != null) {
+            file = file.resolve(indexFile);
+        }
+        response.sendFile(file);
+    }
+
+    private Path resolve(String relative) {
+        if (relative.indexOf('\0') >= 0) {
+            return null;
+        }
+        try {
+            Path file = root.resolve(relative).normalize();
+            return file.startsWith(root) ? file : null;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class TimingWheel {
+    private final long tickMillis;
+    private final Timeout[] slots;
+    private final int mask;
+    private final List<Timeout> expired = new ArrayList<>();
+    private long lastTick;
+    private int size;
+
+    TimingWheel(long tickMillis, int slotCount) {
+        if (slotCount <= 0 || Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("slotCount must be a power of two");
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new Timeout[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new Timeout(null);
+        }
+        this.mask = slotCount - 1;
+        this.lastTick = now() / tickMillis;
+    }
+
+    static long now() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void schedule(Timeout timeout, long delayMillis) {
+        timeout.cancel();
+        timeout.deadline = now() + delayMillis;
+        long tick = Math.max((timeout.deadline + tickMillis - 1) / tickMillis, lastTick + 1);
+        Timeout head = slots[(int) (tick & mask)];
+        timeout.next = head;
+        timeout.prev = head.prev;
+        head.prev.next = timeout;
+        head.prev = timeout;
+        timeout.wheel = this;
+        size++;
+    }
+
+    int advance() {
+        long now = now();
+        long currentTick = now / tickMillis;
+        if (currentTick <= lastTick) {
+            return 0;
+        }
+        long ticks = Math.min(currentTick - lastTick, slots.length);
+        for (long i = 1; i <= ticks; i++) {
+            Timeout head = slots[(int) ((lastTick + i) & mask)];
+            for (Timeout timeout = head.next; timeout != head; timeout = timeout.next) {
+                if (timeout.deadline <= now) {
+                    expired.add(timeout);
+                }
+            }
+        }
+        lastTick = currentTick;
+        int count = expired.size();
+        try {
+            for (Timeout timeout : expired) {
+                if (timeout.wheel == this && timeout.deadline <= now) {
+                    timeout.cancel();
+                    timeout.task.run();
+                }
+            }
+        } finally {
+            expired.clear();
+        }
+        return count;
+    }
+
+    static final class Timeout {
+        private final Runnable task;
+        private Timeout prev = this;
+        private Timeout next = this;
+        private long deadline;
+        private TimingWheel wheel;
+
+        Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        boolean isScheduled() {
+            return wheel != null;
+        }
+
+        void cancel() {
+            if (wheel == null) {
+                return;
+            }
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+            wheel.size--;
+            wheel = null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+
+    TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive and burst at least 1");
+        }
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+    }
+
+    // The state is the time at which the bucket would be full again; a token is taken by moving it one interval on.
+    long tryAcquire(AtomicLong state, long now) {
+        while (true) {
+            long fullAt = state.get();
+            long next = Math.max(fullAt, now) + intervalNanos;
+            if (next - now > burstNanos) {
+                return next - now - burstNanos;
+            }
+            if (state.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    static boolean isFull(AtomicLong state, long now) {
+        return state.get() - now <= 0;
+    }
+}
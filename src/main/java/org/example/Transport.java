@@ -0,0 +1,38 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+interface Transport {
+    EventLoop getEventLoop();
+
+    InetAddress getClientAddress();
+
+    boolean isMultiplexed();
+
+    default void send(ByteBuffer data, boolean close) throws IOException {
+        send(data, null, close);
+    }
+
+    void send(ByteBuffer head, Object body, boolean close) throws IOException;
+
+    void sendPartial(ByteBuffer data) throws IOException;
+
+    void sendTrailers(List<String> trailers, boolean close) throws IOException;
+
+    void awaitWritable() throws IOException;
+
+    boolean isWriteBacklogged();
+
+    void whenWritable(Runnable task);
+
+    void beginRequest();
+
+    void resume();
+
+    void setCloseListener(Runnable listener);
+
+    void closeQuietly();
+}
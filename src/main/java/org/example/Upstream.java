@@ -0,0 +1,142 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Upstream {
+    private static final int MAX_CONNECT_FAILURES = 3;
+    private static final long FAILURE_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final String host;
+    private final int port;
+    private final InetSocketAddress address;
+    private final String hostHeader;
+    private final Map<EventLoop, ArrayDeque<UpstreamConnection>> idle = new ConcurrentHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger connectFailures = new AtomicInteger();
+    private long connectTimeoutMillis = 5_000;
+    private long responseTimeoutMillis = 30_000;
+    private long idleTimeoutMillis = 60_000;
+    private int maxIdleConnections = 32;
+    private volatile boolean healthy = true;
+    private volatile long downUntil = System.nanoTime();
+
+    public Upstream(String host, int port) {
+        this.host = host;
+        this.port = port;
+        this.address = new InetSocketAddress(host, port);
+        this.hostHeader = port == 80 ? host : host + ":" + port;
+    }
+
+    public void setTimeouts(long connectTimeoutMillis, long responseTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.responseTimeoutMillis = responseTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public void setMaxIdleConnections(int maxIdleConnections) {
+        this.maxIdleConnections = maxIdleConnections;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public boolean isHealthy() {
+        return healthy && System.nanoTime() - downUntil >= 0;
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    String getHostHeader() {
+        return hostHeader;
+    }
+
+    long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    long getResponseTimeoutMillis() {
+        return responseTimeoutMillis;
+    }
+
+    long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    UpstreamConnection acquire(EventLoop eventLoop) throws IOException {
+        ArrayDeque<UpstreamConnection> pool = idle.get(eventLoop);
+        UpstreamConnection connection;
+        while (pool != null && (connection = pool.pollLast()) != null) {
+            if (connection.reuse()) {
+                return connection;
+            }
+        }
+        return UpstreamConnection.open(this, eventLoop);
+    }
+
+    boolean recycle(EventLoop eventLoop, UpstreamConnection connection) {
+        ArrayDeque<UpstreamConnection> pool = idle.computeIfAbsent(eventLoop, loop -> new ArrayDeque<>());
+        if (pool.size() >= maxIdleConnections) {
+            return false;
+        }
+        pool.addLast(connection);
+        return true;
+    }
+
+    void remove(EventLoop eventLoop, UpstreamConnection connection) {
+        ArrayDeque<UpstreamConnection> pool = idle.get(eventLoop);
+        if (pool != null) {
+            pool.remove(connection);
+        }
+    }
+
+    void exchangeStarted() {
+        active.incrementAndGet();
+    }
+
+    void exchangeEnded() {
+        active.decrementAndGet();
+    }
+
+    void connected() {
+        connectFailures.set(0);
+    }
+
+    void connectFailed() {
+        if (connectFailures.incrementAndGet() >= MAX_CONNECT_FAILURES) {
+            connectFailures.set(0);
+            downUntil = System.nanoTime() + FAILURE_BACKOFF_NANOS;
+        }
+    }
+
+    void setHealthy(boolean healthy) {
+        this.healthy = healthy;
+        if (healthy) {
+            downUntil = System.nanoTime();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return hostHeader;
+    }
+}
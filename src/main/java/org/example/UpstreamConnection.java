@@ -0,0 +1,498 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+class UpstreamConnection {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final Set<String> HOP_BY_HOP = new HashSet<>(Arrays.asList("connection", "keep-alive",
+            "proxy-connection", "proxy-authenticate", "proxy-authorization", "te", "trailer", "transfer-encoding",
+            "upgrade", "content-length", "expect"));
+
+    private enum State {
+        CONNECTING, WRITING, HEAD, BODY, IDLE, CLOSED
+    }
+
+    private final Upstream upstream;
+    private final EventLoop eventLoop;
+    private final SocketChannel channel;
+    private final BufferPool bufferPool;
+    private final TimingWheel.Timeout timeout = new TimingWheel.Timeout(this::timedOut);
+    private final ByteBuffer[] outbound = new ByteBuffer[2];
+    private SelectionKey key;
+    private State state;
+    private boolean reused;
+    private ByteBuffer readBuffer;
+    private Request request;
+    private Response response;
+    private Transport transport;
+    private ResponseStream stream;
+    private boolean received;
+    private boolean keepAlive;
+    private long remaining;
+    private boolean untilClose;
+    private ChunkedDecoder chunkedDecoder;
+
+    private UpstreamConnection(Upstream upstream, EventLoop eventLoop, SocketChannel channel) {
+        this.upstream = upstream;
+        this.eventLoop = eventLoop;
+        this.channel = channel;
+        this.bufferPool = eventLoop.getServer().getBufferPool();
+    }
+
+    static UpstreamConnection open(Upstream upstream, EventLoop eventLoop) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            UpstreamConnection connection = new UpstreamConnection(upstream, eventLoop, channel);
+            boolean connected = channel.connect(upstream.getAddress());
+            connection.state = connected ? State.WRITING : State.CONNECTING;
+            connection.key = eventLoop.register(channel, connected ? 0 : SelectionKey.OP_CONNECT, connection);
+            return connection;
+        } catch (IOException e) {
+            channel.close();
+            upstream.connectFailed();
+            throw e;
+        }
+    }
+
+    boolean reuse() {
+        if (state != State.IDLE || !channel.isOpen()) {
+            return false;
+        }
+        timeout.cancel();
+        reused = true;
+        state = State.WRITING;
+        return true;
+    }
+
+    void exchange(Request request, Response response) {
+        this.request = request;
+        this.response = response;
+        this.transport = response.getTransport();
+        upstream.exchangeStarted();
+        transport.setCloseListener(this::clientClosed);
+        byte[] body = request.getBodyBytes();
+        outbound[0] = encodeHead(request, body.length);
+        outbound[1] = ByteBuffer.wrap(body);
+        if (state == State.CONNECTING) {
+            eventLoop.getTimingWheel().schedule(timeout, upstream.getConnectTimeoutMillis());
+            return;
+        }
+        try {
+            write();
+        } catch (IOException | RuntimeException e) {
+            failed(502, "Bad Gateway");
+        }
+    }
+
+    void process(SelectionKey key) {
+        try {
+            if (key.isValid() && key.isConnectable()) {
+                finishConnect();
+            }
+            if (key.isValid() && key.isWritable()) {
+                write();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (state == State.CONNECTING) {
+                upstream.connectFailed();
+            }
+            failed(502, "Bad Gateway");
+        }
+    }
+
+    private void finishConnect() throws IOException {
+        if (!channel.finishConnect()) {
+            return;
+        }
+        upstream.connected();
+        timeout.cancel();
+        state = State.WRITING;
+        write();
+    }
+
+    private void write() throws IOException {
+        while (outbound[0].hasRemaining() || outbound[1].hasRemaining()) {
+            if (channel.write(outbound) == 0) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        bufferPool.release(outbound[0]);
+        outbound[0] = null;
+        outbound[1] = null;
+        state = State.HEAD;
+        readBuffer = bufferPool.acquire(READ_BUFFER_SIZE);
+        key.interestOps(SelectionKey.OP_READ);
+        eventLoop.getTimingWheel().schedule(timeout, upstream.getResponseTimeoutMillis());
+    }
+
+    private void read() throws IOException {
+        if (state == State.IDLE) {
+            close();
+            return;
+        }
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            if (state == State.BODY && untilClose) {
+                finish(false);
+            } else {
+                failed(502, "Bad Gateway");
+            }
+            return;
+        }
+        if (read == 0) {
+            return;
+        }
+        received = true;
+        eventLoop.getTimingWheel().schedule(timeout, upstream.getResponseTimeoutMillis());
+        int position = 0;
+        if (state == State.HEAD) {
+            position = readHead();
+            if (position < 0) {
+                if (!readBuffer.hasRemaining()) {
+                    failed(502, "Bad Gateway");
+                }
+                return;
+            }
+        }
+        if (state == State.BODY) {
+            forward(position, readBuffer.position());
+        }
+        if (readBuffer != null) {
+            readBuffer.clear();
+        }
+        if (state == State.BODY && transport.isWriteBacklogged()) {
+            key.interestOps(0);
+            timeout.cancel();
+            transport.whenWritable(this::resumeReading);
+        }
+    }
+
+    private void resumeReading() {
+        if (state == State.BODY && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ);
+            eventLoop.getTimingWheel().schedule(timeout, upstream.getResponseTimeoutMillis());
+        }
+    }
+
+    private int readHead() throws IOException {
+        int start = 0;
+        while (true) {
+            int end = indexOfHeadEnd(start, readBuffer.position());
+            if (end < 0) {
+                if (start > 0) {
+                    readBuffer.flip().position(start);
+                    readBuffer.compact();
+                }
+                return -1;
+            }
+            byte[] head = new byte[end - start];
+            for (int i = 0; i < head.length; i++) {
+                head[i] = readBuffer.get(start + i);
+            }
+            String[] lines = new String(head, StandardCharsets.ISO_8859_1).split("\r\n");
+            if (!lines[0].startsWith("HTTP/1.") || lines[0].length() < 12) {
+                throw new IOException("Malformed upstream status line");
+            }
+            int statusCode = Integer.parseInt(lines[0].substring(9, 12));
+            start = end + 4;
+            if (statusCode >= 100 && statusCode < 200 && statusCode != 101) {
+                continue;
+            }
+            startResponse(statusCode, lines[0].charAt(7) == '1', lines);
+            return start;
+        }
+    }
+
+    private int indexOfHeadEnd(int from, int to) {
+        for (int i = from; i + 3 < to; i++) {
+            if (readBuffer.get(i) == '\r' && readBuffer.get(i + 1) == '\n'
+                    && readBuffer.get(i + 2) == '\r' && readBuffer.get(i + 3) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void startResponse(int statusCode, boolean http11, String[] lines) throws IOException {
+        if (statusCode == 101) {
+            throw new IOException("Upstream protocol upgrades are not supported");
+        }
+        String contentType = null;
+        String connection = null;
+        long contentLength = -1;
+        boolean chunked = false;
+        List<String> headers = new ArrayList<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                throw new IOException("Malformed upstream header");
+            }
+            String name = lines[i].substring(0, colon).trim();
+            String value = lines[i].substring(colon + 1).trim();
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (lower.equals("content-type")) {
+                contentType = value;
+            } else if (lower.equals("content-length")) {
+                contentLength = Long.parseLong(value);
+            } else if (lower.equals("transfer-encoding")) {
+                chunked = value.toLowerCase(Locale.ROOT).endsWith("chunked");
+            } else if (lower.equals("connection")) {
+                connection = value.toLowerCase(Locale.ROOT);
+            }
+            headers.add(name);
+            headers.add(value);
+        }
+        keepAlive = http11 ? connection == null || !connection.contains("close")
+                : connection != null && connection.contains("keep-alive");
+        for (int i = 0; i < headers.size(); i += 2) {
+            String lower = headers.get(i).toLowerCase(Locale.ROOT);
+            if (!HOP_BY_HOP.contains(lower) && !lower.equals("content-type") && !listed(connection, lower)) {
+                response.addHeader(headers.get(i), headers.get(i + 1));
+            }
+        }
+        boolean bodyless = request.getHttpMethod() == HttpMethod.HEAD || statusCode == 204 || statusCode == 304;
+        if (bodyless) {
+            remaining = 0;
+        } else if (chunked) {
+            chunkedDecoder = new ChunkedDecoder(this::writeBody, Long.MAX_VALUE);
+        } else if (contentLength >= 0) {
+            remaining = contentLength;
+        } else {
+            untilClose = true;
+            keepAlive = false;
+        }
+        state = State.BODY;
+        long streamLength = bodyless ? Math.max(contentLength, 0) : chunked || untilClose ? -1 : contentLength;
+        stream = response.stream(statusCode, contentType, streamLength);
+    }
+
+    private void forward(int from, int to) throws IOException {
+        if (chunkedDecoder != null) {
+            int consumed = chunkedDecoder.decode(readBuffer, from, to);
+            if (chunkedDecoder.isDone()) {
+                finish(keepAlive && from + consumed == to);
+            }
+        } else if (untilClose) {
+            writeBody(readBuffer, from, to);
+        } else {
+            int length = (int) Math.min(remaining, to - from);
+            writeBody(readBuffer, from, from + length);
+            remaining -= length;
+            if (remaining == 0) {
+                finish(keepAlive && from + length == to);
+            }
+        }
+    }
+
+    private void writeBody(ByteBuffer buffer, int from, int to) {
+        if (from == to) {
+            return;
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(to).position(from);
+        try {
+            stream.write(slice);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void finish(boolean reusable) {
+        if (state != State.BODY) {
+            return;
+        }
+        timeout.cancel();
+        Response finished = response;
+        ResponseStream finishedStream = stream;
+        endExchange();
+        try {
+            finishedStream.close();
+        } catch (IOException e) {
+            finished.getTransport().closeQuietly();
+        }
+        finished.release();
+        if (reusable && channel.isOpen() && upstream.recycle(eventLoop, this)) {
+            state = State.IDLE;
+            bufferPool.release(readBuffer);
+            readBuffer = null;
+            key.interestOps(SelectionKey.OP_READ);
+            eventLoop.getTimingWheel().schedule(timeout, upstream.getIdleTimeoutMillis());
+        } else {
+            close();
+        }
+    }
+
+    private void timedOut() {
+        if (state == State.IDLE) {
+            close();
+            return;
+        }
+        if (state == State.CONNECTING) {
+            upstream.connectFailed();
+        }
+        eventLoop.getServer().getMetrics().recordTimeout();
+        failed(504, "Gateway Timeout");
+    }
+
+    private void failed(int statusCode, String message) {
+        if (response == null) {
+            close();
+            return;
+        }
+        Request failedRequest = request;
+        Response failed = response;
+        ResponseStream failedStream = stream;
+        boolean retry = reused && !received && failedStream == null && isIdempotent(failedRequest.getHttpMethod());
+        endExchange();
+        close();
+        if (retry) {
+            try {
+                UpstreamConnection.open(upstream, eventLoop).exchange(failedRequest, failed);
+                return;
+            } catch (IOException e) {
+                statusCode = 502;
+                message = "Bad Gateway";
+            }
+        }
+        if (failedStream != null) {
+            failed.abortStream();
+        } else {
+            try {
+                failed.sendError(new HttpException(statusCode, message));
+            } catch (IOException | RuntimeException e) {
+                failed.getTransport().closeQuietly();
+            }
+        }
+        failed.release();
+    }
+
+    private void clientClosed() {
+        if (response == null) {
+            return;
+        }
+        Response closed = response;
+        ResponseStream closedStream = stream;
+        endExchange();
+        close();
+        if (closedStream != null) {
+            closed.abortStream();
+        }
+        closed.release();
+    }
+
+    private void endExchange() {
+        transport.setCloseListener(null);
+        upstream.exchangeEnded();
+        request = null;
+        response = null;
+        transport = null;
+        stream = null;
+        chunkedDecoder = null;
+        received = false;
+        remaining = 0;
+        untilClose = false;
+    }
+
+    private void close() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.IDLE) {
+            upstream.remove(eventLoop, this);
+        }
+        state = State.CLOSED;
+        timeout.cancel();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        if (outbound[0] != null) {
+            bufferPool.release(outbound[0]);
+            outbound[0] = null;
+            outbound[1] = null;
+        }
+        if (readBuffer != null) {
+            bufferPool.release(readBuffer);
+            readBuffer = null;
+        }
+    }
+
+    private ByteBuffer encodeHead(Request request, int bodyLength) {
+        StringBuilder head = new StringBuilder(256);
+        head.append(request.getMethod()).append(' ').append(request.getTarget()).append(" HTTP/1.1\r\n");
+        String connection = request.getHeader("Connection");
+        connection = connection != null ? connection.toLowerCase(Locale.ROOT) : null;
+        String forwardedFor = null;
+        boolean host = false;
+        for (int i = 0; i < request.getHeaderCount(); i++) {
+            String name = request.getHeaderName(i);
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (HOP_BY_HOP.contains(lower) || lower.startsWith(":") || listed(connection, lower)) {
+                continue;
+            }
+            if (lower.equals("x-forwarded-for")) {
+                forwardedFor = request.getHeaderValue(i);
+                continue;
+            }
+            host |= lower.equals("host");
+            head.append(name).append(": ").append(request.getHeaderValue(i)).append("\r\n");
+        }
+        if (!host) {
+            head.append("Host: ").append(upstream.getHostHeader()).append("\r\n");
+        }
+        InetAddress client = transport.getClientAddress();
+        if (client != null) {
+            head.append("X-Forwarded-For: ").append(forwardedFor != null ? forwardedFor + ", " : "")
+                    .append(client.getHostAddress()).append("\r\n");
+        }
+        head.append("X-Forwarded-Proto: http\r\n");
+        if (bodyLength > 0 || request.getHttpMethod() == HttpMethod.POST || request.getHttpMethod() == HttpMethod.PUT
+                || request.getHttpMethod() == HttpMethod.PATCH) {
+            head.append("Content-Length: ").append(bodyLength).append("\r\n");
+        }
+        head.append("\r\n");
+        byte[] bytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer buffer = bufferPool.acquire(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    private static boolean listed(String connection, String name) {
+        if (connection == null) {
+            return false;
+        }
+        for (String token : connection.split(",")) {
+            if (token.trim().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIdempotent(HttpMethod method) {
+        return method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.PUT
+                || method == HttpMethod.DELETE || method == HttpMethod.OPTIONS;
+    }
+}
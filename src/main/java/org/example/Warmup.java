@@ -0,0 +1,89 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class Warmup {
+    private final Router router;
+    private final List<byte[]> heads = new ArrayList<>();
+    private final boolean http2;
+    private final int compressionLevel;
+
+    Warmup(Router router, Collection<String> routeKeys, boolean http2, int compressionLevel) {
+        this.router = router;
+        this.http2 = http2;
+        this.compressionLevel = compressionLevel;
+        for (String key : routeKeys) {
+            int space = key.indexOf(' ');
+            heads.add(head(key.substring(0, space), samplePath(key.substring(space + 1)) + "?page=1",
+                    "Content-Length: 0\r\n"));
+        }
+        heads.add(head("POST", "/", "Content-Type: application/json\r\nTransfer-Encoding: chunked\r\n"));
+        heads.add(head("GET", "/", "Connection: keep-alive\r\nIf-None-Match: \"0\"\r\n"));
+    }
+
+    void run(int iterations) {
+        RequestParser parser = new RequestParser(Connection.MAX_HEADER_SIZE, Connection.MAX_HEADER_COUNT);
+        Hpack.Encoder encoder = new Hpack.Encoder();
+        Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", 1);
+        json.put("name", "warmup");
+        json.put("tags", Arrays.asList("a", "b"));
+        try {
+            for (int i = 0; i < iterations; i++) {
+                for (byte[] head : heads) {
+                    ByteBuffer buffer = ByteBuffer.wrap(head);
+                    parser.reset();
+                    parser.parse(buffer, head.length);
+                    Request request = parser.newRequest(buffer, null);
+                    router.find(request.getHttpMethod(), request.getPath(), request);
+                    request.getQueryParameter("page");
+                    request.getHeader("Accept-Encoding");
+                    request.isKeepAlive();
+                }
+                byte[] body = JsonWriter.toBytes(json);
+                JsonReader.parse(body);
+                if (http2) {
+                    int length = encoder.encode(Arrays.asList(":status", "200", "content-type", "application/json",
+                            "content-length", Integer.toString(body.length)));
+                    decoder.decode(encoder.array(), length);
+                }
+                if (compressionLevel > 0) {
+                    Compressor compressor = Compressor.acquire();
+                    compressor.compress(Compressor.GZIP, compressionLevel, body, 0, body.length);
+                    compressor.release();
+                }
+            }
+        } catch (HttpException | Http2Exception e) {
+            throw new IllegalStateException("Warmup failed", e);
+        }
+    }
+
+    private static byte[] head(String method, String target, String extraHeaders) {
+        return (method + " " + target + " HTTP/1.1\r\nHost: localhost\r\nUser-Agent: warmup\r\nAccept: */*\r\n"
+                + "Accept-Encoding: gzip, deflate\r\n" + extraHeaders + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String samplePath(String pattern) {
+        StringBuilder path = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '{') {
+                path.append('1');
+                i = pattern.indexOf('}', i) + 1;
+            } else {
+                path.append(c == '*' ? "warmup" : String.valueOf(c));
+                i++;
+            }
+        }
+        return path.toString();
+    }
+}
@@ -4,13 +4,42 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
@@ -186,4 +215,1605 @@ public class AppTest {
             assertTrue(statusLine.contains("HTTP/1.1 200 OK"));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testHandleLargeRequestAcrossSegments() throws IOException, InterruptedException {
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            StringBuilder bodyBuilder = new StringBuilder();
+            for (int i = 0; i < 5000; i++) {
+                bodyBuilder.append((char) ('a' + i % 26));
+            }
+            String body = bodyBuilder.toString();
+            String request = "POST / HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "Content-Length: " + body.length() + "\r\n" +
+                    "\r\n" +
+                    body;
+
+            byte[] bytes = request.getBytes(StandardCharsets.UTF_8);
+            os.write(bytes, 0, 30);
+            os.flush();
+            Thread.sleep(100);
+            os.write(bytes, 30, bytes.length - 30);
+            os.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+            String statusLine = reader.readLine();
+            String responseBody = readBody(reader);
+
+            assertTrue(statusLine.contains("HTTP/1.1 200 OK"));
+            assertEquals("Received POST request with body: " + body, responseBody);
+        }
+    }
+
+    @Test
+    public void testHandleChunkedRequest() throws IOException {
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            String request = "PUT / HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "Transfer-Encoding: chunked\r\n" +
+                    "\r\n" +
+                    "6\r\nHello \r\n" +
+                    "5\r\nWorld\r\n" +
+                    "0\r\n\r\n";
+
+            os.write(request.getBytes(StandardCharsets.UTF_8));
+            os.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+            String statusLine = reader.readLine();
+            String responseBody = readBody(reader);
+
+            assertTrue(statusLine.contains("HTTP/1.1 200 OK"));
+            assertEquals("Received PUT request with body: Hello World", responseBody);
+        }
+    }
+
+    @Test
+    public void testKeepAlivePipelinedRequests() throws IOException {
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            String requests = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+                    "DELETE / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n";
+            os.write(requests.getBytes(StandardCharsets.UTF_8));
+            os.flush();
+
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            InputStream is = clientSocket.getInputStream();
+            byte[] chunk = new byte[1024];
+            int n;
+            while ((n = is.read(chunk)) != -1) {
+                received.write(chunk, 0, n);
+            }
+            String responses = received.toString("UTF-8");
+
+            int first = responses.indexOf("Received GET request");
+            int second = responses.indexOf("Received DELETE request");
+            assertTrue(first > 0 && second > first);
+            assertEquals(2, responses.split("HTTP/1.1 200 OK", -1).length - 1);
+            assertTrue(responses.contains("Connection: close"));
+        }
+    }
+
+    @Test
+    public void testLargeResponseToSlowClient() throws IOException, InterruptedException {
+        StringBuilder bodyBuilder = new StringBuilder();
+        for (int i = 0; i < 4 * 1024 * 1024; i++) {
+            bodyBuilder.append((char) ('a' + i % 26));
+        }
+        String body = bodyBuilder.toString();
+        server.registerHandler("/large", "GET", (req, res) -> res.sendText(200, body));
+
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            clientSocket.setReceiveBufferSize(64 * 1024);
+            OutputStream os = clientSocket.getOutputStream();
+            os.write("GET /large HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            os.flush();
+            Thread.sleep(300);
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+            String statusLine = reader.readLine();
+
+            assertTrue(statusLine.contains("HTTP/1.1 200 OK"));
+            assertEquals(body, readBody(reader));
+        }
+    }
+
+    @Test
+    public void testBlockingHandlerDoesNotStallEventLoop() throws Exception {
+        server.registerHandler("/slow", "GET", (req, res) -> {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            res.sendText(200, "Slow response");
+        }, ExecutionMode.VIRTUAL_THREAD);
+
+        try (Socket slowSocket = new Socket("localhost", 8081);
+             Socket fastSocket = new Socket("localhost", 8081)) {
+            OutputStream slowOs = slowSocket.getOutputStream();
+            slowOs.write(("GET /slow HTTP/1.1\r\n\r\n" + "GET / HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            slowOs.flush();
+            Thread.sleep(50);
+
+            long start = System.nanoTime();
+            OutputStream fastOs = fastSocket.getOutputStream();
+            fastOs.write("GET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            fastOs.flush();
+            BufferedReader fastReader = new BufferedReader(new InputStreamReader(fastSocket.getInputStream()));
+            assertTrue(fastReader.readLine().contains("HTTP/1.1 200 OK"));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 400);
+
+            BufferedReader slowReader = new BufferedReader(new InputStreamReader(slowSocket.getInputStream()));
+            assertTrue(slowReader.readLine().contains("HTTP/1.1 200 OK"));
+            assertEquals("Slow response", readBody(slowReader));
+            assertTrue(slowReader.readLine().contains("HTTP/1.1 200 OK"));
+            assertEquals("Received GET request", readBody(slowReader));
+        }
+    }
+
+    @Test
+    public void testParseIsCaseInsensitiveAndKeepsBinaryBody() {
+        Request request = Request.parse("POST /upload HTTP/1.1\r\n" +
+                "content-type:   application/json  \r\n" +
+                "X-Trace: abc\r\n" +
+                "\r\n" +
+                "{\"a\":1}");
+
+        assertEquals("POST", request.getMethod());
+        assertEquals("/upload", request.getPath());
+        assertEquals("HTTP/1.1", request.getVersion());
+        assertEquals("application/json", request.getHeader("Content-Type"));
+        assertEquals("abc", request.getHeaders().get("x-trace"));
+        assertTrue(request.isJson());
+        assertArrayEquals("{\"a\":1}".getBytes(StandardCharsets.UTF_8), request.getBodyBytes());
+    }
+
+    @Test
+    public void testMalformedRequestLine() throws IOException {
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            os.write("GET\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            os.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+            assertTrue(reader.readLine().contains("HTTP/1.1 400 Bad Request"));
+        }
+    }
+
+    @Test
+    public void testStreamingMultipartUploadSpillsLargeFiles() throws IOException {
+        server.registerHandler("/upload", "PUT", (req, res) -> {
+            Part file = req.getPart("file");
+            CRC32 crc = new CRC32();
+            try (InputStream in = file.getInputStream()) {
+                byte[] chunk = new byte[8192];
+                int n;
+                while ((n = in.read(chunk)) != -1) {
+                    crc.update(chunk, 0, n);
+                }
+            }
+            res.sendText(200, req.getFormData().get("text") + " " + file.getFilename() + " " + file.getSize()
+                    + " " + !file.isInMemory() + " " + crc.getValue());
+        });
+
+        byte[] content = new byte[3 * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        CRC32 expectedCrc = new CRC32();
+        expectedCrc.update(content);
+
+        String boundary = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"text\"\r\n\r\n" +
+                "Hello World\r\n" +
+                "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"random.bin\"\r\n" +
+                "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(content);
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            os.write(("PUT /upload HTTP/1.1\r\n" +
+                    "Content-Type: multipart/form-data; boundary=" + boundary + "\r\n" +
+                    "Content-Length: " + body.size() + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            os.write(body.toByteArray());
+            os.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+            assertTrue(reader.readLine().contains("HTTP/1.1 200 OK"));
+            assertEquals("Hello World random.bin " + content.length + " true " + expectedCrc.getValue(),
+                    readBody(reader));
+        }
+    }
+
+    @Test
+    public void testMultipartUploadToUnknownRouteLeavesNoTempFiles() throws Exception {
+        Path tmp = Paths.get(System.getProperty("java.io.tmpdir"));
+        List<Path> before = spillFiles(tmp);
+        String boundary = "leak-check";
+        byte[] content = new byte[512 * 1024];
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"a.bin\"\r\n\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+        body.write(content);
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            clientSocket.setSoTimeout(5000);
+            OutputStream os = clientSocket.getOutputStream();
+            for (String target : Arrays.asList("POST /no-such-upload", "DELETE /upload")) {
+                os.write((target + " HTTP/1.1\r\nContent-Type: multipart/form-data; boundary=" + boundary
+                        + "\r\nContent-Length: " + body.size() + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                os.write(body.toByteArray());
+                InputStream in = clientSocket.getInputStream();
+                assertTrue(readLine(in).startsWith("HTTP/1.1 40"));
+                readRawBody(in);
+            }
+        }
+        List<Path> after = spillFiles(tmp);
+        after.removeAll(before);
+        assertEquals(Collections.emptyList(), after);
+    }
+
+    private static List<Path> spillFiles(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "multipart-*.part")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    @Test
+    public void testRejectsAmbiguousRequestFraming() throws IOException {
+        server.registerHandler("/framing", "POST", (req, res) -> res.sendText(200, req.getBody()));
+        String[] requests = {
+                "Content-Length: 5\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n",
+                "Transfer-Encoding: chunked\r\nContent-Length: 5\r\n\r\n0\r\n\r\n",
+                "Transfer-Encoding: xchunked\r\n\r\n",
+                "Transfer-Encoding: gzip, chunked\r\n\r\n",
+                "Transfer-Encoding: chunked\r\nTransfer-Encoding: chunked\r\n\r\n"};
+        String[] statuses = {"400", "400", "501", "501", "501"};
+        for (int i = 0; i < requests.length; i++) {
+            try (Socket clientSocket = new Socket("localhost", 8081)) {
+                clientSocket.setSoTimeout(5000);
+                clientSocket.getOutputStream().write(("POST /framing HTTP/1.1\r\n" + requests[i])
+                        .getBytes(StandardCharsets.UTF_8));
+                InputStream in = clientSocket.getInputStream();
+                assertTrue(readLine(in).startsWith("HTTP/1.1 " + statuses[i] + " "), requests[i]);
+                assertEquals("close", readHeaders(in).get("connection"));
+            }
+        }
+    }
+
+    @Test
+    public void testNestedJsonRoundTrip() throws IOException {
+        String json = "{\"user\":{\"name\":\"A \\\"quoted\\\" n\u00e4me\",\"tags\":[\"x\",\"y\",{\"deep\":null}]}," +
+                "\"url\":\"http://example.com:8080/a,b\",\"n\":-1.5e2,\"big\":12345678901,\"ok\":true}";
+        Object expected = JsonReader.parse(json.getBytes(StandardCharsets.UTF_8));
+
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            os.write(("POST / HTTP/1.1\r\n" +
+                    "Content-Type: application/json\r\n" +
+                    "Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            os.write(body);
+            os.flush();
+
+            InputStream in = clientSocket.getInputStream();
+            assertTrue(readLine(in).contains("HTTP/1.1 200 OK"));
+            assertEquals(expected, JsonReader.parse(readRawBody(in)));
+        }
+        Map<?, ?> user = (Map<?, ?>) ((Map<?, ?>) expected).get("user");
+        assertEquals("A \"quoted\" n\u00e4me", user.get("name"));
+        assertEquals(-150.0, ((Map<?, ?>) expected).get("n"));
+        assertEquals(12345678901L, ((Map<?, ?>) expected).get("big"));
+    }
+
+    @Test
+    public void testMalformedJsonIsRejected() {
+        HttpException e = assertThrows(HttpException.class,
+                () -> JsonReader.parse("{\"a\":1,}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(400, e.getStatusCode());
+    }
+
+    @Test
+    public void testRoutingWithPathParametersAndQueryStrings() throws IOException {
+        server.registerHandler("/users/{id}", "GET", (req, res) ->
+                res.sendText(200, "user " + req.getPathParam("id") + " " + req.getQueryParameter("verbose")));
+        server.registerHandler("/users/{id}/posts/{post}", "GET", (req, res) ->
+                res.sendText(200, req.getPathParam("id") + "/" + req.getPathParam("post")));
+        server.registerHandler("/users/me", "GET", (req, res) -> res.sendText(200, "me"));
+        server.mount("/assets", (req, res) -> res.sendText(200, "asset " + req.getPathParam("*")));
+
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            InputStream in = clientSocket.getInputStream();
+            String[][] cases = {
+                    {"GET /?a=1", "200", "Received GET request"},
+                    {"GET /users/42?verbose=yes%21", "200", "user 42 yes!"},
+                    {"GET /users/me", "200", "me"},
+                    {"GET /users/a%20b/posts/7", "200", "a b/7"},
+                    {"GET /assets/css/app.css", "200", "asset css/app.css"},
+                    {"GET /users", "404", "Not Found"},
+                    {"POST /users/42", "405", "Method Not Allowed"},
+            };
+            for (String[] c : cases) {
+                os.write((c[0] + " HTTP/1.1\r\nHost: localhost\r\nContent-Length: 0\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                os.flush();
+                assertTrue(readLine(in).startsWith("HTTP/1.1 " + c[1]), c[0]);
+                assertEquals(c[2], new String(readRawBody(in), StandardCharsets.UTF_8), c[0]);
+            }
+        }
+    }
+
+    @Test
+    public void testMethodNotAllowedListsAllowedMethods() throws IOException {
+        server.registerHandler("/only-get", "GET", (req, res) -> res.sendText(200, "ok"));
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            os.write("DELETE /only-get HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            os.flush();
+            InputStream in = clientSocket.getInputStream();
+            assertEquals("HTTP/1.1 405 Method Not Allowed", readLine(in));
+            boolean allowSeen = false;
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                allowSeen |= line.equals("Allow: GET");
+            }
+            assertTrue(allowSeen);
+        }
+    }
+
+    @Test
+    public void testStaticFilesWithRangesAndConditionalRequests() throws IOException {
+        Path directory = Files.createTempDirectory("static-");
+        byte[] content = new byte[200 * 1024];
+        new Random(7).nextBytes(content);
+        Files.write(directory.resolve("big.bin"), content);
+        Files.write(directory.resolve("index.html"), "<h1>home</h1>".getBytes(StandardCharsets.UTF_8));
+        server.serveStatic("/static", directory);
+        server.setFileCacheCapacity(1024 * 1024);
+
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            InputStream in = clientSocket.getInputStream();
+
+            os.write("GET /static/big.bin HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            Map<String, String> headers = readHeaders(in);
+            assertArrayEquals(content, readBytes(in, Integer.parseInt(headers.get("content-length"))));
+            String etag = headers.get("etag");
+            assertNotNull(etag);
+            assertNotNull(headers.get("last-modified"));
+
+            os.write(("GET /static/big.bin HTTP/1.1\r\nIf-None-Match: " + etag + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 304 Not Modified", readLine(in));
+            assertNull(readHeaders(in).get("content-length"));
+
+            os.write("GET /static/big.bin HTTP/1.1\r\nRange: bytes=10-19\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 206 Partial Content", readLine(in));
+            headers = readHeaders(in);
+            assertEquals("bytes 10-19/" + content.length, headers.get("content-range"));
+            assertArrayEquals(Arrays.copyOfRange(content, 10, 20), readBytes(in, 10));
+
+            os.write("GET /static/big.bin HTTP/1.1\r\nRange: bytes=999999-\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 416 Range Not Satisfiable", readLine(in));
+            readBytes(in, Integer.parseInt(readHeaders(in).get("content-length")));
+
+            for (int i = 0; i < 2; i++) {
+                os.write("GET /static/ HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                assertEquals("HTTP/1.1 200 OK", readLine(in));
+                headers = readHeaders(in);
+                assertEquals("text/html; charset=utf-8", headers.get("content-type"));
+                assertEquals("<h1>home</h1>", new String(readBytes(in, Integer.parseInt(headers.get("content-length"))),
+                        StandardCharsets.UTF_8));
+            }
+
+            os.write("GET /static/../pom.xml HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 404 Not Found", readLine(in));
+            readBytes(in, Integer.parseInt(readHeaders(in).get("content-length")));
+
+            os.write("POST /static/big.bin HTTP/1.1\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 405 Method Not Allowed", readLine(in));
+            assertEquals("GET, HEAD", readHeaders(in).get("allow"));
+        } finally {
+            server.setFileCacheCapacity(0);
+        }
+    }
+
+    @Test
+    public void testResponseCacheCoalescesConcurrentMisses() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        RouteOptions options = new RouteOptions();
+        options.setExecutionMode(ExecutionMode.WORKER_POOL);
+        options.setCacheTtlMillis(60_000);
+        server.registerHandler("/cached", "GET", (req, res) -> {
+            int call = calls.incrementAndGet();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            res.setHeader("X-Call", String.valueOf(call));
+            res.sendText(200, "call " + call + " for " + req.getQueryParameter("q"));
+        }, options);
+        ResponseCache cache = server.getResponseCache();
+        long hitsBefore = cache.getHits();
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> bodies = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                bodies.add(clients.submit(() -> {
+                    try (Socket clientSocket = new Socket("localhost", 8081)) {
+                        clientSocket.getOutputStream().write(
+                                "GET /cached?q=a HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                        InputStream in = clientSocket.getInputStream();
+                        assertEquals("HTTP/1.1 200 OK", readLine(in));
+                        return new String(readRawBody(in), StandardCharsets.UTF_8);
+                    }
+                }));
+            }
+            for (Future<String> body : bodies) {
+                assertEquals("call 1 for a", body.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            InputStream in = clientSocket.getInputStream();
+            os.write("GET /cached?q=a HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            Map<String, String> headers = readHeaders(in);
+            assertEquals("1", headers.get("x-call"));
+            assertEquals("call 1 for a", new String(readBytes(in, Integer.parseInt(headers.get("content-length"))),
+                    StandardCharsets.UTF_8));
+
+            os.write("GET /cached?q=b HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            assertEquals("call 2 for b", new String(readRawBody(in), StandardCharsets.UTF_8));
+        }
+        assertTrue(cache.getHits() > hitsBefore);
+        assertTrue(cache.getCoalesced() >= 1);
+        assertEquals(2, cache.getEntryCount());
+    }
+
+    @Test
+    public void testResponseCacheSkipsPerUserResponses() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        RouteOptions options = new RouteOptions();
+        options.setCacheTtlMillis(60_000);
+        server.registerHandler("/personal", "GET", (req, res) -> {
+            int call = calls.incrementAndGet();
+            String kind = req.getQueryParameter("kind");
+            if (kind.equals("cookie")) {
+                res.setHeader("Set-Cookie", "session=" + call);
+            } else {
+                res.setHeader("Cache-Control", kind);
+            }
+            res.sendText(200, "call " + call);
+        }, options);
+
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            InputStream in = clientSocket.getInputStream();
+            int expected = 0;
+            for (String kind : Arrays.asList("cookie", "no-store", "private,%20max-age=60")) {
+                for (int i = 0; i < 2; i++) {
+                    os.write(("GET /personal?kind=" + kind + " HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                    assertEquals("HTTP/1.1 200 OK", readLine(in));
+                    assertEquals("call " + ++expected, new String(readRawBody(in), StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStreamingChunkedResponseWithTrailers() throws IOException {
+        byte[] large = new byte[300 * 1024];
+        new Random(11).nextBytes(large);
+        server.registerHandler("/stream", "GET", (req, res) -> {
+            ResponseStream stream = res.stream(200, "application/octet-stream");
+            stream.write("first,");
+            stream.write(large);
+            stream.write(",last");
+            stream.setTrailer("X-Parts", "3");
+            stream.close();
+        }, ExecutionMode.WORKER_POOL);
+        server.registerHandler("/trailers", "POST", (req, res) ->
+                res.sendText(200, req.getBody() + " " + req.getTrailers().get("x-checksum")));
+
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            clientSocket.setReceiveBufferSize(64 * 1024);
+            OutputStream os = clientSocket.getOutputStream();
+            os.write(("GET /stream HTTP/1.1\r\n\r\n" +
+                    "POST /trailers HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                    "5\r\nhello\r\n0\r\nX-Checksum: 42\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            os.flush();
+            InputStream in = clientSocket.getInputStream();
+
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            Map<String, String> headers = readHeaders(in);
+            assertEquals("chunked", headers.get("transfer-encoding"));
+            assertNull(headers.get("content-length"));
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int size;
+            while ((size = Integer.parseInt(readLine(in), 16)) > 0) {
+                body.write(readBytes(in, size));
+                assertEquals("", readLine(in));
+            }
+            assertEquals("X-Parts: 3", readLine(in));
+            assertEquals("", readLine(in));
+            byte[] received = body.toByteArray();
+            assertEquals("first,", new String(received, 0, 6, StandardCharsets.UTF_8));
+            assertArrayEquals(large, Arrays.copyOfRange(received, 6, 6 + large.length));
+            assertEquals(",last", new String(received, 6 + large.length, 5, StandardCharsets.UTF_8));
+
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            assertEquals("hello 42", new String(readRawBody(in), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testEventLoopStreamingWaitsForWritability() throws Exception {
+        byte[] chunk = new byte[16 * 1024];
+        new Random(13).nextBytes(chunk);
+        int chunks = 128;
+        AtomicBoolean backlogged = new AtomicBoolean();
+        Server streamingServer = new Server("localhost", 8093);
+        streamingServer.setSocketBufferSizes(0, 16 * 1024);
+        streamingServer.registerHandler("/loop-stream", "GET", (req, res) -> {
+            ResponseStream stream = res.stream(200, "application/octet-stream");
+            Runnable pump = new Runnable() {
+                int sent;
+
+                @Override
+                public void run() {
+                    try {
+                        while (sent < chunks && !stream.isWriteBacklogged()) {
+                            stream.write(chunk);
+                            sent++;
+                        }
+                        if (sent < chunks) {
+                            backlogged.set(true);
+                            stream.whenWritable(this);
+                        } else {
+                            stream.close();
+                        }
+                    } catch (IOException e) {
+                        res.abortStream();
+                    }
+                }
+            };
+            pump.run();
+        }, ExecutionMode.EVENT_LOOP);
+
+        ExecutorService serverExecutor = Executors.newSingleThreadExecutor();
+        serverExecutor.submit(() -> {
+            streamingServer.startServer();
+            return null;
+        });
+        Thread.sleep(500);
+        try (Socket clientSocket = new Socket("localhost", 8093)) {
+            clientSocket.setReceiveBufferSize(64 * 1024);
+            clientSocket.setSoTimeout(5000);
+            clientSocket.getOutputStream().write("GET /loop-stream HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            Thread.sleep(200);
+            InputStream in = clientSocket.getInputStream();
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            readHeaders(in);
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int size;
+            while ((size = Integer.parseInt(readLine(in), 16)) > 0) {
+                body.write(readBytes(in, size));
+                assertEquals("", readLine(in));
+            }
+            assertEquals("", readLine(in));
+            byte[] received = body.toByteArray();
+            assertEquals(chunks * chunk.length, received.length);
+            assertArrayEquals(chunk, Arrays.copyOfRange(received, received.length - chunk.length, received.length));
+        } finally {
+            streamingServer.stop();
+            serverExecutor.shutdown();
+        }
+        assertTrue(backlogged.get());
+    }
+
+    @Test
+    public void testEventLoopSurvivesFailingTasks() throws IOException {
+        server.registerHandler("/failing-task", "GET", (req, res) -> {
+            res.getTransport().getEventLoop().execute(() -> {
+                throw new IllegalStateException("task failed on purpose");
+            });
+            res.sendText(200, "scheduled");
+        }, ExecutionMode.EVENT_LOOP);
+
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            clientSocket.setSoTimeout(5000);
+            OutputStream os = clientSocket.getOutputStream();
+            InputStream in = clientSocket.getInputStream();
+            for (int i = 0; i < 2; i++) {
+                os.write("GET /failing-task HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                assertEquals("HTTP/1.1 200 OK", readLine(in));
+                assertEquals("scheduled", new String(readRawBody(in), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testMultiReactorMode() throws Exception {
+        assertServesConcurrentClients(8082, false);
+    }
+
+    @Test
+    public void testReusePortMode() throws Exception {
+        assertServesConcurrentClients(8083, true);
+    }
+
+    @Test
+    public void testBufferPoolRecyclesBuffers() throws Exception {
+        BufferPool pool = new BufferPool(true);
+        Server pooledServer = new Server("localhost", 8084);
+        pooledServer.setBufferPool(pool);
+        ExecutorService serverExecutor = Executors.newSingleThreadExecutor();
+        serverExecutor.submit(() -> {
+            pooledServer.startServer();
+            return null;
+        });
+        Thread.sleep(500);
+        try {
+            try (Socket clientSocket = new Socket("localhost", 8084)) {
+                OutputStream os = clientSocket.getOutputStream();
+                InputStream in = clientSocket.getInputStream();
+                for (int i = 0; i < 50; i++) {
+                    os.write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                    os.flush();
+                    assertEquals("HTTP/1.1 200 OK", readLine(in));
+                    assertEquals("Received GET request", new String(readRawBody(in), StandardCharsets.UTF_8));
+                }
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (pool.getOutstandingCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, pool.getOutstandingCount(), () -> "Leaked buffers: " + pool.getLeaks());
+            assertTrue(pool.getAcquireCount() >= 100);
+            assertEquals(1, pool.getSlabAllocations());
+            assertTrue(pool.getThreadCacheHits() >= pool.getAcquireCount() - 1);
+        } finally {
+            pooledServer.stop();
+            serverExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompressesResponsesAndServesPrecompressedFiles() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("line ").append(i).append(" of a compressible response\n");
+        }
+        String body = text.toString();
+        server.registerHandler("/compressible", "GET", (req, res) -> res.sendText(200, body));
+        Path directory = Files.createTempDirectory("precompressed-");
+        Files.write(directory.resolve("app.js"), "console.log('plain');".getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write("console.log('gzip');".getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(directory.resolve("app.js.gz"), gzipped.toByteArray());
+        server.serveStatic("/assets", directory);
+        server.setCompressionEnabled(true);
+
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            InputStream in = clientSocket.getInputStream();
+
+            os.write("GET /compressible HTTP/1.1\r\nAccept-Encoding: br;q=0, gzip, deflate\r\n\r\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            Map<String, String> headers = readHeaders(in);
+            assertEquals("gzip", headers.get("content-encoding"));
+            assertEquals("Accept-Encoding", headers.get("vary"));
+            byte[] compressed = readBytes(in, Integer.parseInt(headers.get("content-length")));
+            assertTrue(compressed.length < body.length());
+            assertEquals(body, new String(gunzip(compressed), StandardCharsets.UTF_8));
+
+            os.write("GET /compressible HTTP/1.1\r\nAccept-Encoding: deflate\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            headers = readHeaders(in);
+            assertEquals("deflate", headers.get("content-encoding"));
+            compressed = readBytes(in, Integer.parseInt(headers.get("content-length")));
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+            try (InflaterInputStream inflater = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+                copy(inflater, inflated);
+            }
+            assertEquals(body, new String(inflated.toByteArray(), StandardCharsets.UTF_8));
+
+            os.write("GET /compressible HTTP/1.1\r\nAccept-Encoding: gzip;q=0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            headers = readHeaders(in);
+            assertNull(headers.get("content-encoding"));
+            assertEquals(body, new String(readBytes(in, Integer.parseInt(headers.get("content-length"))),
+                    StandardCharsets.UTF_8));
+
+            os.write("GET /assets/app.js HTTP/1.1\r\nAccept-Encoding: gzip\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            headers = readHeaders(in);
+            assertEquals("gzip", headers.get("content-encoding"));
+            assertEquals("text/javascript; charset=utf-8", headers.get("content-type"));
+            assertEquals("console.log('gzip');", new String(gunzip(readBytes(in,
+                    Integer.parseInt(headers.get("content-length")))), StandardCharsets.UTF_8));
+
+            os.write("GET /assets/app.js HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            headers = readHeaders(in);
+            assertNull(headers.get("content-encoding"));
+            assertEquals("console.log('plain');", new String(readBytes(in,
+                    Integer.parseInt(headers.get("content-length"))), StandardCharsets.UTF_8));
+        } finally {
+            server.setCompressionEnabled(false);
+        }
+    }
+
+    @Test
+    public void testTimeoutsConnectionLimitAndGracefulShutdown() throws Exception {
+        Server limitedServer = new Server("localhost", 8085);
+        limitedServer.setHeaderReadTimeoutMillis(300);
+        limitedServer.setMaxConnections(2);
+        limitedServer.registerHandler("/slow", "GET", (req, res) -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            res.sendText(200, "done");
+        }, ExecutionMode.WORKER_POOL);
+        ExecutorService serverExecutor = Executors.newFixedThreadPool(2);
+        serverExecutor.submit(() -> {
+            limitedServer.startServer();
+            return null;
+        });
+        Thread.sleep(500);
+        try {
+            try (Socket slowloris = new Socket("localhost", 8085)) {
+                slowloris.setSoTimeout(5000);
+                slowloris.getOutputStream().write("GET / HTTP/1.1\r\nHost: loc".getBytes(StandardCharsets.UTF_8));
+                InputStream in = slowloris.getInputStream();
+                assertEquals("HTTP/1.1 408 Request Timeout", readLine(in));
+                readRawBody(in);
+                assertEquals(-1, in.read());
+            }
+
+            try (Socket first = new Socket("localhost", 8085);
+                 Socket second = new Socket("localhost", 8085);
+                 Socket third = new Socket("localhost", 8085)) {
+                second.setSoTimeout(5000);
+                second.getOutputStream().write("GET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                assertEquals("HTTP/1.1 200 OK", readLine(second.getInputStream()));
+                readRawBody(second.getInputStream());
+
+                third.setSoTimeout(500);
+                third.getOutputStream().write("GET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                assertThrows(SocketTimeoutException.class, () -> third.getInputStream().read());
+                first.close();
+                third.setSoTimeout(5000);
+                assertEquals("HTTP/1.1 200 OK", readLine(third.getInputStream()));
+                readRawBody(third.getInputStream());
+            }
+
+            try (Socket busy = new Socket("localhost", 8085); Socket idle = new Socket("localhost", 8085)) {
+                busy.setSoTimeout(5000);
+                idle.setSoTimeout(5000);
+                idle.getOutputStream().write("GET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                assertEquals("HTTP/1.1 200 OK", readLine(idle.getInputStream()));
+                readRawBody(idle.getInputStream());
+                busy.getOutputStream().write("GET /slow HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                Thread.sleep(100);
+
+                Future<Boolean> drained = serverExecutor.submit(() -> limitedServer.shutdownGracefully(5000));
+                InputStream in = busy.getInputStream();
+                assertEquals("HTTP/1.1 200 OK", readLine(in));
+                Map<String, String> headers = readHeaders(in);
+                assertEquals("close", headers.get("connection"));
+                assertEquals("done", new String(readBytes(in, Integer.parseInt(headers.get("content-length"))),
+                        StandardCharsets.UTF_8));
+                assertEquals(-1, in.read());
+                assertEquals(-1, idle.getInputStream().read());
+                assertTrue(drained.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            limitedServer.stop();
+            serverExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMetricsEndpointReportsRoutesAndEventLoops() throws IOException {
+        server.setMetricsPath("/metrics");
+        server.registerHandler("/measured/{id}", "GET", (req, res) -> {
+            if (req.getPathParam("id").equals("fail")) {
+                throw new HttpException(400, "Bad Request");
+            }
+            res.sendText(200, "ok");
+        });
+
+        try (Socket clientSocket = new Socket("localhost", 8081)) {
+            OutputStream os = clientSocket.getOutputStream();
+            InputStream in = clientSocket.getInputStream();
+            for (String id : new String[]{"1", "2", "fail"}) {
+                os.write(("GET /measured/" + id + " HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                readLine(in);
+                readRawBody(in);
+            }
+
+            os.write("GET /metrics HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            Map<String, String> headers = readHeaders(in);
+            assertTrue(headers.get("content-type").startsWith("text/plain; version=0.0.4"));
+            String body = new String(readBytes(in, Integer.parseInt(headers.get("content-length"))),
+                    StandardCharsets.UTF_8);
+            assertTrue(body.contains("http_requests_total{method=\"GET\",route=\"/measured/{id}\"} 3\n"), body);
+            assertTrue(body.contains("http_request_errors_total{method=\"GET\",route=\"/measured/{id}\"} 1\n"));
+            assertTrue(body.contains("http_request_duration_seconds_bucket{method=\"GET\",route=\"/measured/{id}\","
+                    + "le=\"+Inf\"} 3\n"));
+            assertTrue(body.contains("http_request_duration_seconds_count{method=\"GET\",route=\"/measured/{id}\"} 3\n"));
+            assertTrue(body.contains("http_event_loop_iteration_seconds_count{loop=\"http-loop-0\"}"));
+            assertTrue(body.contains("# TYPE http_connections_active gauge\nhttp_connections_active "));
+            assertTrue(body.contains("# TYPE http_response_cache_hits_total counter\nhttp_response_cache_hits_total "));
+        }
+
+        Metrics metrics = server.getMetrics();
+        Histogram latency = metrics.getRoute("GET", "/measured/{id}").getLatencyMicros();
+        assertEquals(3, latency.getCount());
+        assertTrue(latency.getValueAtPercentile(99) >= latency.getValueAtPercentile(50));
+        assertTrue(metrics.getBytesRead() > 0);
+        assertTrue(metrics.getBytesWritten() > 0);
+        assertTrue(metrics.getResponses(200) >= 2);
+    }
+
+    @Test
+    public void testAsyncHandlersCompleteOnTheEventLoopWithDeadlines() throws Exception {
+        ScheduledExecutorService backend = Executors.newSingleThreadScheduledExecutor();
+        CompletableFuture<ResponseData> abandoned = new CompletableFuture<>();
+        CompletableFuture<ResponseData> disconnected = new CompletableFuture<>();
+        try {
+            server.registerHandler("/async/ok", "GET", req -> {
+                CompletableFuture<ResponseData> result = new CompletableFuture<>();
+                backend.schedule(() -> result.complete(ResponseData.text(200, "async " + req.getQueryParameter("n"))),
+                        50, TimeUnit.MILLISECONDS);
+                return result;
+            });
+            server.registerHandler("/async/fail", "GET", req -> {
+                CompletableFuture<ResponseData> result = new CompletableFuture<>();
+                result.completeExceptionally(new HttpException(404, "Not Found"));
+                return result;
+            });
+            RouteOptions shortDeadline = new RouteOptions();
+            shortDeadline.setDeadlineMillis(200);
+            server.registerHandler("/async/slow", "GET", req -> abandoned, shortDeadline);
+            server.registerHandler("/async/hang", "GET", req -> disconnected);
+
+            try (Socket clientSocket = new Socket("localhost", 8081)) {
+                clientSocket.setSoTimeout(5000);
+                OutputStream os = clientSocket.getOutputStream();
+                os.write(("GET /async/ok?n=1 HTTP/1.1\r\n\r\nGET /async/fail HTTP/1.1\r\n\r\n"
+                        + "GET /async/ok?n=2 HTTP/1.1\r\n\r\nGET /async/slow HTTP/1.1\r\n\r\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                InputStream in = clientSocket.getInputStream();
+                assertEquals("HTTP/1.1 200 OK", readLine(in));
+                assertEquals("async 1", new String(readRawBody(in), StandardCharsets.UTF_8));
+                assertEquals("HTTP/1.1 404 Not Found", readLine(in));
+                readRawBody(in);
+                assertEquals("HTTP/1.1 200 OK", readLine(in));
+                assertEquals("async 2", new String(readRawBody(in), StandardCharsets.UTF_8));
+                assertEquals("HTTP/1.1 503 Service Unavailable", readLine(in));
+                readRawBody(in);
+                assertTrue(abandoned.isCancelled());
+            }
+
+            try (Socket clientSocket = new Socket("localhost", 8081)) {
+                clientSocket.getOutputStream().write("GET /async/hang HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                Thread.sleep(200);
+            }
+            for (int i = 0; i < 50 && !disconnected.isDone(); i++) {
+                Thread.sleep(20);
+            }
+            assertTrue(disconnected.isCancelled());
+        } finally {
+            backend.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncMultipartPartsLiveUntilTheResponseCompletes() throws Exception {
+        Server asyncServer = new Server("localhost", 8092);
+        asyncServer.setMultipartSpillThreshold(16);
+        ScheduledExecutorService backend = Executors.newSingleThreadScheduledExecutor();
+        List<Path> spilled = new ArrayList<>();
+        asyncServer.registerHandler("/upload", "POST", req -> {
+            Part part = req.getPart("file");
+            spilled.add(part.getPath());
+            CompletableFuture<ResponseData> result = new CompletableFuture<>();
+            backend.schedule(() -> {
+                try {
+                    result.complete(ResponseData.text(200, "read " + part.getString().length()));
+                } catch (IOException e) {
+                    result.completeExceptionally(e);
+                }
+            }, 200, TimeUnit.MILLISECONDS);
+            return result;
+        });
+        ExecutorService serverExecutor = Executors.newSingleThreadExecutor();
+        serverExecutor.submit(() -> {
+            asyncServer.startServer();
+            return null;
+        });
+        Thread.sleep(500);
+        try {
+            char[] content = new char[1000];
+            Arrays.fill(content, 'x');
+            String body = "--b\r\nContent-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\n\r\n"
+                    + new String(content) + "\r\n--b--\r\n";
+            HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(
+                    URI.create("http://localhost:8092/upload")).header("Content-Type", "multipart/form-data; boundary=b")
+                    .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertEquals("read 1000", response.body());
+            assertNotNull(spilled.get(0));
+            for (int i = 0; i < 50 && Files.exists(spilled.get(0)); i++) {
+                Thread.sleep(20);
+            }
+            assertFalse(Files.exists(spilled.get(0)));
+            long latencyMicros = asyncServer.getMetrics().route("POST", "/upload").getLatencyMicros()
+                    .getValueAtPercentile(100);
+            assertTrue(latencyMicros >= 200_000, "latency " + latencyMicros);
+        } finally {
+            asyncServer.stop();
+            serverExecutor.shutdown();
+            backend.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRateLimitsAndConcurrencyLimiterShedLoad() throws Exception {
+        Server limitedServer = new Server("localhost", 8087);
+        limitedServer.setConcurrencyLimit(1, 50);
+        RouteOptions limited = new RouteOptions();
+        limited.setRateLimit(1, 2);
+        limitedServer.registerHandler("/limited", "GET", (req, res) -> res.sendText(200, "ok"), limited);
+        limitedServer.registerHandler("/slow", "GET", (req, res) -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            res.sendText(200, "done");
+        }, ExecutionMode.WORKER_POOL);
+        ExecutorService serverExecutor = Executors.newSingleThreadExecutor();
+        serverExecutor.submit(() -> {
+            limitedServer.startServer();
+            return null;
+        });
+        Thread.sleep(500);
+        try {
+            try (Socket clientSocket = new Socket("localhost", 8087)) {
+                clientSocket.setSoTimeout(5000);
+                clientSocket.getOutputStream().write(("GET /limited HTTP/1.1\r\n\r\nGET /limited HTTP/1.1\r\n\r\n"
+                        + "GET /limited HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                InputStream in = clientSocket.getInputStream();
+                assertEquals("HTTP/1.1 200 OK", readLine(in));
+                readRawBody(in);
+                assertEquals("HTTP/1.1 200 OK", readLine(in));
+                readRawBody(in);
+                assertEquals("HTTP/1.1 429 Too Many Requests", readLine(in));
+                Map<String, String> headers = readHeaders(in);
+                assertEquals("1", headers.get("retry-after"));
+                assertEquals("close", headers.get("connection"));
+            }
+
+            try (Socket busy = new Socket("localhost", 8087); Socket shed = new Socket("localhost", 8087)) {
+                busy.setSoTimeout(5000);
+                shed.setSoTimeout(5000);
+                busy.getOutputStream().write("GET /slow HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                Thread.sleep(100);
+                shed.getOutputStream().write("POST /slow HTTP/1.1\r\nContent-Length: 1000000\r\n\r\n"
+                        .getBytes(StandardCharsets.UTF_8));
+                assertEquals("HTTP/1.1 503 Service Unavailable", readLine(shed.getInputStream()));
+                assertEquals("1", readHeaders(shed.getInputStream()).get("retry-after"));
+                assertEquals("HTTP/1.1 200 OK", readLine(busy.getInputStream()));
+                readRawBody(busy.getInputStream());
+            }
+            assertEquals(2, limitedServer.getMetrics().getShed());
+        } finally {
+            limitedServer.stop();
+            serverExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRateLimiterStaysBoundedUnderKeyChurn() {
+        RateLimiter limiter = new RateLimiter(0.001, 1, 2);
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("b"));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire("client-" + i) > 0);
+        }
+        assertEquals(2, limiter.size());
+        assertTrue(limiter.tryAcquire("a") > 0);
+    }
+
+    @Test
+    public void testConcurrencyLimiterReservesSlotsAndBacksOffOncePerWindow() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 10, 0);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        limiter.release(0);
+        assertEquals(9, limiter.getLimit());
+        for (int i = 0; i < 8; i++) {
+            limiter.release(0);
+        }
+        assertEquals(9, limiter.getLimit());
+        limiter.release(0);
+        assertEquals(8, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+        assertTrue(limiter.tryAcquire());
+        limiter.cancel();
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void testAccessLogKeepsWritingAfterFailedRotation() throws Exception {
+        Path dir = Files.createTempDirectory("access-log-rotate");
+        Path file = dir.resolve("access.log");
+        Path blocked = Files.createDirectory(dir.resolve("access.log.1"));
+        Files.createFile(blocked.resolve("keep"));
+        AccessLog accessLog = new AccessLog(file, 20, 1, 1);
+        accessLog.log(null, null, 200, 1);
+        Thread.sleep(200);
+        accessLog.log(null, null, 404, 2);
+        Thread.sleep(200);
+        accessLog.close();
+        String written = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertTrue(written.contains(" 404 2"), written);
+    }
+
+    @Test
+    public void testAccessLogWritesCommonLogFormatAndRotates() throws Exception {
+        Path dir = Files.createTempDirectory("access-log");
+        Path file = dir.resolve("access.log");
+        AccessLog accessLog = new AccessLog(file, 50, 0, 0);
+        server.registerHandler("/logged", "GET", (req, res) -> res.sendText(200, "logged"));
+        server.setAccessLog(accessLog);
+        try {
+            try (Socket clientSocket = new Socket("localhost", 8081)) {
+                clientSocket.setSoTimeout(5000);
+                clientSocket.getOutputStream().write(("GET /logged?page=1 HTTP/1.1\r\n\r\n"
+                        + "GET /missing HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                InputStream in = clientSocket.getInputStream();
+                assertEquals("HTTP/1.1 200 OK", readLine(in));
+                readRawBody(in);
+                assertEquals("HTTP/1.1 404 Not Found", readLine(in));
+                readRawBody(in);
+            }
+        } finally {
+            server.setAccessLog(null);
+            accessLog.close();
+        }
+        List<String> lines = Files.readAllLines(file);
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("127.0.0.1 - - [")
+                && line.contains("] \"GET /logged?page=1 HTTP/1.1\" 200 6 ")), lines.toString());
+        assertTrue(lines.stream().anyMatch(line -> line.contains("\"GET /missing HTTP/1.1\" 404 ")), lines.toString());
+
+        Path rotating = dir.resolve("rotating.log");
+        AccessLog small = new AccessLog(rotating, 1, 200, 2);
+        try {
+            for (int i = 0; i < 20; i++) {
+                small.log(Request.of("GET", "/rotate/" + i, new ArrayList<>(), "HTTP/1.1"), null, 200, i);
+                Thread.sleep(5);
+            }
+        } finally {
+            small.close();
+        }
+        assertTrue(Files.exists(rotating));
+        assertTrue(Files.exists(dir.resolve("rotating.log.1")));
+        assertTrue(Files.exists(dir.resolve("rotating.log.2")));
+        assertFalse(Files.exists(dir.resolve("rotating.log.3")));
+        assertEquals(0, small.getDropped());
+    }
+
+    @Test
+    public void testServerConfigFromYamlWithOverridesAndWarmup() throws Exception {
+        Path file = Files.createTempFile("server", ".yaml");
+        Files.write(file, Arrays.asList(
+                "# test server",
+                "server:",
+                "  host: localhost",
+                "  port: 9999",
+                "  warmupIterations: 200",
+                "socket:",
+                "  tcpNoDelay: true",
+                "  receiveBufferSize: 65536   # inherited by accepted sockets",
+                "  backlog: 128",
+                "metrics:",
+                "  path: \"/metrics\""), StandardCharsets.UTF_8);
+        System.setProperty("server.port", "8088");
+        Server configured;
+        try {
+            ServerConfig config = ServerConfig.load(file);
+            assertEquals(8088, config.getInt("server.port", 0));
+            assertEquals(65536, config.getInt("socket.receiveBufferSize", 0));
+            assertTrue(config.getBoolean("socket.tcpNoDelay", false));
+            assertEquals("/metrics", config.getString("metrics.path", null));
+            assertEquals(7, config.getInt("socket.missing", 7));
+            configured = config.createServer();
+        } finally {
+            System.clearProperty("server.port");
+        }
+
+        Files.write(file, Arrays.asList("server:", "  - port: 1"), StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> ServerConfig.load(file));
+        Files.write(file, Arrays.asList("server:", "  port: eighty"), StandardCharsets.UTF_8);
+        assertThrows(IllegalArgumentException.class, () -> ServerConfig.load(file).getInt("server.port", 0));
+
+        configured.registerHandler("/", "GET", (req, res) -> res.sendText(200, "custom root"));
+        ExecutorService serverExecutor = Executors.newSingleThreadExecutor();
+        serverExecutor.submit(() -> {
+            configured.startServer();
+            return null;
+        });
+        Thread.sleep(500);
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            HttpResponse<String> root = client.send(HttpRequest.newBuilder(URI.create("http://localhost:8088/")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals("custom root", root.body());
+            HttpResponse<String> deleted = client.send(HttpRequest.newBuilder(URI.create("http://localhost:8088/"))
+                    .DELETE().build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals("Received DELETE request", deleted.body());
+            HttpResponse<String> metrics = client.send(HttpRequest.newBuilder(
+                    URI.create("http://localhost:8088/metrics")).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, metrics.statusCode());
+        } finally {
+            configured.stop();
+            serverExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testProxyForwardsToPooledUpstreamsWithHealthChecks() throws Exception {
+        Server backendA = proxyBackend(8090, "a");
+        Server backendB = proxyBackend(8091, "b");
+        Upstream upstreamA = new Upstream("localhost", 8090);
+        Upstream upstreamB = new Upstream("localhost", 8091);
+        upstreamA.setTimeouts(1000, 500);
+        upstreamB.setTimeouts(1000, 500);
+        ProxyHandler proxy = new ProxyHandler(upstreamA, upstreamB);
+        proxy.setHealthCheck("/health", 100);
+        Server proxyServer = new Server("localhost", 8089);
+        proxyServer.mount("/api", proxy);
+        ExecutorService serverExecutor = Executors.newFixedThreadPool(3);
+        for (Server target : Arrays.asList(backendA, backendB, proxyServer)) {
+            serverExecutor.submit(() -> {
+                target.startServer();
+                return null;
+            });
+        }
+        Thread.sleep(500);
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            List<String> backends = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                HttpResponse<String> hello = client.send(HttpRequest.newBuilder(
+                        URI.create("http://localhost:8089/api/hello?name=proxy")).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                assertEquals(200, hello.statusCode());
+                assertEquals("text/plain", hello.headers().firstValue("content-type").orElse(null));
+                assertEquals(Arrays.asList("one", "two"), hello.headers().allValues("set-cookie"));
+                backends.add(hello.body());
+            }
+            assertEquals(Arrays.asList("a proxy", "b proxy", "a proxy", "b proxy"), backends);
+            assertEquals(1, backendA.getConnectionCount());
+
+            HttpResponse<String> echo = client.send(HttpRequest.newBuilder(URI.create("http://localhost:8089/api/echo"))
+                    .POST(HttpRequest.BodyPublishers.ofString("ping")).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals("ping from 127.0.0.1", echo.body());
+
+            HttpResponse<byte[]> large = client.send(HttpRequest.newBuilder(URI.create("http://localhost:8089/api/large"))
+                    .build(), HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(200, large.statusCode());
+            assertEquals(1024 * 1024, large.body().length);
+            assertEquals('z', large.body()[large.body().length - 1]);
+
+            HttpResponse<String> slow = client.send(HttpRequest.newBuilder(URI.create("http://localhost:8089/api/slow"))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(504, slow.statusCode());
+
+            backendB.stop();
+            Thread.sleep(500);
+            assertFalse(upstreamB.isHealthy());
+            for (int i = 0; i < 3; i++) {
+                HttpResponse<String> hello = client.send(HttpRequest.newBuilder(
+                        URI.create("http://localhost:8089/api/hello?name=failover")).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                assertEquals("a failover", hello.body());
+            }
+        } finally {
+            proxy.close();
+            proxyServer.stop();
+            backendA.stop();
+            backendB.stop();
+            serverExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testHttp2RejectsMalformedFieldsBeforeProxying() throws Exception {
+        Server backend = proxyBackend(8095, "backend");
+        ProxyHandler proxy = new ProxyHandler(new Upstream("localhost", 8095));
+        Server proxyServer = new Server("localhost", 8094);
+        proxyServer.setHttp2Enabled(true);
+        proxyServer.mount("/api", proxy);
+        ExecutorService serverExecutor = Executors.newFixedThreadPool(2);
+        for (Server target : Arrays.asList(backend, proxyServer)) {
+            serverExecutor.submit(() -> {
+                target.startServer();
+                return null;
+            });
+        }
+        Thread.sleep(500);
+        try {
+            byte[] smuggled = "/api/hello HTTP/1.1\r\nHost: evil\r\n\r\nGET /admin".getBytes(StandardCharsets.ISO_8859_1);
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            block.write(new byte[] {(byte) 0x82, (byte) 0x86, 0x04, (byte) smuggled.length});
+            block.write(smuggled);
+            assertProtocolError(firstHttp2Frame(8094, block.toByteArray()));
+
+            byte[] injected = {(byte) 0x82, (byte) 0x86, 0x04, 10, '/', 'a', 'p', 'i', '/', 'h', 'e', 'l', 'l', 'o',
+                    0x00, 1, 'x', 5, 'a', '\r', '\n', 'b', ':'};
+            assertProtocolError(firstHttp2Frame(8094, injected));
+            byte[] badName = {(byte) 0x82, (byte) 0x86, 0x04, 10, '/', 'a', 'p', 'i', '/', 'h', 'e', 'l', 'l', 'o',
+                    0x00, 3, 'x', '(', 'y', 1, 'v'};
+            assertProtocolError(firstHttp2Frame(8094, badName));
+
+            assertFalse(ProxyHandler.isSafeToForward(Request.of("GET", "/api/x HTTP/1.1\r\nHost: evil",
+                    Collections.emptyList(), "HTTP/2.0")));
+            assertFalse(ProxyHandler.isSafeToForward(Request.of("GET", "/api/x",
+                    Arrays.asList("x", "a\r\nb: c"), "HTTP/2.0")));
+            byte[] clean = {(byte) 0x82, (byte) 0x86, 0x04, 10, '/', 'a', 'p', 'i', '/', 'h', 'e', 'l', 'l', 'o'};
+            byte[] frame = firstHttp2Frame(8094, clean);
+            assertEquals(1, frame[0]);
+            assertEquals((byte) 0x88, frame[1]);
+        } finally {
+            proxy.close();
+            proxyServer.stop();
+            backend.stop();
+            serverExecutor.shutdown();
+        }
+    }
+
+    private static void assertProtocolError(byte[] frame) {
+        assertEquals(3, frame[0]);
+        assertEquals(1, frame[4]);
+    }
+
+    // Sends one HEADERS frame with END_STREAM on stream 1 and returns the frame type followed by its payload.
+    private static byte[] firstHttp2Frame(int port, byte[] block) throws IOException {
+        try (Socket clientSocket = new Socket("localhost", port)) {
+            clientSocket.setSoTimeout(5000);
+            ByteArrayOutputStream frames = new ByteArrayOutputStream();
+            frames.write("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            frames.write(new byte[] {0, 0, 0, 4, 0, 0, 0, 0, 0});
+            frames.write(new byte[] {0, 0, (byte) block.length, 1, 0x5, 0, 0, 0, 1});
+            frames.write(block);
+            clientSocket.getOutputStream().write(frames.toByteArray());
+            InputStream in = clientSocket.getInputStream();
+            while (true) {
+                byte[] header = readBytes(in, 9);
+                int length = (header[0] & 0xff) << 16 | (header[1] & 0xff) << 8 | header[2] & 0xff;
+                int streamId = (header[5] & 0x7f) << 24 | (header[6] & 0xff) << 16 | (header[7] & 0xff) << 8
+                        | header[8] & 0xff;
+                byte[] payload = readBytes(in, length);
+                if (streamId == 1) {
+                    byte[] frame = new byte[length + 1];
+                    frame[0] = header[3];
+                    System.arraycopy(payload, 0, frame, 1, length);
+                    return frame;
+                }
+            }
+        }
+    }
+
+    private static Server proxyBackend(int port, String name) {
+        Server backend = new Server("localhost", port);
+        backend.registerHandler("/health", "GET", (req, res) -> res.sendText(200, "ok"));
+        backend.registerHandler("/api/hello", "GET", (req, res) -> {
+            res.setHeader("Set-Cookie", "one");
+            res.addHeader("Set-Cookie", "two");
+            res.sendText(200, name + " " + req.getQueryParameter("name"));
+        });
+        backend.registerHandler("/api/echo", "POST", (req, res) ->
+                res.sendText(200, req.getBody() + " from " + req.getHeader("X-Forwarded-For")));
+        backend.registerHandler("/api/large", "GET", (req, res) -> {
+            byte[] block = new byte[64 * 1024];
+            Arrays.fill(block, (byte) 'z');
+            try (ResponseStream stream = res.stream(200, "application/octet-stream")) {
+                for (int i = 0; i < 16; i++) {
+                    stream.write(block);
+                }
+            }
+        }, ExecutionMode.WORKER_POOL);
+        backend.registerHandler("/api/slow", "GET", (req, res) -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            res.sendText(200, "late");
+        }, ExecutionMode.WORKER_POOL);
+        return backend;
+    }
+
+    @Test
+    public void testHistogramBucketsStayWithinPrecision() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 1_000_000; value *= 3) {
+            histogram.record(value);
+            long bucketMax = Histogram.upperBound(Histogram.bucketFor(value)) - 1;
+            assertTrue(bucketMax >= value && bucketMax <= value + value / 8, "bucket for " + value);
+        }
+        assertEquals(13, histogram.getCount());
+        long max = histogram.getValueAtPercentile(100);
+        assertTrue(max >= 531441 && max <= 531441 + 531441 / 8);
+        assertEquals(729, histogram.getValueAtPercentile(50), 729 / 8);
+    }
+
+    @Test
+    public void testHistogramCountsPartialBucketBelowBound() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 8; i++) {
+            histogram.record(4700);
+        }
+        histogram.record(5100);
+        histogram.record(10);
+        assertEquals(1, histogram.countAtOrBelow(10));
+        assertEquals(1, histogram.countAtOrBelow(4607));
+        long atBound = histogram.countAtOrBelow(5000);
+        assertTrue(atBound > 1 && atBound <= 10, "count at 5000 was " + atBound);
+        assertEquals(10, histogram.countAtOrBelow(5119));
+        assertTrue(histogram.countAtOrBelow(4800) <= atBound);
+    }
+
+    @Test
+    public void testHttp2UpgradeAndPriorKnowledge() throws Exception {
+        Server h2Server = new Server("localhost", 8086);
+        h2Server.setHttp2Enabled(true);
+        h2Server.registerHandler("/hello", "GET", (req, res) -> res.sendText(200, "Hello " + req.getHeader("Host")));
+        h2Server.registerHandler("/echo", "POST", (req, res) -> res.sendText(200, req.getBody()),
+                ExecutionMode.WORKER_POOL);
+        byte[] large = new byte[300_000];
+        new Random(18).nextBytes(large);
+        h2Server.registerHandler("/large", "GET", (req, res) -> res.send(200, "application/octet-stream", large));
+        h2Server.registerHandler("/stream", "GET", (req, res) -> {
+            ResponseStream stream = res.stream(200, "text/plain");
+            for (int i = 0; i < 3; i++) {
+                stream.write("part" + i + ";");
+            }
+            stream.close();
+        }, ExecutionMode.WORKER_POOL);
+        ExecutorService serverExecutor = Executors.newSingleThreadExecutor();
+        serverExecutor.submit(() -> {
+            h2Server.startServer();
+            return null;
+        });
+        Thread.sleep(500);
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+            HttpResponse<String> upgraded = client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:8086/hello")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(HttpClient.Version.HTTP_2, upgraded.version());
+            assertEquals("Hello localhost:8086", upgraded.body());
+
+            List<CompletableFuture<HttpResponse<String>>> echoes = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                echoes.add(client.sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:8086/echo"))
+                        .POST(HttpRequest.BodyPublishers.ofString("body " + i)).build(),
+                        HttpResponse.BodyHandlers.ofString()));
+            }
+            CompletableFuture<HttpResponse<byte[]>> largeResponse = client.sendAsync(
+                    HttpRequest.newBuilder(URI.create("http://localhost:8086/large")).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            for (int i = 0; i < echoes.size(); i++) {
+                HttpResponse<String> echo = echoes.get(i).get(5, TimeUnit.SECONDS);
+                assertEquals(HttpClient.Version.HTTP_2, echo.version());
+                assertEquals("body " + i, echo.body());
+            }
+            assertArrayEquals(large, largeResponse.get(5, TimeUnit.SECONDS).body());
+
+            HttpResponse<String> streamed = client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:8086/stream")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals("part0;part1;part2;", streamed.body());
+            assertFalse(streamed.headers().firstValue("transfer-encoding").isPresent());
+
+            try (Socket clientSocket = new Socket("localhost", 8086)) {
+                clientSocket.setSoTimeout(5000);
+                OutputStream os = clientSocket.getOutputStream();
+                ByteArrayOutputStream frames = new ByteArrayOutputStream();
+                frames.write("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                frames.write(new byte[] {0, 0, 0, 4, 0, 0, 0, 0, 0});
+                byte[] block = {(byte) 0x82, (byte) 0x86, 0x04, 6, '/', 'h', 'e', 'l', 'l', 'o',
+                        0x01, 4, 'h', 'o', 's', 't'};
+                frames.write(new byte[] {0, 0, (byte) block.length, 1, 0x5, 0, 0, 0, 1});
+                frames.write(block);
+                os.write(frames.toByteArray());
+                os.flush();
+
+                InputStream in = clientSocket.getInputStream();
+                boolean sawStatus = false;
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                while (true) {
+                    byte[] header = readBytes(in, 9);
+                    int length = (header[0] & 0xff) << 16 | (header[1] & 0xff) << 8 | header[2] & 0xff;
+                    int streamId = (header[5] & 0x7f) << 24 | (header[6] & 0xff) << 16 | (header[7] & 0xff) << 8
+                            | header[8] & 0xff;
+                    byte[] payload = readBytes(in, length);
+                    if (header[3] == 1 && streamId == 1) {
+                        assertEquals((byte) 0x88, payload[0]);
+                        sawStatus = true;
+                    } else if (header[3] == 0 && streamId == 1) {
+                        body.write(payload);
+                        if ((header[4] & 0x1) != 0) {
+                            break;
+                        }
+                    }
+                }
+                assertTrue(sawStatus);
+                assertEquals("Hello host", body.toString("UTF-8"));
+            }
+        } finally {
+            h2Server.stop();
+            serverExecutor.shutdown();
+        }
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            copy(in, out);
+        }
+        return out.toByteArray();
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static void assertServesConcurrentClients(int port, boolean reusePort) throws Exception {
+        Server multiServer = new Server("localhost", port);
+        multiServer.setEventLoopCount(4);
+        multiServer.setReusePort(reusePort);
+        multiServer.setLoadBalancing(LoadBalancing.LEAST_CONNECTIONS);
+        ExecutorService serverExecutor = Executors.newSingleThreadExecutor();
+        serverExecutor.submit(() -> {
+            multiServer.startServer();
+            return null;
+        });
+        Thread.sleep(500);
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> statusLines = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                statusLines.add(clients.submit(() -> {
+                    try (Socket clientSocket = new Socket("localhost", port)) {
+                        OutputStream os = clientSocket.getOutputStream();
+                        os.write("GET / HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                        os.flush();
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+                        return reader.readLine();
+                    }
+                }));
+            }
+            for (Future<String> statusLine : statusLines) {
+                assertTrue(statusLine.get(5, TimeUnit.SECONDS).contains("HTTP/1.1 200 OK"));
+            }
+        } finally {
+            clients.shutdownNow();
+            multiServer.stop();
+            serverExecutor.shutdown();
+        }
+    }
+
+    private static String readBody(BufferedReader reader) throws IOException {
+        int contentLength = 0;
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+        }
+        char[] body = new char[contentLength];
+        int read = 0;
+        while (read < contentLength) {
+            int n = reader.read(body, read, contentLength - read);
+            if (n == -1) {
+                break;
+            }
+            read += n;
+        }
+        return new String(body, 0, read);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString("UTF-8");
+    }
+
+    private static Map<String, String> readHeaders(InputStream in) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+        }
+        return headers;
+    }
+
+    private static byte[] readBytes(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(bytes, read, length - read);
+            if (n == -1) {
+                break;
+            }
+            read += n;
+        }
+        return bytes;
+    }
+
+    private static byte[] readRawBody(InputStream in) throws IOException {
+        int contentLength = 0;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+        }
+        byte[] body = new byte[contentLength];
+        int read = 0;
+        while (read < contentLength) {
+            int n = in.read(body, read, contentLength - read);
+            if (n == -1) {
+                break;
+            }
+            read += n;
+        }
+        return body;
+    }
+}